@@ -0,0 +1,182 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.Arrays;
+
+/**
+ * Picks the object being looked at by intersecting the gaze ray analytically with the
+ * shapes of the pickable objects, all of which sit at a known distance and direction from
+ * the camera: planets are spheres, and nebulae (and other markers) are quads facing the
+ * camera. This gives the same result as casting a ray through the scene graph, but only
+ * costs a dot product for each object that isn't anywhere near the gaze.
+ *
+ * The size of each shape is its base size times the current scale of the object, which
+ * is refreshed from the scene only for objects that are zoomed, or being zoomed.
+ */
+public class AngularPicker {
+    private static final int SHAPE_SPHERE = 0;
+    private static final int SHAPE_QUAD = 1;
+
+    private int count;
+    private SkyObject[] objects = new SkyObject[16];
+    private int[] shape = new int[16];
+    // unit vector towards the center of each object, and its distance from the camera
+    private float[] centerX = new float[16];
+    private float[] centerY = new float[16];
+    private float[] centerZ = new float[16];
+    private float[] distance = new float[16];
+    // radius of the sphere, or half the width of the quad, at a scale of 1
+    private float[] baseSize = new float[16];
+    private float[] scale = new float[16];
+    // cosine of the angular radius of a cone that encloses the object at its current scale
+    private float[] boundCos = new float[16];
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Move an object that has already been added to its current RA and Dec.
+     */
+    public void updatePosition(SkyObject obj) {
+        for (int i = 0; i < count; i++) {
+            if (objects[i] == obj) {
+                centerX[i] = SkyMath.vectorX(obj.ra, obj.dec);
+                centerY[i] = SkyMath.vectorY(obj.ra, obj.dec);
+                centerZ[i] = SkyMath.vectorZ(obj.ra, obj.dec);
+                return;
+            }
+        }
+    }
+
+    public void addSphere(SkyObject obj, float distance, float radius) {
+        add(obj, SHAPE_SPHERE, distance, radius);
+    }
+
+    public void addQuad(SkyObject obj, float distance, float size) {
+        add(obj, SHAPE_QUAD, distance, size / 2f);
+    }
+
+    private void add(SkyObject obj, int type, float dist, float size) {
+        if (count == objects.length) {
+            grow();
+        }
+        objects[count] = obj;
+        shape[count] = type;
+        centerX[count] = SkyMath.vectorX(obj.ra, obj.dec);
+        centerY[count] = SkyMath.vectorY(obj.ra, obj.dec);
+        centerZ[count] = SkyMath.vectorZ(obj.ra, obj.dec);
+        distance[count] = dist;
+        baseSize[count] = size;
+        setScale(count, obj.initialScale);
+        count++;
+    }
+
+    private void grow() {
+        int newSize = objects.length * 2;
+        SkyObject[] newObjects = new SkyObject[newSize];
+        System.arraycopy(objects, 0, newObjects, 0, count);
+        objects = newObjects;
+        shape = Arrays.copyOf(shape, newSize);
+        centerX = Arrays.copyOf(centerX, newSize);
+        centerY = Arrays.copyOf(centerY, newSize);
+        centerZ = Arrays.copyOf(centerZ, newSize);
+        distance = Arrays.copyOf(distance, newSize);
+        baseSize = Arrays.copyOf(baseSize, newSize);
+        scale = Arrays.copyOf(scale, newSize);
+        boundCos = Arrays.copyOf(boundCos, newSize);
+    }
+
+    private void setScale(int i, float newScale) {
+        scale[i] = newScale;
+        // a quad's corners are further out than its half-width
+        float extent = baseSize[i] * newScale * (shape[i] == SHAPE_QUAD ? 1.4143f : 1f);
+        boundCos[i] = (float) Math.cos(Math.atan2(extent, distance[i]));
+    }
+
+    /**
+     * @return The nearest object hit by a ray from the camera in the direction of the
+     * given unit vector, or null if nothing is hit.
+     */
+    public SkyObject pick(float gx, float gy, float gz) {
+        SkyObject best = null;
+        float bestT = Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            HoverZoom zoom = objects[i].hoverZoom;
+            if (zoom != null && (zoom.isScaled() || scale[i] != objects[i].initialScale)) {
+                setScale(i, zoom.isScaled() ? zoom.getCurrentScale() : objects[i].initialScale);
+            }
+
+            float cosAngle = gx * centerX[i] + gy * centerY[i] + gz * centerZ[i];
+            if (cosAngle < boundCos[i]) {
+                continue;
+            }
+            float t = shape[i] == SHAPE_SPHERE ? hitSphere(i, cosAngle) : hitQuad(i, gx, gy, gz, cosAngle);
+            if (t >= 0f && t < bestT) {
+                bestT = t;
+                best = objects[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return Distance along the ray to the near side of the sphere, or -1 if it's missed.
+     */
+    private float hitSphere(int i, float cosAngle) {
+        float d = distance[i];
+        float r = baseSize[i] * scale[i];
+        float disc = r * r - d * d * (1f - cosAngle * cosAngle);
+        if (disc < 0f) {
+            return -1f;
+        }
+        return d * cosAngle - (float) Math.sqrt(disc);
+    }
+
+    /**
+     * @return Distance along the ray to the quad, or -1 if it's missed. The quad is
+     * perpendicular to the direction of its center, with its edges along the local east
+     * and north directions, which is how setObjectPosition() orients it.
+     */
+    private float hitQuad(int i, float gx, float gy, float gz, float cosAngle) {
+        float t = distance[i] / cosAngle;
+        // offset of the hit point from the center of the quad
+        float ox = gx * t - centerX[i] * distance[i];
+        float oy = gy * t - centerY[i] * distance[i];
+        float oz = gz * t - centerZ[i] * distance[i];
+
+        // east is horizontal and perpendicular to the center: (cos ra, 0, -sin ra)
+        float horiz = (float) Math.sqrt(centerX[i] * centerX[i] + centerZ[i] * centerZ[i]);
+        float halfSize = baseSize[i] * scale[i];
+        float east, north;
+        if (horiz > 1e-6f) {
+            float ex = -centerZ[i] / horiz;
+            float ez = centerX[i] / horiz;
+            east = ox * ex + oz * ez;
+            // north = center x east
+            float nx = centerY[i] * ez;
+            float ny = centerZ[i] * ex - centerX[i] * ez;
+            float nz = -centerY[i] * ex;
+            north = ox * nx + oy * ny + oz * nz;
+        } else {
+            // at the pole, the orientation is arbitrary, so use the bounding circle
+            return ox * ox + oy * oy + oz * oz <= halfSize * halfSize ? t : -1f;
+        }
+        return Math.abs(east) <= halfSize && Math.abs(north) <= halfSize ? t : -1f;
+    }
+}
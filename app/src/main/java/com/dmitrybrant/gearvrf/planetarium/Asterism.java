@@ -15,31 +15,13 @@
 
 package com.dmitrybrant.gearvrf.planetarium;
 
-import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.Rect;
-import android.opengl.GLES20;
-
 import java.util.ArrayList;
 import java.util.List;
 
-import org.gearvrf.GVRBitmapImage;
-import org.gearvrf.GVRContext;
-import org.gearvrf.GVRMaterial;
-import org.gearvrf.GVRMesh;
-import org.gearvrf.GVRRenderData;
-import org.gearvrf.GVRSceneObject;
-import org.gearvrf.GVRTexture;
-import org.gearvrf.utility.Log;
-
 public class Asterism {
     private static final String TAG = "Asterism";
-    private static final float LABEL_WIDTH = 50f;
-    private static final int LABEL_COLOR = 0x80005080;
-    private static final float OPACITY_PASSIVE = 0.3f;
-    private static final float OPACITY_ACTIVE = 1.0f;
+    public static final float OPACITY_PASSIVE = 0.3f;
+    public static final float OPACITY_ACTIVE = 1.0f;
 
     private final String name;
     public String getName() {
@@ -56,12 +38,30 @@ public class Asterism {
         return skyObject;
     }
 
-    private GVRSceneObject labelObject;
-    public GVRSceneObject getLabelObject() {
-        return labelObject;
+    private StarCatalog catalog;
+    public void setCatalog(StarCatalog catalog) {
+        this.catalog = catalog;
     }
-    public void setLabelObject(GVRSceneObject object) {
-        this.labelObject = object;
+
+    // range of vertices that this asterism occupies in the batched constellation lines
+    private ConstellationLines lines;
+    private int firstVertex;
+    private int vertexCount;
+    private boolean active;
+
+    public void setLineRange(ConstellationLines lines, int firstVertex, int vertexCount) {
+        this.lines = lines;
+        this.firstVertex = firstVertex;
+        this.vertexCount = vertexCount;
+    }
+
+    // label of this asterism in the batched constellation labels
+    private ConstellationLabels labels;
+    private int labelIndex;
+
+    public void setLabel(ConstellationLabels labels, int labelIndex) {
+        this.labels = labels;
+        this.labelIndex = labelIndex;
     }
 
     public Asterism(String line, SkyObject skyObject) {
@@ -75,93 +75,77 @@ public class Asterism {
         }
     }
 
-    public GVRSceneObject createSceneObject(GVRContext context) {
-        GVRMaterial material = new GVRMaterial(context, GVRMaterial.GVRShaderType.Phong.ID);
-        material.setDiffuseColor(0, 0, 1f, 1f);
-        material.setLineWidth(2.0f);
-        GVRSceneObject obj = new GVRSceneObject(context);
-        GVRRenderData rd = new GVRRenderData(context);
-        rd.setMesh(createMesh(context));
-        rd.setDrawMode(GLES20.GL_LINES);
-        rd.setMaterial(material);
-        rd.setDepthTest(false);
-        obj.attachRenderData(rd);
-        skyObject.sceneObj = obj;
-        return obj;
-    }
-
-    public GVRSceneObject createLabelObject(GVRContext gvrContext, Context context) {
-        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        paint.setColor(LABEL_COLOR);
-        paint.setTextSize((int) (16 * context.getResources().getDisplayMetrics().density));
-        Rect bounds = new Rect();
-        paint.getTextBounds(name, 0, name.length(), bounds);
-
-        Bitmap bmp = Bitmap.createBitmap(bounds.width() * 3 / 2, bounds.height() * 3 / 2, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bmp);
-        canvas.drawText(name, bmp.getWidth() / 4f, bmp.getHeight() * 3f / 4f, paint);
-
-        final float labelWidthNormal = 120f;
-        float widthScale = (float) bounds.width() / labelWidthNormal;
-
-        float aspect = (float) bounds.width() / (float) bounds.height();
-        GVRTexture texture = new GVRTexture(gvrContext);
-        texture.setImage(new GVRBitmapImage(gvrContext, bmp));
-        GVRSceneObject sobj = new GVRSceneObject(gvrContext, gvrContext.createQuad(LABEL_WIDTH * widthScale, LABEL_WIDTH * widthScale / aspect), texture);
-        sobj.getRenderData().setDepthTest(false);
-        sobj.getRenderData().getMaterial().setOpacity(OPACITY_PASSIVE);
-        return sobj;
+    /**
+     * @return Whether any of the stars of this asterism were found in the catalog.
+     */
+    public boolean hasStars() {
+        for (AsterismNode node : nodes) {
+            if (node.getStarIndex() >= 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * @return The mean RA of the stars of this asterism, or 0 if it has none (see hasStars()).
+     */
     public float getCenterRa() {
         double xavg = 0.0;
         double yavg = 0.0;
+        int count = 0;
         for (AsterismNode node : nodes) {
-            xavg += Math.cos(Math.toRadians(node.getStar().ra));
-            yavg += Math.sin(Math.toRadians(node.getStar().ra));
+            if (node.getStarIndex() < 0) {
+                continue;
+            }
+            xavg += Math.cos(Math.toRadians(catalog.ra[node.getStarIndex()]));
+            yavg += Math.sin(Math.toRadians(catalog.ra[node.getStarIndex()]));
+            count++;
+        }
+        if (count == 0) {
+            return 0f;
         }
-        xavg /= nodes.size();
-        yavg /= nodes.size();
+        xavg /= count;
+        yavg /= count;
         return (float) Math.toDegrees(Math.atan2(yavg, xavg));
     }
 
+    /**
+     * @return The mean Dec of the stars of this asterism, or 0 if it has none (see hasStars()).
+     */
     public float getCenterDec() {
         double dec = 0.0;
+        int count = 0;
         for (AsterismNode node : nodes) {
-            dec += node.getStar().dec;
+            if (node.getStarIndex() < 0) {
+                continue;
+            }
+            dec += catalog.dec[node.getStarIndex()];
+            count++;
         }
-        return (float) (dec / nodes.size());
+        return count == 0 ? 0f : (float) (dec / count);
     }
 
-    public void setActive() {
-        skyObject.sceneObj.getRenderData().getMaterial().setDiffuseColor(0, 0.1f, 0.5f, 1f);
-        labelObject.getRenderData().getMaterial().setOpacity(Asterism.OPACITY_ACTIVE);
+    public boolean isActive() {
+        return active;
     }
 
-    public void setPassive() {
-        skyObject.sceneObj.getRenderData().getMaterial().setDiffuseColor(0, 0.02f, 0.1f, 1f);
-        labelObject.getRenderData().getMaterial().setOpacity(Asterism.OPACITY_PASSIVE);
+    public void setActive() {
+        if (active) {
+            return;
+        }
+        active = true;
+        lines.setIntensity(firstVertex, vertexCount, 1f);
+        labels.setOpacity(labelIndex, OPACITY_ACTIVE);
     }
 
-    private GVRMesh createMesh(GVRContext context) {
-        float[] vertices = new float[nodes.size() * 3];
-        int vertexPos = 0;
-        GVRMesh mesh = new GVRMesh(context);
-        for(AsterismNode node : nodes) {
-            if (node.getStar() == null) {
-                Log.w(TAG, "Orphan asterism node: " + node.getHipNum());
-                continue;
-            }
-
-            double ra = Math.toRadians(node.getStar().ra - 180.0);
-            double dec = Math.toRadians(node.getStar().dec);
-
-            vertices[vertexPos++] = (float) ((StarLoader.DEFAULT_DISTANCE_STAR * Math.cos(dec)) * Math.sin(ra));
-            vertices[vertexPos++] = (float) (StarLoader.DEFAULT_DISTANCE_STAR * Math.sin(dec));
-            vertices[vertexPos++] = (float) ((StarLoader.DEFAULT_DISTANCE_STAR * Math.cos(dec)) * Math.cos(ra));
+    public void setPassive() {
+        if (!active) {
+            return;
         }
-        mesh.setVertices(vertices);
-        return mesh;
+        active = false;
+        lines.setIntensity(firstVertex, vertexCount, 0f);
+        labels.setOpacity(labelIndex, OPACITY_PASSIVE);
     }
 
     public class AsterismNode {
@@ -170,12 +154,12 @@ public class Asterism {
             return hipNum;
         }
 
-        private SkyObject star;
-        public SkyObject getStar() {
-            return star;
+        private int starIndex = -1;
+        public int getStarIndex() {
+            return starIndex;
         }
-        public void setStar(SkyObject star) {
-            this.star = star;
+        public void setStarIndex(int starIndex) {
+            this.starIndex = starIndex;
         }
 
         public AsterismNode(int hipNum) {
@@ -34,16 +34,19 @@ public class AsterismLoader {
         return asterisms;
     }
 
-    public void addStar(SkyObject star) {
+    public void linkStars(StarCatalog catalog) {
         for (Asterism asterism : asterisms) {
+            asterism.setCatalog(catalog);
             for (Asterism.AsterismNode node : asterism.getNodes()) {
-                if (star.hipNum == (node.getHipNum())) {
-                    node.setStar(star);
-                    // TODO: make this better
-                    // ensure that this star is displayed by artificially boosting its magnitude
-                    if (star.mag > StarLoader.MAX_STAR_MAGNITUDE) {
-                        star.mag = StarLoader.MAX_STAR_MAGNITUDE - 0.01f;
-                    }
+                int star = catalog.indexOfHip(node.getHipNum());
+                if (star < 0) {
+                    continue;
+                }
+                node.setStarIndex(star);
+                // TODO: make this better
+                // ensure that this star is displayed by artificially boosting its magnitude
+                if (catalog.mag[star] > StarLoader.MAX_STAR_MAGNITUDE) {
+                    catalog.mag[star] = StarLoader.MAX_STAR_MAGNITUDE - 0.01f;
                 }
             }
         }
@@ -0,0 +1,193 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+/**
+ * Index of the segments of the constellation figures, for finding the segment nearest to
+ * a given position with a bounded amount of work.
+ *
+ * The sky is divided into a grid of declination bands and RA cells (fewer cells towards
+ * the poles, as in SkyIndex), and each cell keeps the list of segments that pass within
+ * the maximum query radius of any point in the cell. A query then only has to test the
+ * segments of the one cell that contains the query position.
+ */
+public class ConstellationIndex {
+    private final double cellSize;
+    private final double maxRadius;
+    private final int numBands;
+    private final int[] bandCells;
+    private final int[] bandFirstCell;
+
+    private final float[] segmentA;
+    private final float[] segmentB;
+    private int[] cellStart;
+    private int[] items;
+    private int maxCellSize;
+
+    /**
+     * @param segmentA Unit vectors of the first endpoint of each segment.
+     * @param segmentB Unit vectors of the second endpoint of each segment.
+     * @param count Number of segments.
+     * @param cellSize Height of each declination band (and minimum width of each cell), in degrees.
+     * @param maxRadius Largest radius, in degrees, that will be used in queries.
+     */
+    public ConstellationIndex(float[] segmentA, float[] segmentB, int count, double cellSize, double maxRadius) {
+        this.segmentA = segmentA;
+        this.segmentB = segmentB;
+        this.cellSize = cellSize;
+        this.maxRadius = maxRadius;
+        numBands = (int) Math.ceil(180.0 / cellSize);
+        bandCells = new int[numBands];
+        bandFirstCell = new int[numBands + 1];
+        for (int b = 0; b < numBands; b++) {
+            double maxAbsDec = Math.max(Math.abs(bandMinDec(b)), Math.abs(bandMaxDec(b)));
+            double circumference = 360.0 * Math.cos(Math.toRadians(Math.min(maxAbsDec, 90.0)));
+            bandCells[b] = Math.max(1, (int) (circumference / cellSize));
+            bandFirstCell[b + 1] = bandFirstCell[b] + bandCells[b];
+        }
+        build(count);
+    }
+
+    /**
+     * @return The number of segments in the most crowded cell, which bounds the cost of a query.
+     */
+    public int getMaxCellSize() {
+        return maxCellSize;
+    }
+
+    private void build(int count) {
+        // bounding circle of each segment (around its midpoint), for skipping most of the
+        // segments cheaply when filling each cell
+        float[] midX = new float[count];
+        float[] midY = new float[count];
+        float[] midZ = new float[count];
+        double[] halfLength = new double[count];
+        for (int s = 0; s < count; s++) {
+            float x = segmentA[s * 3] + segmentB[s * 3];
+            float y = segmentA[s * 3 + 1] + segmentB[s * 3 + 1];
+            float z = segmentA[s * 3 + 2] + segmentB[s * 3 + 2];
+            float len = (float) Math.sqrt(x * x + y * y + z * z);
+            if (len < 1e-6f) {
+                // endpoints are opposite, so the segment could be anywhere
+                halfLength[s] = 180.0;
+                continue;
+            }
+            midX[s] = x / len;
+            midY[s] = y / len;
+            midZ[s] = z / len;
+            double dot = midX[s] * segmentA[s * 3] + midY[s] * segmentA[s * 3 + 1] + midZ[s] * segmentA[s * 3 + 2];
+            halfLength[s] = Math.toDegrees(Math.acos(Math.max(-1.0, Math.min(1.0, dot))));
+        }
+
+        int totalCells = bandFirstCell[numBands];
+        int[][] cellItems = new int[totalCells][];
+        int[] cellCounts = new int[totalCells];
+        int[] scratch = new int[count];
+        int total = 0;
+
+        for (int b = 0; b < numBands; b++) {
+            for (int n = 0; n < bandCells[b]; n++) {
+                // a circle around the center of the cell that encloses the whole cell,
+                // widened by the query radius
+                double centerRa, centerDec, cellRadius;
+                if (bandCells[b] == 1) {
+                    // a polar cap: centered on the pole
+                    centerRa = 0;
+                    centerDec = bandMinDec(b) < 0 ? -90.0 : 90.0;
+                    cellRadius = 90.0 - Math.min(Math.abs(bandMinDec(b)), Math.abs(bandMaxDec(b)));
+                } else {
+                    double cellWidth = 360.0 / bandCells[b];
+                    centerRa = (n + 0.5) * cellWidth;
+                    centerDec = bandMinDec(b) + cellSize / 2.0;
+                    cellRadius = Math.max(
+                            SkyMath.angularDistance(centerRa, centerDec, n * cellWidth, bandMinDec(b)),
+                            SkyMath.angularDistance(centerRa, centerDec, n * cellWidth, bandMaxDec(b)));
+                }
+                double reach = cellRadius + maxRadius;
+                float cx = SkyMath.vectorX(centerRa, centerDec);
+                float cy = SkyMath.vectorY(centerRa, centerDec);
+                float cz = SkyMath.vectorZ(centerRa, centerDec);
+
+                int found = 0;
+                for (int s = 0; s < count; s++) {
+                    double bound = reach + halfLength[s] + 0.01;
+                    if (bound < 180.0 && cx * midX[s] + cy * midY[s] + cz * midZ[s] < Math.cos(Math.toRadians(bound))) {
+                        continue;
+                    }
+                    if (SkyMath.arcDistance(cx, cy, cz,
+                            segmentA[s * 3], segmentA[s * 3 + 1], segmentA[s * 3 + 2],
+                            segmentB[s * 3], segmentB[s * 3 + 1], segmentB[s * 3 + 2]) <= reach) {
+                        scratch[found++] = s;
+                    }
+                }
+                int c = bandFirstCell[b] + n;
+                cellItems[c] = new int[found];
+                System.arraycopy(scratch, 0, cellItems[c], 0, found);
+                cellCounts[c] = found;
+                total += found;
+            }
+        }
+
+        cellStart = new int[totalCells + 1];
+        items = new int[total];
+        maxCellSize = 0;
+        for (int c = 0; c < totalCells; c++) {
+            System.arraycopy(cellItems[c], 0, items, cellStart[c], cellCounts[c]);
+            cellStart[c + 1] = cellStart[c] + cellCounts[c];
+            maxCellSize = Math.max(maxCellSize, cellCounts[c]);
+        }
+    }
+
+    /**
+     * @return The index of the segment nearest to the given position, if it's within the
+     * given radius (in degrees, at most the maximum radius of the index), or -1 if there
+     * is none.
+     */
+    public int nearest(double ra, double dec, double radius) {
+        float qx = SkyMath.vectorX(ra, dec);
+        float qy = SkyMath.vectorY(ra, dec);
+        float qz = SkyMath.vectorZ(ra, dec);
+        double bestDistance = Math.min(radius, maxRadius);
+        int best = -1;
+        int c = cellOf(ra, dec);
+        for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+            int s = items[i];
+            double distance = SkyMath.arcDistance(qx, qy, qz,
+                    segmentA[s * 3], segmentA[s * 3 + 1], segmentA[s * 3 + 2],
+                    segmentB[s * 3], segmentB[s * 3 + 1], segmentB[s * 3 + 2]);
+            if (distance <= bestDistance) {
+                bestDistance = distance;
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    private double bandMinDec(int band) {
+        return -90.0 + band * cellSize;
+    }
+
+    private double bandMaxDec(int band) {
+        return Math.min(90.0, bandMinDec(band) + cellSize);
+    }
+
+    private int cellOf(double ra, double dec) {
+        int band = Math.max(0, Math.min(numBands - 1, (int) Math.floor((dec + 90.0) / cellSize)));
+        int cell = (int) (SkyMath.wrapDegrees(ra) / 360.0 * bandCells[band]);
+        return bandFirstCell[band] + Math.min(cell, bandCells[band] - 1);
+    }
+}
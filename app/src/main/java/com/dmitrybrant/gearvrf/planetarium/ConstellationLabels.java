@@ -0,0 +1,282 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.gearvrf.GVRBitmapImage;
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRMaterial;
+import org.gearvrf.GVRMesh;
+import org.gearvrf.GVRRenderData;
+import org.gearvrf.GVRSceneObject;
+import org.gearvrf.GVRShaderId;
+import org.gearvrf.GVRTexture;
+import org.gearvrf.utility.Log;
+
+/**
+ * The name labels of all asterisms, rendered once into a single alpha-only atlas (packed
+ * by a RectPacker) and drawn as a single mesh of quads, one per label. Each vertex has an
+ * opacity, so that highlighting an asterism only rewrites the four vertices of its label.
+ *
+ * The quads are positioned at the center of each asterism, facing the center of the sky,
+ * in the frame of the object that they're attached to.
+ */
+public class ConstellationLabels {
+    private static final String TAG = "ConstellationLabels";
+    private static final String VERTEX_DESCRIPTOR = "float3 a_position float2 a_texcoord float a_opacity";
+    private static final int LABEL_COLOR = 0x80005080;
+    private static final float TEXT_SIZE = 16f;
+    // size of the labels in the scene, per pixel of the atlas
+    private static final float LABEL_SCALE = 0.28f;
+    private static final int PADDING = 2;
+    private static final int MIN_ATLAS_SIZE = 256;
+    private static final int MAX_ATLAS_SIZE = 4096;
+
+    private final List<Asterism> asterisms;
+    private final float distance;
+    private final Bitmap atlas;
+    // half the width and height of each label, in scene units
+    private final float[] halfSizes;
+    private final float[] positions;
+    private final float[] texCoords;
+    private final float[] opacities;
+    private final char[] indices;
+
+    private GVRMesh mesh;
+    private boolean positionsDirty;
+    private boolean opacitiesDirty;
+
+    /**
+     * Render the labels of the given asterisms, whose stars must already be linked to the
+     * catalog. This doesn't touch the scene, so it may be called on a worker thread.
+     */
+    public ConstellationLabels(Context context, List<Asterism> asterisms, float distance) {
+        this.asterisms = asterisms;
+        this.distance = distance;
+        int count = asterisms.size();
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(0xFFFFFFFF);
+        paint.setTextSize((int) (TEXT_SIZE * context.getResources().getDisplayMetrics().density));
+        Rect[] bounds = new Rect[count];
+        for (int i = 0; i < count; i++) {
+            String name = asterisms.get(i).getName();
+            bounds[i] = new Rect();
+            paint.getTextBounds(name, 0, name.length(), bounds[i]);
+        }
+
+        // tallest first, which keeps the shelves of the packer full
+        List<Integer> order = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            order.add(i);
+        }
+        Collections.sort(order, (lhs, rhs) -> Integer.compare(bounds[rhs].height(), bounds[lhs].height()));
+        int[] cells = new int[count * 2];
+        Arrays.fill(cells, -1);
+        RectPacker packer = pack(bounds, order, cells);
+
+        atlas = Bitmap.createBitmap(packer.getWidth(), packer.getHeight(), Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(atlas);
+        halfSizes = new float[count * 2];
+        texCoords = new float[count * 8];
+        int unplaced = 0;
+        for (int i = 0; i < count; i++) {
+            Rect b = bounds[i];
+            int x = cells[i * 2];
+            int y = cells[i * 2 + 1];
+            if (x < 0) {
+                // no room in the atlas; leave the quad empty rather than draw the wrong text
+                unplaced++;
+                continue;
+            }
+            canvas.drawText(asterisms.get(i).getName(), x - b.left, y - b.top, paint);
+
+            halfSizes[i * 2] = b.width() * LABEL_SCALE / 2f;
+            halfSizes[i * 2 + 1] = b.height() * LABEL_SCALE / 2f;
+            float u0 = (float) x / atlas.getWidth();
+            float v0 = (float) y / atlas.getHeight();
+            float u1 = (float) (x + b.width()) / atlas.getWidth();
+            float v1 = (float) (y + b.height()) / atlas.getHeight();
+            // top left, bottom left, top right, bottom right
+            float[] uv = { u0, v0, u0, v1, u1, v0, u1, v1 };
+            System.arraycopy(uv, 0, texCoords, i * 8, 8);
+        }
+        if (unplaced > 0) {
+            Log.e(TAG, unplaced + " of " + count + " labels don't fit in the atlas.");
+        }
+
+        indices = new char[count * 6];
+        for (int i = 0; i < count; i++) {
+            int v = i * 4;
+            char[] quad = { (char) v, (char) (v + 1), (char) (v + 2), (char) (v + 1), (char) (v + 3), (char) (v + 2) };
+            System.arraycopy(quad, 0, indices, i * 6, 6);
+            asterisms.get(i).setLabel(this, i);
+        }
+        opacities = new float[count * 4];
+        Arrays.fill(opacities, Asterism.OPACITY_PASSIVE);
+        positions = new float[count * 12];
+        applyPositions();
+    }
+
+    /**
+     * Pack the labels of the given sizes into the smallest square (or 2:1) power-of-two
+     * atlas that holds them all. If they don't all fit even at the largest size, the cells
+     * of the ones left over stay at -1.
+     */
+    private static RectPacker pack(Rect[] bounds, List<Integer> order, int[] cells) {
+        int[] pos = new int[2];
+        int width = MIN_ATLAS_SIZE;
+        int height = MIN_ATLAS_SIZE;
+        while (true) {
+            RectPacker packer = new RectPacker(width, height, PADDING);
+            boolean last = width >= MAX_ATLAS_SIZE && height >= MAX_ATLAS_SIZE;
+            boolean fits = true;
+            for (int i : order) {
+                if (!packer.insert(bounds[i].width(), bounds[i].height(), pos)) {
+                    fits = false;
+                    if (!last) {
+                        break;
+                    }
+                    cells[i * 2] = -1;
+                    cells[i * 2 + 1] = -1;
+                    continue;
+                }
+                cells[i * 2] = pos[0];
+                cells[i * 2 + 1] = pos[1];
+            }
+            if (fits || last) {
+                return packer;
+            }
+            if (width > height) {
+                height *= 2;
+            } else {
+                width *= 2;
+            }
+        }
+    }
+
+    public GVRSceneObject createSceneObject(GVRContext context) {
+        GVRTexture texture = new GVRTexture(context);
+        texture.setImage(new GVRBitmapImage(context, atlas));
+
+        GVRMaterial material = new GVRMaterial(context, new GVRShaderId(LabelShader.class));
+        material.setVec4("u_color", ((LABEL_COLOR >> 16) & 0xFF) / 255f, ((LABEL_COLOR >> 8) & 0xFF) / 255f,
+                (LABEL_COLOR & 0xFF) / 255f, ((LABEL_COLOR >> 24) & 0xFF) / 255f);
+        material.setMainTexture(texture);
+
+        mesh = new GVRMesh(context, VERTEX_DESCRIPTOR);
+        mesh.setVertices(positions);
+        mesh.setTexCoords(texCoords);
+        mesh.setFloatArray("a_opacity", opacities);
+        mesh.setIndices(indices);
+
+        GVRRenderData rd = new GVRRenderData(context);
+        rd.setMesh(mesh);
+        rd.setMaterial(material);
+        rd.setDepthTest(false);
+        rd.setAlphaBlend(true);
+
+        GVRSceneObject obj = new GVRSceneObject(context);
+        obj.attachRenderData(rd);
+        return obj;
+    }
+
+    /**
+     * @return The number of bytes taken by the atlas texture.
+     */
+    public int getTextureBytes() {
+        return atlas.getWidth() * atlas.getHeight();
+    }
+
+    /**
+     * Mark the positions of the asterisms as changed (e.g. after the catalog was
+     * propagated to a new epoch), so that the labels are moved on the next update.
+     */
+    public void invalidatePositions() {
+        positionsDirty = true;
+    }
+
+    /**
+     * Set the opacity of the given label. The change is uploaded on the next call to update().
+     */
+    public void setOpacity(int label, float opacity) {
+        Arrays.fill(opacities, label * 4, label * 4 + 4, opacity);
+        opacitiesDirty = true;
+    }
+
+    /**
+     * Upload any position or opacity changes made since the last update. Does nothing
+     * if there weren't any, so it can be called every frame.
+     */
+    public void update() {
+        if (positionsDirty && mesh != null) {
+            applyPositions();
+            mesh.setVertices(positions);
+            positionsDirty = false;
+        }
+        if (opacitiesDirty && mesh != null) {
+            mesh.setFloatArray("a_opacity", opacities);
+            opacitiesDirty = false;
+        }
+    }
+
+    /**
+     * Place the corners of each label around the center of its asterism, on the plane
+     * that faces the center of the sky, with its top towards the north pole. Labels of
+     * asterisms with none of their stars in the catalog aren't shown.
+     */
+    private void applyPositions() {
+        for (int i = 0; i < asterisms.size(); i++) {
+            if (!asterisms.get(i).hasStars()) {
+                // nowhere to put it, so collapse it to nothing
+                Arrays.fill(positions, i * 12, i * 12 + 12, 0f);
+                continue;
+            }
+            double ra = Math.toRadians(asterisms.get(i).getCenterRa());
+            double dec = Math.toRadians(asterisms.get(i).getCenterDec());
+            float sinRa = (float) Math.sin(ra), cosRa = (float) Math.cos(ra);
+            float sinDec = (float) Math.sin(dec), cosDec = (float) Math.cos(dec);
+            float cx = -sinRa * cosDec * distance, cy = sinDec * distance, cz = -cosRa * cosDec * distance;
+            float rx = cosRa * halfSizes[i * 2], rz = -sinRa * halfSizes[i * 2];
+            float ux = sinRa * sinDec * halfSizes[i * 2 + 1], uy = cosDec * halfSizes[i * 2 + 1],
+                    uz = cosRa * sinDec * halfSizes[i * 2 + 1];
+            int p = i * 12;
+            p = putCorner(p, cx - rx + ux, cy + uy, cz - rz + uz);
+            p = putCorner(p, cx - rx - ux, cy - uy, cz - rz - uz);
+            p = putCorner(p, cx + rx + ux, cy + uy, cz + rz + uz);
+            putCorner(p, cx + rx - ux, cy - uy, cz + rz - uz);
+        }
+    }
+
+    private int putCorner(int p, float x, float y, float z) {
+        positions[p++] = x;
+        positions[p++] = y;
+        positions[p++] = z;
+        return p;
+    }
+}
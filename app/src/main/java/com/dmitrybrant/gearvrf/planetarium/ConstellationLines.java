@@ -0,0 +1,228 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRMaterial;
+import org.gearvrf.GVRMesh;
+import org.gearvrf.GVRRenderData;
+import org.gearvrf.GVRSceneObject;
+import org.gearvrf.GVRShaderId;
+import org.gearvrf.utility.Log;
+
+/**
+ * The line figures of all asterisms, batched into a single GL_LINES mesh. Each asterism
+ * owns a contiguous range of vertices, and each vertex has an intensity that selects
+ * between the passive and active colors, so that highlighting an asterism only rewrites
+ * its own range of the intensity array.
+ *
+ * The segments are also indexed by position, for picking the asterism that is being
+ * looked at.
+ */
+public class ConstellationLines {
+    private static final String TAG = "ConstellationLines";
+    private static final String VERTEX_DESCRIPTOR = "float3 a_position float a_intensity";
+    private static final float LINE_WIDTH = 2.0f;
+    static final double PICK_RADIUS = 3.0;
+    static final double INDEX_CELL_SIZE = 5.0;
+
+    private final List<Asterism> asterisms;
+    private final float[] positions;
+    private final float[] intensities;
+    // endpoints of each segment, as unit vectors, and the index of the asterism it belongs to
+    private final float[] directions;
+    private final int[] segmentAsterism;
+    // index of the star at each vertex
+    private final int[] vertexStar;
+    private ConstellationIndex index;
+
+    private GVRMesh mesh;
+    private HorizonTransform frame;
+    private boolean positionsDirty;
+    private boolean intensitiesDirty;
+
+    /**
+     * Build the vertex data for the given asterisms, whose stars must already be linked
+     * to the catalog. May be called on a worker thread.
+     */
+    public ConstellationLines(List<Asterism> asterisms, StarCatalog catalog) {
+        this.asterisms = asterisms;
+        int maxSegments = 0;
+        for (Asterism asterism : asterisms) {
+            maxSegments += asterism.getNodes().size() / 2;
+        }
+        int[] stars = new int[maxSegments * 2];
+        int[] owner = new int[maxSegments];
+
+        int count = 0;
+        for (int i = 0; i < asterisms.size(); i++) {
+            Asterism asterism = asterisms.get(i);
+            List<Asterism.AsterismNode> nodes = asterism.getNodes();
+            int first = count;
+            for (int n = 0; n + 1 < nodes.size(); n += 2) {
+                int star1 = nodes.get(n).getStarIndex();
+                int star2 = nodes.get(n + 1).getStarIndex();
+                if (star1 < 0 || star2 < 0) {
+                    Log.w(TAG, "Orphan asterism segment: " + nodes.get(n).getHipNum() + " " + nodes.get(n + 1).getHipNum());
+                    continue;
+                }
+                stars[count * 2] = star1;
+                stars[count * 2 + 1] = star2;
+                owner[count] = i;
+                count++;
+            }
+            asterism.setLineRange(this, first * 2, (count - first) * 2);
+        }
+        segmentAsterism = owner;
+        vertexStar = Arrays.copyOf(stars, count * 2);
+
+        directions = buildDirections(catalog.ra, catalog.dec);
+        index = buildIndex(directions);
+        positions = new float[count * 6];
+        applyFrame();
+        intensities = new float[count * 2];
+    }
+
+    /**
+     * Compute the endpoints of all segments, as unit vectors, from the given star
+     * positions (in degrees), e.g. after the catalog was propagated to another epoch.
+     * May be called on a worker thread.
+     */
+    public float[] buildDirections(double[] ra, double[] dec) {
+        float[] dirs = new float[vertexStar.length * 3];
+        for (int v = 0; v < vertexStar.length; v++) {
+            int star = vertexStar[v];
+            dirs[v * 3] = SkyMath.vectorX(ra[star], dec[star]);
+            dirs[v * 3 + 1] = SkyMath.vectorY(ra[star], dec[star]);
+            dirs[v * 3 + 2] = SkyMath.vectorZ(ra[star], dec[star]);
+        }
+        return dirs;
+    }
+
+    /**
+     * Build the picking index for the given segment endpoints, as returned by
+     * buildDirections(). May be called on a worker thread.
+     */
+    public ConstellationIndex buildIndex(float[] dirs) {
+        int count = dirs.length / 6;
+        float[] a = new float[count * 3];
+        float[] b = new float[count * 3];
+        for (int s = 0; s < count; s++) {
+            System.arraycopy(dirs, s * 6, a, s * 3, 3);
+            System.arraycopy(dirs, s * 6 + 3, b, s * 3, 3);
+        }
+        return new ConstellationIndex(a, b, count, INDEX_CELL_SIZE, PICK_RADIUS);
+    }
+
+    /**
+     * Replace the segment endpoints and picking index with ones built by buildDirections()
+     * and buildIndex(). The new positions are uploaded on the next call to update().
+     */
+    public void setDirections(float[] dirs, ConstellationIndex index) {
+        System.arraycopy(dirs, 0, directions, 0, directions.length);
+        this.index = index;
+        positionsDirty = true;
+    }
+
+    public GVRSceneObject createSceneObject(GVRContext context) {
+        GVRMaterial material = new GVRMaterial(context, new GVRShaderId(ConstellationShader.class));
+        material.setVec4("u_passive_color", 0f, 0.02f, 0.1f, 1f);
+        material.setVec4("u_active_color", 0f, 0.1f, 0.5f, 1f);
+        material.setLineWidth(LINE_WIDTH);
+
+        mesh = new GVRMesh(context, VERTEX_DESCRIPTOR);
+        mesh.setVertices(positions);
+        mesh.setFloatArray("a_intensity", intensities);
+
+        GVRRenderData rd = new GVRRenderData(context);
+        rd.setMesh(mesh);
+        rd.setMaterial(material);
+        rd.setDrawMode(GLES20.GL_LINES);
+        rd.setDepthTest(false);
+
+        GVRSceneObject obj = new GVRSceneObject(context);
+        obj.attachRenderData(rd);
+        return obj;
+    }
+
+    /**
+     * Set the transform from the equatorial frame to the display frame, or null to show
+     * the lines in the equatorial frame.
+     */
+    public void setFrame(HorizonTransform frame) {
+        this.frame = frame;
+        positionsDirty = true;
+    }
+
+    /**
+     * Mark the display frame as changed, so that the lines are transformed again on the
+     * next update.
+     */
+    public void invalidateFrame() {
+        positionsDirty = true;
+    }
+
+    private void applyFrame() {
+        int vertexCount = positions.length / 3;
+        if (frame == null) {
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = directions[i] * StarLoader.DEFAULT_DISTANCE_STAR;
+            }
+        } else {
+            frame.transform(directions, positions, 0, vertexCount, StarLoader.DEFAULT_DISTANCE_STAR);
+        }
+    }
+
+    /**
+     * Set the intensity of the given range of vertices. The change is uploaded on the
+     * next call to update().
+     */
+    public void setIntensity(int firstVertex, int vertexCount, float intensity) {
+        Arrays.fill(intensities, firstVertex, firstVertex + vertexCount, intensity);
+        intensitiesDirty = true;
+    }
+
+    /**
+     * Upload any position or intensity changes made since the last update. Does nothing
+     * if there weren't any, so it can be called every frame.
+     */
+    public void update() {
+        if (positionsDirty && mesh != null) {
+            applyFrame();
+            mesh.setVertices(positions);
+            positionsDirty = false;
+        }
+        if (intensitiesDirty && mesh != null) {
+            mesh.setFloatArray("a_intensity", intensities);
+            intensitiesDirty = false;
+        }
+    }
+
+    /**
+     * @return The asterism with the line closest to the given position, if it passes
+     * within the pick radius, or null if there is none.
+     */
+    public Asterism pick(double ra, double dec) {
+        int segment = index.nearest(ra, dec, PICK_RADIUS);
+        return segment >= 0 ? asterisms.get(segmentAsterism[segment]) : null;
+    }
+}
@@ -0,0 +1,50 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRShader;
+
+/**
+ * Shader for the constellation lines, which blends between a passive and an active
+ * color according to the per-vertex intensity.
+ */
+public class ConstellationShader extends GVRShader {
+
+    private static final String VERTEX_SHADER = "layout(location = 0) in vec3 a_position;\n"
+            + "layout(location = 1) in float a_intensity;\n"
+            + "@MATRIX_UNIFORMS\n"
+            + "@MATERIAL_UNIFORMS\n"
+            + "layout(location = 0) out vec4 v_color;\n"
+            + "void main() {\n"
+            + "    v_color = mix(u_passive_color, u_active_color, a_intensity);\n"
+            + "    gl_Position = u_mvp * vec4(a_position, 1.0);\n"
+            + "}\n";
+
+    private static final String FRAGMENT_SHADER = "precision mediump float;\n"
+            + "layout(location = 0) in vec4 v_color;\n"
+            + "layout(location = 0) out vec4 fragColor;\n"
+            + "void main() {\n"
+            + "    fragColor = v_color;\n"
+            + "}\n";
+
+    public ConstellationShader(GVRContext context) {
+        super("float4 u_passive_color float4 u_active_color", "", "float3 a_position float a_intensity", GLSLESVersion.VULKAN);
+        setSegment("VertexTemplate", VERTEX_SHADER);
+        setSegment("FragmentTemplate", FRAGMENT_SHADER);
+    }
+}
@@ -0,0 +1,182 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.gearvrf.utility.Log;
+
+/**
+ * The descriptions of objects that are bundled with the app, for showing them without a
+ * network connection.
+ *
+ * The database is produced at build time by DescriptionDbPacker (see buildSrc), which
+ * documents the format in detail. It's memory-mapped, and a lookup is a binary search
+ * over the sorted index in place, followed by a single read of the compressed
+ * description, which is inflated on its own.
+ */
+public class DescriptionDatabase {
+    private static final String TAG = "DescriptionDatabase";
+    private static final String DATABASE_ASSET = "descriptions.bin";
+    private static final int DATABASE_MAGIC = 0x44455343;
+    private static final int DATABASE_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 16;
+
+    private ByteBuffer buffer;
+    private int count;
+    private int titleTableOffset;
+
+    /**
+     * Open the database bundled with the app. If it can't be read, the database is empty.
+     */
+    public DescriptionDatabase(Context context) {
+        AssetFileDescriptor fd = null;
+        FileInputStream instream = null;
+        try {
+            fd = context.getAssets().openFd(DATABASE_ASSET);
+            instream = fd.createInputStream();
+            setBuffer(instream.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength()));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read description database.", e);
+        } finally {
+            if (instream != null) {
+                try { instream.close(); }
+                catch(Exception e) {
+                    //
+                }
+            }
+            if (fd != null) {
+                try { fd.close(); }
+                catch(Exception e) {
+                    //
+                }
+            }
+        }
+    }
+
+    /**
+     * Open a database that was already read into the given buffer.
+     */
+    public DescriptionDatabase(ByteBuffer buffer) throws IOException {
+        setBuffer(buffer);
+    }
+
+    private void setBuffer(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != DATABASE_MAGIC || buffer.getInt(4) != DATABASE_VERSION) {
+            throw new IOException("Unsupported description database format.");
+        }
+        count = buffer.getInt(8);
+        titleTableOffset = buffer.getInt(12);
+        this.buffer = buffer;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return The description of the page with the given title, or null if it isn't in
+     * the database.
+     */
+    public synchronized String get(String title) {
+        int entry = find(title.getBytes(StandardCharsets.UTF_8));
+        if (entry < 0) {
+            return null;
+        }
+        int pos = HEADER_SIZE + entry * ENTRY_SIZE;
+        int offset = buffer.getInt(pos + 4);
+        int compressedLength = buffer.getInt(pos + 8);
+        int length = buffer.getInt(pos + 12);
+
+        byte[] compressed = new byte[compressedLength];
+        ByteBuffer src = buffer.duplicate();
+        src.position(offset);
+        src.get(compressed);
+
+        byte[] html = new byte[length];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int n = inflater.inflate(html, inflated, length - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != length) {
+                Log.e(TAG, "Truncated description: " + title);
+                return null;
+            }
+        } catch (DataFormatException e) {
+            Log.e(TAG, "Corrupt description: " + title, e);
+            return null;
+        } finally {
+            inflater.end();
+        }
+        return new String(html, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The index of the entry with the given title, or -1 if there is none.
+     */
+    private int find(byte[] title) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareTitle(mid, title);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compare the title of the given entry with the given UTF-8 bytes, as unsigned bytes
+     * (which is the order the entries are sorted in).
+     */
+    private int compareTitle(int entry, byte[] title) {
+        int pos = titleTableOffset + buffer.getInt(HEADER_SIZE + entry * ENTRY_SIZE);
+        int length = buffer.getShort(pos) & 0xFFFF;
+        pos += 2;
+        int common = Math.min(length, title.length);
+        for (int i = 0; i < common; i++) {
+            int diff = (buffer.get(pos + i) & 0xFF) - (title[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - title.length;
+    }
+}
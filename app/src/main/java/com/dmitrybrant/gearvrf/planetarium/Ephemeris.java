@@ -0,0 +1,215 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import com.mhuss.AstroLib.NoInitException;
+import com.mhuss.AstroLib.ObsInfo;
+import com.mhuss.AstroLib.PlanetData;
+import com.mhuss.AstroLib.Planets;
+
+import org.gearvrf.utility.Log;
+
+/**
+ * Positions of the Sun, Moon and planets at any time, cheap enough to be evaluated every
+ * frame.
+ *
+ * Computing a position with AstroLib's PlanetData is expensive, so instead the direction
+ * of each body (as a unit vector, to avoid trouble with RA wrapping around) is fitted
+ * with Chebyshev polynomials over a window of time, and the fit is evaluated instead.
+ * The distance of each body from the Earth is fitted the same way.
+ * Each body keeps a few of the most recently used windows, so that moving back and forth
+ * in time doesn't require fitting them again. Windows are shorter for faster bodies.
+ *
+ * This class is not thread-safe.
+ */
+public class Ephemeris {
+    private static final String TAG = "Ephemeris";
+    private static final int DEGREE = 10;
+    private static final int CACHED_WINDOWS = 4;
+    private static final double JD_UNIX_EPOCH = 2440587.5;
+    private static final double MILLIS_PER_DAY = 86400000.0;
+
+    private final ObsInfo obsInfo;
+    private final Body[] bodies = new Body[Planets.LUNA + 1];
+    private final PlanetData planetData = new PlanetData();
+    // scratch space for fitting
+    private final double[][] samples = new double[4][DEGREE];
+
+    public Ephemeris(ObsInfo obsInfo) {
+        this.obsInfo = obsInfo;
+    }
+
+    public ObsInfo getObsInfo() {
+        return obsInfo;
+    }
+
+    /**
+     * @return The Julian date of the given time, in milliseconds since the Unix epoch (UTC).
+     */
+    public static double julianDate(long millis) {
+        return millis / MILLIS_PER_DAY + JD_UNIX_EPOCH;
+    }
+
+    /**
+     * Compute the RA and Dec (in degrees) of the given body at the given Julian date.
+     * @param planetId One of the constants in AstroLib's Planets class.
+     * @param out Receives the RA and Dec, in that order.
+     */
+    public void getPosition(int planetId, double jd, double[] out) {
+        Window w = getWindow(planetId, jd);
+        double t = w.time(jd);
+        double x = clenshaw(w.coeffs[0], t);
+        double y = clenshaw(w.coeffs[1], t);
+        double z = clenshaw(w.coeffs[2], t);
+        out[0] = SkyMath.wrapDegrees(Math.toDegrees(Math.atan2(y, x)));
+        out[1] = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+    }
+
+    /**
+     * @return The distance of the given body from the Earth, in AU, at the given Julian
+     * date.
+     */
+    public double getDistance(int planetId, double jd) {
+        Window w = getWindow(planetId, jd);
+        return clenshaw(w.coeffs[3], w.time(jd));
+    }
+
+    /**
+     * Compute the RA and Dec (in degrees) of the given body directly with AstroLib,
+     * bypassing the fits. This is what the fits are made from.
+     */
+    public void getExactPosition(int planetId, double jd, double[] out) {
+        try {
+            planetData.calc(planetId, jd, obsInfo);
+            out[0] = SkyMath.wrapDegrees(Math.toDegrees(planetData.getRightAscension()));
+            out[1] = Math.toDegrees(planetData.getDeclination());
+        } catch (NoInitException e) {
+            Log.e(TAG, "Failed to compute position.", e);
+        }
+    }
+
+    /**
+     * @return Length of the fitted windows, in days, for the given body.
+     */
+    private static double windowLength(int planetId) {
+        if (planetId == Planets.LUNA) {
+            return 1.0;
+        } else if (planetId == Planets.SUN || planetId == Planets.MERCURY || planetId == Planets.VENUS
+                || planetId == Planets.MARS) {
+            return 8.0;
+        }
+        return 32.0;
+    }
+
+    private Window getWindow(int planetId, double jd) {
+        Body body = bodies[planetId];
+        if (body == null) {
+            body = new Body(windowLength(planetId));
+            bodies[planetId] = body;
+        }
+        long index = (long) Math.floor(jd / body.windowLength);
+        body.useCount++;
+        Window oldest = body.windows[0];
+        for (Window w : body.windows) {
+            if (w.index == index && w.valid) {
+                w.lastUsed = body.useCount;
+                return w;
+            }
+            if (w.lastUsed < oldest.lastUsed) {
+                oldest = w;
+            }
+        }
+        fit(planetId, index, body.windowLength, oldest);
+        oldest.lastUsed = body.useCount;
+        return oldest;
+    }
+
+    /**
+     * Fit the direction and distance of the given body over the given window, by
+     * sampling them at the Chebyshev nodes.
+     */
+    private void fit(int planetId, long index, double length, Window w) {
+        for (int k = 0; k < DEGREE; k++) {
+            double node = Math.cos(Math.PI * (k + 0.5) / DEGREE);
+            try {
+                planetData.calc(planetId, (index + (node + 1.0) / 2.0) * length, obsInfo);
+                double ra = planetData.getRightAscension();
+                double dec = planetData.getDeclination();
+                samples[0][k] = Math.cos(dec) * Math.cos(ra);
+                samples[1][k] = Math.cos(dec) * Math.sin(ra);
+                samples[2][k] = Math.sin(dec);
+                samples[3][k] = planetData.getEclipticRadius();
+            } catch (NoInitException e) {
+                Log.e(TAG, "Failed to compute position.", e);
+            }
+        }
+        for (int c = 0; c < samples.length; c++) {
+            for (int j = 0; j < DEGREE; j++) {
+                double sum = 0.0;
+                for (int k = 0; k < DEGREE; k++) {
+                    sum += samples[c][k] * Math.cos(Math.PI * j * (k + 0.5) / DEGREE);
+                }
+                w.coeffs[c][j] = 2.0 * sum / DEGREE;
+            }
+            w.coeffs[c][0] /= 2.0;
+        }
+        w.index = index;
+        w.start = index * length;
+        w.length = length;
+        w.valid = true;
+    }
+
+    private static double clenshaw(double[] c, double t) {
+        double b1 = 0.0, b2 = 0.0;
+        for (int j = c.length - 1; j >= 1; j--) {
+            double b = 2.0 * t * b1 - b2 + c[j];
+            b2 = b1;
+            b1 = b;
+        }
+        return t * b1 - b2 + c[0];
+    }
+
+    private static class Body {
+        final double windowLength;
+        final Window[] windows = new Window[CACHED_WINDOWS];
+        long useCount;
+
+        Body(double windowLength) {
+            this.windowLength = windowLength;
+            for (int i = 0; i < windows.length; i++) {
+                windows[i] = new Window();
+            }
+        }
+    }
+
+    private static class Window {
+        // x, y and z of the direction, and the distance
+        final double[][] coeffs = new double[4][DEGREE];
+        long index;
+        double start;
+        double length;
+        boolean valid;
+        long lastUsed;
+
+        /**
+         * @return The given Julian date, scaled to the range of the polynomials (-1 to 1).
+         */
+        double time(double jd) {
+            return 2.0 * (jd - start) / length - 1.0;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Moves the positions of the stars in the catalog from the catalog epoch (J2000) to any
+ * other date, by applying their proper motion, followed by precession (IAU 1976) and the
+ * main term of nutation.
+ *
+ * The direction of each star at the catalog epoch, and its motion across the sky, are
+ * computed once up front as vectors, so that propagating a star costs a multiply-add,
+ * a matrix multiplication and a conversion back to RA and Dec. The stars are split into
+ * chunks that are processed in parallel.
+ *
+ * Proper motion is applied linearly along the tangent plane, and the precession angles
+ * are polynomials fitted around J2000, so both become less accurate the further the
+ * target date is from J2000 (by many thousands of years). The star catalog that ships
+ * with the app has no proper motion columns (see StarCatalogCompiler), so for now its
+ * stars are only moved by precession and nutation.
+ */
+public class EpochPropagator {
+    // epoch of the catalog
+    public static final double JD_J2000 = 2451545.0;
+    private static final double DAYS_PER_YEAR = 365.25;
+    private static final double MAS_TO_RADIANS = Math.toRadians(1.0 / 3600000.0);
+    private static final double ARCSEC_TO_RADIANS = Math.toRadians(1.0 / 3600.0);
+    // stars per chunk of work
+    private static final int CHUNK_SIZE = 4096;
+
+    private final ForkJoinPool pool;
+    private final int count;
+    // equatorial unit vectors (x towards RA 0, z towards the pole) at the catalog epoch,
+    // and their rate of change, in radians per year
+    private final float[] base;
+    private final float[] motion;
+
+    /**
+     * @param catalog Catalog with the positions at the epoch of the catalog, which are
+     *                captured here, so this must be created before propagating.
+     */
+    public EpochPropagator(StarCatalog catalog, ForkJoinPool pool) {
+        this.pool = pool;
+        count = catalog.size();
+        base = new float[count * 3];
+        motion = new float[count * 3];
+        for (int i = 0; i < count; i++) {
+            double ra = Math.toRadians(catalog.ra[i]);
+            double dec = Math.toRadians(catalog.dec[i]);
+            double sinRa = Math.sin(ra), cosRa = Math.cos(ra);
+            double sinDec = Math.sin(dec), cosDec = Math.cos(dec);
+            base[i * 3] = (float) (cosDec * cosRa);
+            base[i * 3 + 1] = (float) (cosDec * sinRa);
+            base[i * 3 + 2] = (float) sinDec;
+
+            // motion along the local east and north directions
+            double pmRa = catalog.pmRa[i] * MAS_TO_RADIANS;
+            double pmDec = catalog.pmDec[i] * MAS_TO_RADIANS;
+            motion[i * 3] = (float) (-pmRa * sinRa - pmDec * sinDec * cosRa);
+            motion[i * 3 + 1] = (float) (pmRa * cosRa - pmDec * sinDec * sinRa);
+            motion[i * 3 + 2] = (float) (pmDec * cosDec);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return The pool that the propagation runs on, which may also be used for starting
+     * the propagation in the background.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Compute the positions of all the stars at the given date.
+     * @param outRa Receives the RA of each star, in degrees.
+     * @param outDec Receives the Dec of each star, in degrees.
+     */
+    public void propagate(double jd, double[] outRa, double[] outDec) {
+        double[] m = new double[9];
+        precessionNutationMatrix(jd, m);
+        float years = (float) ((jd - JD_J2000) / DAYS_PER_YEAR);
+        pool.invoke(new Chunk(m, years, outRa, outDec, 0, count));
+    }
+
+    /**
+     * Move a single fixed position (one without proper motion) from J2000 by the given
+     * matrix, as computed by precessionNutationMatrix().
+     * @param out Receives the RA and Dec, in degrees.
+     */
+    public static void precess(double[] m, double ra, double dec, double[] out) {
+        double raRad = Math.toRadians(ra);
+        double decRad = Math.toRadians(dec);
+        double x = Math.cos(decRad) * Math.cos(raRad);
+        double y = Math.cos(decRad) * Math.sin(raRad);
+        double z = Math.sin(decRad);
+        double px = m[0] * x + m[1] * y + m[2] * z;
+        double py = m[3] * x + m[4] * y + m[5] * z;
+        double pz = m[6] * x + m[7] * y + m[8] * z;
+        out[0] = SkyMath.wrapDegrees(Math.toDegrees(Math.atan2(py, px)));
+        out[1] = Math.toDegrees(Math.atan2(pz, Math.sqrt(px * px + py * py)));
+    }
+
+    private void propagate(double[] m, float years, double[] outRa, double[] outDec, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int p = i * 3;
+            double x = base[p] + years * motion[p];
+            double y = base[p + 1] + years * motion[p + 1];
+            double z = base[p + 2] + years * motion[p + 2];
+            double px = m[0] * x + m[1] * y + m[2] * z;
+            double py = m[3] * x + m[4] * y + m[5] * z;
+            double pz = m[6] * x + m[7] * y + m[8] * z;
+            outRa[i] = SkyMath.wrapDegrees(Math.toDegrees(Math.atan2(py, px)));
+            outDec[i] = Math.toDegrees(Math.atan2(pz, Math.sqrt(px * px + py * py)));
+        }
+    }
+
+    /**
+     * Compute the matrix (row-major) that takes equatorial vectors for J2000 into the
+     * true equator and equinox of the given date.
+     */
+    public static void precessionNutationMatrix(double jd, double[] out) {
+        double t = (jd - JD_J2000) / (DAYS_PER_YEAR * 100.0);
+
+        // precession angles, IAU 1976
+        double zeta = (2306.2181 * t + 0.30188 * t * t + 0.017998 * t * t * t) * ARCSEC_TO_RADIANS;
+        double z = (2306.2181 * t + 1.09468 * t * t + 0.018203 * t * t * t) * ARCSEC_TO_RADIANS;
+        double theta = (2004.3109 * t - 0.42665 * t * t - 0.041833 * t * t * t) * ARCSEC_TO_RADIANS;
+        double[] p = new double[9];
+        double cz = Math.cos(zeta), sz = Math.sin(zeta);
+        double cZ = Math.cos(z), sZ = Math.sin(z);
+        double ct = Math.cos(theta), st = Math.sin(theta);
+        p[0] = cz * ct * cZ - sz * sZ;
+        p[1] = -sz * ct * cZ - cz * sZ;
+        p[2] = -st * cZ;
+        p[3] = cz * ct * sZ + sz * cZ;
+        p[4] = -sz * ct * sZ + cz * cZ;
+        p[5] = -st * sZ;
+        p[6] = cz * st;
+        p[7] = -sz * st;
+        p[8] = ct;
+
+        // nutation, from the main (18.6-year) term only
+        double omega = Math.toRadians(125.04452 - 1934.136261 * t);
+        double dPsi = -17.20 * Math.sin(omega) * ARCSEC_TO_RADIANS;
+        double dEps = 9.20 * Math.cos(omega) * ARCSEC_TO_RADIANS;
+        double eps = Math.toRadians(23.439291) - 46.815 * t * ARCSEC_TO_RADIANS;
+        double[] n = new double[9];
+        double ce = Math.cos(eps), se = Math.sin(eps);
+        double ce2 = Math.cos(eps + dEps), se2 = Math.sin(eps + dEps);
+        double cp = Math.cos(dPsi), sp = Math.sin(dPsi);
+        n[0] = cp;
+        n[1] = -sp * ce;
+        n[2] = -sp * se;
+        n[3] = sp * ce2;
+        n[4] = cp * ce * ce2 + se * se2;
+        n[5] = cp * se * ce2 - ce * se2;
+        n[6] = sp * se2;
+        n[7] = cp * ce * se2 - se * ce2;
+        n[8] = cp * se * se2 + ce * ce2;
+
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 3; c++) {
+                out[r * 3 + c] = n[r * 3] * p[c] + n[r * 3 + 1] * p[3 + c] + n[r * 3 + 2] * p[6 + c];
+            }
+        }
+    }
+
+    private class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] m;
+        private final float years;
+        private final double[] outRa;
+        private final double[] outDec;
+        private final int from;
+        private final int to;
+
+        Chunk(double[] m, float years, double[] outRa, double[] outDec, int from, int to) {
+            this.m = m;
+            this.years = years;
+            this.outRa = outRa;
+            this.outDec = outDec;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                propagate(m, years, outRa, outDec, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Chunk(m, years, outRa, outDec, from, mid),
+                    new Chunk(m, years, outRa, outDec, mid, to));
+        }
+    }
+}
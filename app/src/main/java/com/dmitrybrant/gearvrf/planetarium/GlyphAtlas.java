@@ -0,0 +1,165 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.gearvrf.GVRBitmapImage;
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRTexture;
+import org.gearvrf.utility.Log;
+
+/**
+ * A texture holding the glyphs of a font, rendered once at a fixed pixel size into an
+ * alpha-only bitmap, from which any number of GlyphText objects can draw strings as
+ * quads. Printable ASCII is rendered up front, and any other character is added the
+ * first time it's needed (which uploads the texture again), for as long as there's room.
+ */
+public class GlyphAtlas {
+    private static final String TAG = "GlyphAtlas";
+    private static final int PADDING = 2;
+    private static final int FIRST_ASCII = 32;
+    private static final int LAST_ASCII = 126;
+
+    /**
+     * Position of a glyph in the atlas, and its metrics, in pixels.
+     */
+    public static class Glyph {
+        public float u0, v0, u1, v1;
+        // offset of the glyph's bitmap from the pen position (Y down), and its size
+        public int left, top, width, height;
+        public float advance;
+    }
+
+    private final Paint paint;
+    private final Bitmap bitmap;
+    private final Canvas canvas;
+    private final RectPacker packer;
+    private final Glyph[] ascii = new Glyph[LAST_ASCII + 1];
+    private final Map<Integer, Glyph> others = new HashMap<>();
+    private final float ascent;
+    private final float descent;
+    private final Rect bounds = new Rect();
+    private final int[] cell = new int[2];
+
+    private GVRBitmapImage image;
+    private GVRTexture texture;
+    private boolean dirty;
+
+    /**
+     * @param textSize Size of the glyphs in the atlas, in pixels, which should be about
+     *                 the size at which the text is seen, or a bit larger.
+     * @param atlasSize Width and height of the atlas, in pixels.
+     */
+    public GlyphAtlas(float textSize, int atlasSize) {
+        paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(0xFFFFFFFF);
+        paint.setTextSize(textSize);
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        ascent = metrics.ascent;
+        descent = metrics.descent;
+
+        bitmap = Bitmap.createBitmap(atlasSize, atlasSize, Bitmap.Config.ALPHA_8);
+        canvas = new Canvas(bitmap);
+        packer = new RectPacker(atlasSize, atlasSize, PADDING);
+        for (int c = FIRST_ASCII; c <= LAST_ASCII; c++) {
+            ascii[c] = render(c);
+        }
+    }
+
+    /**
+     * @return Distance from the baseline to the top of the line, in pixels (negative, i.e. up).
+     */
+    public float getAscent() {
+        return ascent;
+    }
+
+    /**
+     * @return Distance from the baseline to the bottom of the line, in pixels.
+     */
+    public float getDescent() {
+        return descent;
+    }
+
+    /**
+     * @return The glyph of the given code point, rendering it into the atlas if it's not
+     * there yet, or null if the atlas is full.
+     */
+    public Glyph getGlyph(int codePoint) {
+        if (codePoint >= FIRST_ASCII && codePoint <= LAST_ASCII) {
+            return ascii[codePoint];
+        }
+        Glyph glyph = others.get(codePoint);
+        if (glyph == null && !others.containsKey(codePoint)) {
+            glyph = render(codePoint);
+            others.put(codePoint, glyph);
+            if (glyph == null) {
+                Log.w(TAG, "No room for glyph " + codePoint);
+            }
+        }
+        return glyph;
+    }
+
+    /**
+     * @return The texture of the atlas, uploading any glyphs that were added since the
+     * last call. Must be called on the GL thread.
+     */
+    public GVRTexture getTexture(GVRContext context) {
+        if (texture == null) {
+            image = new GVRBitmapImage(context, bitmap);
+            texture = new GVRTexture(context);
+            texture.setImage(image);
+            dirty = false;
+        } else if (dirty) {
+            image.setBitmap(bitmap);
+            dirty = false;
+        }
+        return texture;
+    }
+
+    private Glyph render(int codePoint) {
+        String str = new String(Character.toChars(codePoint));
+        paint.getTextBounds(str, 0, str.length(), bounds);
+        Glyph glyph = new Glyph();
+        glyph.advance = paint.measureText(str);
+        glyph.left = bounds.left;
+        glyph.top = bounds.top;
+        glyph.width = bounds.width();
+        glyph.height = bounds.height();
+        if (glyph.width == 0 || glyph.height == 0) {
+            // nothing to draw, e.g. a space
+            return glyph;
+        }
+        if (!packer.insert(glyph.width, glyph.height, cell)) {
+            return null;
+        }
+        canvas.drawText(str, cell[0] - bounds.left, cell[1] - bounds.top, paint);
+        glyph.u0 = (float) cell[0] / bitmap.getWidth();
+        glyph.v0 = (float) cell[1] / bitmap.getHeight();
+        glyph.u1 = (float) (cell[0] + glyph.width) / bitmap.getWidth();
+        glyph.v1 = (float) (cell[1] + glyph.height) / bitmap.getHeight();
+        dirty = true;
+        return glyph;
+    }
+}
@@ -0,0 +1,153 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.Arrays;
+
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRMaterial;
+import org.gearvrf.GVRMesh;
+import org.gearvrf.GVRRenderData;
+import org.gearvrf.GVRSceneObject;
+import org.gearvrf.GVRShaderId;
+
+/**
+ * A single line of text, drawn as one quad per glyph from a GlyphAtlas, and centered on
+ * the origin of this object. The mesh is only rebuilt when the text changes, so (unlike
+ * a view that is rendered into a texture) idle text costs nothing but its draw call, and
+ * empty text isn't drawn at all.
+ */
+public class GlyphText extends GVRSceneObject {
+    private static final String VERTEX_DESCRIPTOR = "float3 a_position float2 a_texcoord float a_opacity";
+
+    private final GVRContext context;
+    private final GlyphAtlas atlas;
+    private final float scale;
+    private final GVRMaterial material;
+    private String text = "";
+
+    /**
+     * @param lineHeight Height of a line of text (from the ascent to the descent of the
+     *                   font), in scene units.
+     */
+    public GlyphText(GVRContext context, GlyphAtlas atlas, float lineHeight) {
+        super(context);
+        this.context = context;
+        this.atlas = atlas;
+        scale = lineHeight / (atlas.getDescent() - atlas.getAscent());
+
+        material = new GVRMaterial(context, new GVRShaderId(LabelShader.class));
+        material.setMainTexture(atlas.getTexture(context));
+        setTextColor(0xFFFFFFFF);
+
+        GVRRenderData rd = new GVRRenderData(context);
+        rd.setMaterial(material);
+        rd.setAlphaBlend(true);
+        attachRenderData(rd);
+        setEnable(false);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Change the text, rebuilding the mesh if it's different from the current text. Must
+     * be called on the GL thread.
+     */
+    public void setText(String text) {
+        if (text == null) {
+            text = "";
+        }
+        if (text.equals(this.text)) {
+            return;
+        }
+        this.text = text;
+        GVRMesh mesh = text.isEmpty() ? null : buildMesh(text);
+        if (mesh == null) {
+            setEnable(false);
+            return;
+        }
+        getRenderData().setMesh(mesh);
+        // any glyphs that were added to the atlas for this text are uploaded now
+        atlas.getTexture(context);
+        setEnable(true);
+    }
+
+    public void setTextColor(int color) {
+        material.setVec4("u_color", ((color >> 16) & 0xFF) / 255f, ((color >> 8) & 0xFF) / 255f,
+                (color & 0xFF) / 255f, ((color >> 24) & 0xFF) / 255f);
+    }
+
+    /**
+     * @return A mesh with a quad for each visible glyph of the given text, or null if
+     * there aren't any.
+     */
+    private GVRMesh buildMesh(String text) {
+        int count = text.codePointCount(0, text.length());
+        GlyphAtlas.Glyph[] glyphs = new GlyphAtlas.Glyph[count];
+        float width = 0f;
+        for (int i = 0, offset = 0; i < count; i++) {
+            int codePoint = text.codePointAt(offset);
+            offset += Character.charCount(codePoint);
+            glyphs[i] = atlas.getGlyph(codePoint);
+            width += glyphs[i] != null ? glyphs[i].advance : 0f;
+        }
+
+        float[] positions = new float[count * 12];
+        float[] texCoords = new float[count * 8];
+        float[] opacities = new float[count * 4];
+        char[] indices = new char[count * 6];
+        // pixel coordinates (Y down) of the pen, relative to the center of the line
+        float penX = -width / 2f;
+        float baseline = -(atlas.getAscent() + atlas.getDescent()) / 2f;
+        int quads = 0;
+        for (GlyphAtlas.Glyph glyph : glyphs) {
+            if (glyph == null) {
+                continue;
+            }
+            if (glyph.width > 0) {
+                float x0 = (penX + glyph.left) * scale;
+                float x1 = x0 + glyph.width * scale;
+                float y0 = -(baseline + glyph.top) * scale;
+                float y1 = y0 - glyph.height * scale;
+                // top left, bottom left, top right, bottom right
+                float[] quad = { x0, y0, 0f, x0, y1, 0f, x1, y0, 0f, x1, y1, 0f };
+                float[] uv = { glyph.u0, glyph.v0, glyph.u0, glyph.v1, glyph.u1, glyph.v0, glyph.u1, glyph.v1 };
+                System.arraycopy(quad, 0, positions, quads * 12, 12);
+                System.arraycopy(uv, 0, texCoords, quads * 8, 8);
+                int v = quads * 4;
+                char[] tris = { (char) v, (char) (v + 1), (char) (v + 2), (char) (v + 1), (char) (v + 3), (char) (v + 2) };
+                System.arraycopy(tris, 0, indices, quads * 6, 6);
+                quads++;
+            }
+            penX += glyph.advance;
+        }
+        if (quads == 0) {
+            return null;
+        }
+        Arrays.fill(opacities, 1f);
+
+        GVRMesh mesh = new GVRMesh(context, VERTEX_DESCRIPTOR);
+        mesh.setVertices(Arrays.copyOf(positions, quads * 12));
+        mesh.setTexCoords(Arrays.copyOf(texCoords, quads * 8));
+        mesh.setFloatArray("a_opacity", Arrays.copyOf(opacities, quads * 4));
+        mesh.setIndices(Arrays.copyOf(indices, quads * 6));
+        return mesh;
+    }
+}
@@ -0,0 +1,84 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from Hipparcos number to catalog index, using primitive
+ * arrays only (no boxing). Hipparcos numbers are never negative, which lets us use
+ * a negative key to mark empty slots.
+ */
+public class HipIndex {
+    private static final int EMPTY = -1;
+
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    public HipIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Associate the given Hipparcos number with a catalog index. If the number is
+     * already present, its index is replaced.
+     */
+    public void put(int hipNum, int index) {
+        if (size >= keys.length / 2) {
+            throw new IllegalStateException("HipIndex capacity exceeded.");
+        }
+        int slot = hash(hipNum) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == hipNum) {
+                values[slot] = index;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = hipNum;
+        values[slot] = index;
+        size++;
+    }
+
+    /**
+     * @return The catalog index for the given Hipparcos number, or -1 if not present.
+     */
+    public int get(int hipNum) {
+        int slot = hash(hipNum) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == hipNum) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
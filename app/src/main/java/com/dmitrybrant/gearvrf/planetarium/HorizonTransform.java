@@ -0,0 +1,243 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+/**
+ * The rotation from the equatorial frame of the catalog to the frame in which the sky is
+ * shown, and the effects of the atmosphere near the horizon.
+ *
+ * In equatorial mode, the celestial pole is straight up, and the sky simply turns around
+ * it with the rotation of the Earth. In horizon mode, the sky is shown as seen by an
+ * observer at a given latitude and local sidereal time: the zenith is straight up, north
+ * is in the -Z direction and east in the +X direction.
+ *
+ * Either way the conversion is a single rotation matrix, which is applied to whole arrays
+ * of direction vectors at once. In horizon mode, atmospheric refraction (which lifts
+ * objects near the horizon) may be applied on top of it, and the dimming of objects near
+ * the horizon by the atmosphere (extinction) may be computed from the result.
+ */
+public class HorizonTransform {
+    // Earth's rotation angle: GMST at J2000, in degrees, and its rate in degrees per day
+    private static final double GMST_J2000 = 280.46061837;
+    private static final double SIDEREAL_DEGREES_PER_DAY = 360.98564736629;
+    private static final double JD_J2000 = 2451545.0;
+
+    // magnitudes of extinction per airmass, for a reasonably clear sky
+    private static final float EXTINCTION_COEFFICIENT = 0.25f;
+    // below this altitude (as the sine), refraction is computed with the full formula;
+    // above it, the simpler cotangent form is close enough and needs no trigonometry.
+    private static final float REFRACTION_FULL_BELOW = 0.26f;
+    private static final float REFRACTION_MIN_ALTITUDE = -2f;
+
+    // row-major rotation matrix
+    private final float[] m = new float[9];
+    private boolean horizonMode;
+    private boolean refraction = true;
+    private boolean extinction = true;
+    private float rotationW = 1f;
+    private float rotationX;
+    private float rotationY;
+    private float rotationZ;
+
+    public HorizonTransform() {
+        setEquatorial(0.0);
+    }
+
+    /**
+     * @return The local sidereal time, in degrees, at the given Julian date (UT) and
+     * longitude (in degrees, positive east).
+     */
+    public static double localSiderealTime(double jd, double longitude) {
+        return SkyMath.wrapDegrees(GMST_J2000 + SIDEREAL_DEGREES_PER_DAY * (jd - JD_J2000) + longitude);
+    }
+
+    public boolean isHorizonMode() {
+        return horizonMode;
+    }
+
+    public void setRefraction(boolean refraction) {
+        this.refraction = refraction;
+    }
+
+    public void setExtinction(boolean extinction) {
+        this.extinction = extinction;
+    }
+
+    /**
+     * Show the sky with the pole straight up, turned by the given angle (in degrees)
+     * westward around the pole.
+     */
+    public void setEquatorial(double angle) {
+        horizonMode = false;
+        double a = -Math.toRadians(angle);
+        float c = (float) Math.cos(a);
+        float s = (float) Math.sin(a);
+        set(c, 0f, s,
+                0f, 1f, 0f,
+                -s, 0f, c);
+    }
+
+    /**
+     * Show the sky as seen from the given latitude at the given local sidereal time (both
+     * in degrees).
+     */
+    public void setHorizon(double latitude, double siderealTime) {
+        horizonMode = true;
+        double lat = Math.toRadians(latitude);
+        double lst = Math.toRadians(siderealTime);
+        float sinLat = (float) Math.sin(lat);
+        float cosLat = (float) Math.cos(lat);
+        float sinLst = (float) Math.sin(lst);
+        float cosLst = (float) Math.cos(lst);
+        // rows: east, up, south (i.e. -north), in terms of the equatorial scene vector
+        set(-cosLst, 0f, sinLst,
+                -cosLat * sinLst, sinLat, -cosLat * cosLst,
+                -sinLat * sinLst, -cosLat, -sinLat * cosLst);
+    }
+
+    private void set(float m00, float m01, float m02, float m10, float m11, float m12,
+                     float m20, float m21, float m22) {
+        m[0] = m00; m[1] = m01; m[2] = m02;
+        m[3] = m10; m[4] = m11; m[5] = m12;
+        m[6] = m20; m[7] = m21; m[8] = m22;
+
+        // the same rotation, as a quaternion, for turning scene objects
+        float trace = m00 + m11 + m22;
+        if (trace > 0f) {
+            float s = (float) Math.sqrt(trace + 1f) * 2f;
+            rotationW = s / 4f;
+            rotationX = (m21 - m12) / s;
+            rotationY = (m02 - m20) / s;
+            rotationZ = (m10 - m01) / s;
+        } else if (m00 > m11 && m00 > m22) {
+            float s = (float) Math.sqrt(1f + m00 - m11 - m22) * 2f;
+            rotationW = (m21 - m12) / s;
+            rotationX = s / 4f;
+            rotationY = (m01 + m10) / s;
+            rotationZ = (m02 + m20) / s;
+        } else if (m11 > m22) {
+            float s = (float) Math.sqrt(1f + m11 - m00 - m22) * 2f;
+            rotationW = (m02 - m20) / s;
+            rotationX = (m01 + m10) / s;
+            rotationY = s / 4f;
+            rotationZ = (m12 + m21) / s;
+        } else {
+            float s = (float) Math.sqrt(1f + m22 - m00 - m11) * 2f;
+            rotationW = (m10 - m01) / s;
+            rotationX = (m02 + m20) / s;
+            rotationY = (m12 + m21) / s;
+            rotationZ = s / 4f;
+        }
+    }
+
+    public float getRotationW() {
+        return rotationW;
+    }
+
+    public float getRotationX() {
+        return rotationX;
+    }
+
+    public float getRotationY() {
+        return rotationY;
+    }
+
+    public float getRotationZ() {
+        return rotationZ;
+    }
+
+    /**
+     * Transform a range of direction vectors (unit vectors in the equatorial frame,
+     * packed as x, y, z) into the display frame, applying refraction in horizon mode.
+     * @param scale Factor by which the results are multiplied, e.g. to place them at a
+     *              given distance.
+     */
+    public void transform(float[] src, float[] dst, int from, int to, float scale) {
+        final float[] m = this.m;
+        boolean refract = horizonMode && refraction;
+        for (int i = from; i < to; i++) {
+            int p = i * 3;
+            float x = src[p], y = src[p + 1], z = src[p + 2];
+            float tx = m[0] * x + m[1] * y + m[2] * z;
+            float ty = m[3] * x + m[4] * y + m[5] * z;
+            float tz = m[6] * x + m[7] * y + m[8] * z;
+            if (refract) {
+                float horiz = (float) Math.sqrt(tx * tx + tz * tz);
+                float r = refractionAngle(ty, horiz);
+                if (r > 0f && horiz > 1e-6f) {
+                    // move the point towards the zenith by r radians, along its vertical circle
+                    float k = r * ty / horiz;
+                    tx -= k * tx;
+                    tz -= k * tz;
+                    ty += r * horiz;
+                }
+            }
+            dst[p] = tx * scale;
+            dst[p + 1] = ty * scale;
+            dst[p + 2] = tz * scale;
+        }
+    }
+
+    /**
+     * @return The amount (in radians) by which refraction lifts an object whose direction
+     * has the given vertical and horizontal components.
+     */
+    private static float refractionAngle(float up, float horiz) {
+        if (up >= REFRACTION_FULL_BELOW) {
+            // about 1 arcminute times the cotangent of the altitude
+            return 2.9e-4f * horiz / up;
+        }
+        double alt = Math.toDegrees(Math.atan2(up, horiz));
+        if (alt < REFRACTION_MIN_ALTITUDE) {
+            return 0f;
+        }
+        // Saemundsson's formula, in arcminutes, from the true altitude
+        double arcmin = 1.02 / Math.tan(Math.toRadians(alt + 10.3 / (alt + 5.11)));
+        return (float) Math.toRadians(Math.max(0.0, arcmin) / 60.0);
+    }
+
+    /**
+     * @return The fraction of an object's light that reaches the observer, given the
+     * vertical component of its (unit) direction in the display frame. Always 1 outside of
+     * horizon mode, and 0 below the horizon.
+     */
+    public float transmission(float up) {
+        if (!horizonMode || !extinction) {
+            return 1f;
+        }
+        if (up < -0.02f) {
+            return 0f;
+        }
+        float y = Math.max(up, 0f);
+        // airmass (approximately), which stays finite at the horizon
+        float airmass = 1f / (y + 0.025f * (float) Math.exp(-11.0 * y));
+        return (float) Math.exp(-0.921 * EXTINCTION_COEFFICIENT * (airmass - 1f));
+    }
+
+    /**
+     * @return The angle, in degrees, between this rotation and the given one (as a
+     * quaternion), for telling how much the rotation has changed.
+     */
+    public double angleFrom(float w, float x, float y, float z) {
+        // vector part of inverse(given) * this, which is the sine of half the angle
+        float vx = w * rotationX - rotationW * x - (y * rotationZ - z * rotationY);
+        float vy = w * rotationY - rotationW * y - (z * rotationX - x * rotationZ);
+        float vz = w * rotationZ - rotationW * z - (x * rotationY - y * rotationX);
+        double sinHalf = Math.min(1.0, Math.sqrt(vx * vx + vy * vy + vz * vz));
+        return Math.toDegrees(2.0 * Math.asin(sinHalf));
+    }
+}
@@ -0,0 +1,140 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import org.gearvrf.GVRHybridObject;
+import org.gearvrf.GVRMesh;
+import org.gearvrf.GVRRenderData;
+import org.gearvrf.GVRSceneObject;
+import org.gearvrf.GVRTransform;
+import org.gearvrf.animation.GVRAnimation;
+import org.gearvrf.animation.GVRAnimationEngine;
+
+/**
+ * The zoom in/out animations of an object that grows while it's being looked at. Both
+ * animations are created up front and restarted as needed, so that hovering over objects
+ * doesn't allocate anything. Each one starts from whatever scale the object has when
+ * it's started, so that reversing a zoom halfway through doesn't make the object jump.
+ *
+ * Optionally, the object can be given a more detailed mesh that is only used while it's
+ * zoomed in (or on its way out), since its normal mesh would look faceted when magnified.
+ */
+public class HoverZoom {
+    private static final float ZOOM_FACTOR = 8f;
+
+    private final GVRTransform transform;
+    private final ScaleAnimation zoomAnimation;
+    private final ScaleAnimation unzoomAnimation;
+    private ScaleAnimation currentAnimation;
+    private boolean zoomed;
+    private GVRRenderData renderData;
+    private GVRMesh mesh;
+    private GVRMesh zoomedMesh;
+
+    /**
+     * Uniform scale animation from the scale that the target has when the animation is
+     * started, to a fixed scale.
+     */
+    private static class ScaleAnimation extends GVRAnimation {
+        private final GVRTransform transform;
+        private final float toScale;
+        private float fromScale;
+
+        ScaleAnimation(GVRTransform transform, float duration, float toScale) {
+            super(transform, duration);
+            this.transform = transform;
+            this.toScale = toScale;
+        }
+
+        @Override
+        public GVRAnimation start(GVRAnimationEngine engine) {
+            fromScale = transform.getScaleX();
+            return super.start(engine);
+        }
+
+        @Override
+        protected void animate(GVRHybridObject target, float ratio) {
+            float scale = fromScale + (toScale - fromScale) * ratio;
+            transform.setScale(scale, scale, scale);
+        }
+    }
+
+    /**
+     * @param target Object whose scale is animated, which must be at its initial scale.
+     */
+    public HoverZoom(GVRSceneObject target, float initialScale, float duration) {
+        transform = target.getTransform();
+        zoomAnimation = new ScaleAnimation(transform, duration, initialScale * ZOOM_FACTOR);
+        unzoomAnimation = new ScaleAnimation(transform, duration, initialScale);
+        unzoomAnimation.setOnFinish(animation -> {
+            if (!zoomed && renderData != null) {
+                renderData.setMesh(mesh);
+            }
+        });
+    }
+
+    /**
+     * Show the given zoomedMesh instead of the mesh of the given render data while the
+     * object is zoomed in.
+     */
+    public void setZoomedMesh(GVRRenderData renderData, GVRMesh zoomedMesh) {
+        this.renderData = renderData;
+        this.mesh = renderData.getMesh();
+        this.zoomedMesh = zoomedMesh;
+    }
+
+    public boolean isZoomed() {
+        return zoomed;
+    }
+
+    /**
+     * @return Whether the scale of the object is currently something other than its
+     * initial scale, i.e. it's zoomed in, or on its way in or out.
+     */
+    public boolean isScaled() {
+        return zoomed || (currentAnimation != null && !currentAnimation.isFinished());
+    }
+
+    public float getCurrentScale() {
+        return transform.getScaleX();
+    }
+
+    public void zoom(GVRAnimationEngine engine) {
+        if (zoomed) {
+            return;
+        }
+        zoomed = true;
+        if (renderData != null) {
+            renderData.setMesh(zoomedMesh);
+        }
+        engine.stop(unzoomAnimation);
+        zoomAnimation.reset();
+        zoomAnimation.start(engine);
+        currentAnimation = zoomAnimation;
+    }
+
+    public void unzoom(GVRAnimationEngine engine) {
+        if (!zoomed) {
+            return;
+        }
+        zoomed = false;
+        engine.stop(zoomAnimation);
+        unzoomAnimation.reset();
+        unzoomAnimation.start(engine);
+        currentAnimation = unzoomAnimation;
+    }
+}
@@ -0,0 +1,57 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRShader;
+
+/**
+ * Shader for text labels that are drawn from an alpha-only atlas in a single color, each
+ * with its own per-vertex opacity.
+ */
+public class LabelShader extends GVRShader {
+
+    private static final String VERTEX_SHADER = "layout(location = 0) in vec3 a_position;\n"
+            + "layout(location = 1) in vec2 a_texcoord;\n"
+            + "layout(location = 2) in float a_opacity;\n"
+            + "@MATRIX_UNIFORMS\n"
+            + "@MATERIAL_UNIFORMS\n"
+            + "layout(location = 0) out vec2 v_texcoord;\n"
+            + "layout(location = 1) out float v_opacity;\n"
+            + "void main() {\n"
+            + "    v_texcoord = a_texcoord;\n"
+            + "    v_opacity = a_opacity;\n"
+            + "    gl_Position = u_mvp * vec4(a_position, 1.0);\n"
+            + "}\n";
+
+    private static final String FRAGMENT_SHADER = "precision mediump float;\n"
+            + "@MATERIAL_UNIFORMS\n"
+            + "uniform sampler2D u_texture;\n"
+            + "layout(location = 0) in vec2 v_texcoord;\n"
+            + "layout(location = 1) in float v_opacity;\n"
+            + "layout(location = 0) out vec4 fragColor;\n"
+            + "void main() {\n"
+            + "    fragColor = vec4(u_color.rgb, u_color.a * v_opacity * texture(u_texture, v_texcoord).a);\n"
+            + "}\n";
+
+    public LabelShader(GVRContext context) {
+        super("float4 u_color", "sampler2D u_texture", "float3 a_position float2 a_texcoord float a_opacity", GLSLESVersion.VULKAN);
+        setSegment("VertexTemplate", VERTEX_SHADER);
+        setSegment("FragmentTemplate", FRAGMENT_SHADER);
+    }
+}
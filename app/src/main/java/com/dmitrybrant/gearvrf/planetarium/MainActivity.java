@@ -32,11 +32,13 @@ public class MainActivity extends GVRActivity implements VRTouchPadGestureDetect
 
     private PlanetariumMain planetariumMain;
     private WebView mWebView;
+    private RestBaseClient.PageRequest mPageRequest;
     private VRTouchPadGestureDetector mGestureDetector;
 
     @Override
     protected void onCreate(Bundle icicle) {
         super.onCreate(icicle);
+        RestBaseClient.init(this);
         createWebView();
         planetariumMain = new PlanetariumMain(this);
         setMain(planetariumMain, "gvr_note4.xml");
@@ -54,10 +56,15 @@ public class MainActivity extends GVRActivity implements VRTouchPadGestureDetect
 
     public void loadWebPageForObject(final SkyObject obj) {
         loadIntoWebView("Loading...");
+        // a new tap supersedes whatever page was still loading
+        if (mPageRequest != null) {
+            mPageRequest.cancel();
+            mPageRequest = null;
+        }
         if (obj.type == SkyObject.TYPE_OTHER) {
             runOnUiThread(() -> mWebView.loadUrl("file:///android_asset/about.html"));
         } else {
-            RestBaseClient.getPage(Util.transformObjectName(obj.name), new RestBaseClient.OnGetPageResult() {
+            mPageRequest = RestBaseClient.getPage(Util.transformObjectName(obj.name), new RestBaseClient.OnGetPageResult() {
                 @Override
                 public void onSuccess(String pageContents) {
                     loadIntoWebView(pageContents);
@@ -108,11 +115,17 @@ public class MainActivity extends GVRActivity implements VRTouchPadGestureDetect
 
     @Override
     public void onLongPress(MotionEvent e) {
+        planetariumMain.toggleHorizonMode();
     }
 
     @Override
     public boolean onSwipe(MotionEvent e, VRTouchPadGestureDetector.SwipeDirection swipeDirection,
                            float velocityX, float velocityY) {
+        if (swipeDirection == VRTouchPadGestureDetector.SwipeDirection.Up
+                || swipeDirection == VRTouchPadGestureDetector.SwipeDirection.Down) {
+            planetariumMain.onSwipe(swipeDirection);
+            return true;
+        }
         return false;
     }
 
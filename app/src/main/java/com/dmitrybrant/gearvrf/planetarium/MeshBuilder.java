@@ -0,0 +1,181 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the geometry of the spheres and rings in the scene as indexed meshes, where
+ * each vertex is shared by all the triangles that meet at it, and the attributes of each
+ * vertex are interleaved in a single array (see VERTEX_DESCRIPTOR).
+ *
+ * The sines and cosines of the angles around a circle are computed once for each number
+ * of segments, and shared by every mesh built with that number.
+ *
+ * This is plain Java with no dependency on the renderer; MeshCache turns the results
+ * into meshes.
+ */
+public class MeshBuilder {
+    public static final String VERTEX_DESCRIPTOR = "float3 a_position float2 a_texcoord float3 a_normal";
+    public static final int POSITION_OFFSET = 0;
+    public static final int TEXCOORD_OFFSET = 3;
+    public static final int NORMAL_OFFSET = 5;
+    public static final int VERTEX_STRIDE = 8;
+
+    private static final Map<Integer, float[]> circleTables = new HashMap<>();
+
+    /**
+     * Interleaved vertices and triangle indices of a mesh.
+     */
+    public static class MeshData {
+        public final float[] vertices;
+        public final char[] indices;
+
+        MeshData(float[] vertices, char[] indices) {
+            this.vertices = vertices;
+            this.indices = indices;
+        }
+
+        public int getVertexCount() {
+            return vertices.length / VERTEX_STRIDE;
+        }
+
+        /**
+         * @return The number of bytes that are uploaded for this mesh.
+         */
+        public int getByteSize() {
+            return vertices.length * 4 + indices.length * 2;
+        }
+    }
+
+    /**
+     * Build a UV sphere, with the poles on the Y axis.
+     * @param radius What it says.
+     * @param bands Number of bands of latitude, from pole to pole.
+     * @param segments Number of segments of longitude.
+     * @param invert Whether the triangles face inward (for viewing from inside).
+     */
+    public static MeshData sphere(float radius, int bands, int segments, boolean invert) {
+        // latitude goes halfway around a circle of 2 * bands steps, from the south pole
+        float[] lat = circle(bands * 2);
+        float[] lon = circle(segments);
+        int columns = segments + 1;
+        float[] vertices = new float[(bands + 1) * columns * VERTEX_STRIDE];
+        int vIndex = 0;
+        for (int r = 0; r <= bands; r++) {
+            float y = -lat[r * 2];
+            float ringRadius = lat[r * 2 + 1];
+            for (int s = 0; s <= segments; s++) {
+                float x = lon[s * 2] * ringRadius;
+                float z = lon[s * 2 + 1] * ringRadius;
+                vIndex = putVertex(vertices, vIndex, x * radius, y * radius, z * radius,
+                        (float) s / segments, (float) r / bands, x, y, z);
+            }
+        }
+
+        // the triangles that touch the poles have no area, so each quad of the first
+        // and last band only needs one of its two triangles.
+        char[] indices = new char[(bands - 1) * segments * 6];
+        int iIndex = 0;
+        for (int r = 0; r < bands; r++) {
+            int curRow = r * columns;
+            int nextRow = (r + 1) * columns;
+            for (int s = 0; s < segments; s++) {
+                if (r < bands - 1) {
+                    iIndex = putTriangle(indices, iIndex, curRow + s, nextRow + s, nextRow + s + 1, invert);
+                }
+                if (r > 0) {
+                    iIndex = putTriangle(indices, iIndex, curRow + s, nextRow + s + 1, curRow + s + 1, invert);
+                }
+            }
+        }
+        return new MeshData(vertices, indices);
+    }
+
+    /**
+     * Build a flat ring in the X-Y plane, facing +Z, as a strip of quads between the inner
+     * and outer edges. The texture runs from the inner edge (u = 0) to the outer edge
+     * (u = 1), and once around the ring in v.
+     * @param innerRadius What it says.
+     * @param outerRadius What it says.
+     * @param segments Number of segments around the ring.
+     */
+    public static MeshData ring(float innerRadius, float outerRadius, int segments) {
+        float[] table = circle(segments);
+        float[] vertices = new float[(segments + 1) * 2 * VERTEX_STRIDE];
+        int vIndex = 0;
+        for (int i = 0; i <= segments; i++) {
+            float c = table[i * 2];
+            float s = table[i * 2 + 1];
+            float v = (float) i / segments;
+            vIndex = putVertex(vertices, vIndex, c * innerRadius, s * innerRadius, 0f, 0f, v, 0f, 0f, 1f);
+            vIndex = putVertex(vertices, vIndex, c * outerRadius, s * outerRadius, 0f, 1f, v, 0f, 0f, 1f);
+        }
+
+        char[] indices = new char[segments * 6];
+        int iIndex = 0;
+        for (int i = 0; i < segments; i++) {
+            int inner = i * 2;
+            int outer = inner + 1;
+            iIndex = putTriangle(indices, iIndex, inner, outer, outer + 2, false);
+            iIndex = putTriangle(indices, iIndex, inner + 2, inner, outer + 2, false);
+        }
+        return new MeshData(vertices, indices);
+    }
+
+    /**
+     * @return The cosine and sine of the angles 2 * PI * i / steps, for i from 0 to steps
+     * (inclusive), as consecutive pairs. The last pair repeats the first exactly, so that
+     * the seam of a closed mesh lines up.
+     */
+    static synchronized float[] circle(int steps) {
+        float[] table = circleTables.get(steps);
+        if (table == null) {
+            table = new float[(steps + 1) * 2];
+            for (int i = 0; i < steps; i++) {
+                double angle = 2.0 * Math.PI * i / steps;
+                table[i * 2] = (float) Math.cos(angle);
+                table[i * 2 + 1] = (float) Math.sin(angle);
+            }
+            table[steps * 2] = table[0];
+            table[steps * 2 + 1] = table[1];
+            circleTables.put(steps, table);
+        }
+        return table;
+    }
+
+    private static int putVertex(float[] vertices, int index, float x, float y, float z,
+                                 float u, float v, float nx, float ny, float nz) {
+        vertices[index++] = x;
+        vertices[index++] = y;
+        vertices[index++] = z;
+        vertices[index++] = u;
+        vertices[index++] = v;
+        vertices[index++] = nx;
+        vertices[index++] = ny;
+        vertices[index++] = nz;
+        return index;
+    }
+
+    private static int putTriangle(char[] indices, int index, int a, int b, int c, boolean reverse) {
+        indices[index++] = (char) (reverse ? c : a);
+        indices[index++] = (char) b;
+        indices[index++] = (char) (reverse ? a : c);
+        return index;
+    }
+}
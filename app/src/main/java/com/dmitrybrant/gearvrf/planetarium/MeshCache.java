@@ -0,0 +1,91 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRIndexBuffer;
+import org.gearvrf.GVRMesh;
+import org.gearvrf.GVRVertexBuffer;
+
+/**
+ * Meshes built by MeshBuilder, shared by every object that uses the same shape. Each
+ * mesh is created (and uploaded) once for each distinct set of parameters.
+ */
+public class MeshCache {
+    /** Number of bands of latitude of each level of detail of a sphere. */
+    public static final int[] SPHERE_LOD_BANDS = { 8, 16, 32, 64 };
+
+    private static final Map<String, GVRMesh> meshes = new HashMap<>();
+    private static int vertexCount;
+    private static int byteSize;
+
+    /**
+     * @param lod Level of detail, as an index into SPHERE_LOD_BANDS.
+     * @return A sphere with the given level of detail, and twice as many segments of
+     * longitude as bands of latitude.
+     */
+    public static GVRMesh getSphere(GVRContext context, float radius, int lod, boolean invert) {
+        int bands = SPHERE_LOD_BANDS[lod];
+        return getSphere(context, radius, bands, bands * 2, invert);
+    }
+
+    public static synchronized GVRMesh getSphere(GVRContext context, float radius, int bands, int segments, boolean invert) {
+        String key = "sphere " + radius + " " + bands + " " + segments + " " + invert;
+        GVRMesh mesh = meshes.get(key);
+        if (mesh == null) {
+            mesh = createMesh(context, MeshBuilder.sphere(radius, bands, segments, invert));
+            meshes.put(key, mesh);
+        }
+        return mesh;
+    }
+
+    public static synchronized GVRMesh getRing(GVRContext context, float innerRadius, float outerRadius, int segments) {
+        String key = "ring " + innerRadius + " " + outerRadius + " " + segments;
+        GVRMesh mesh = meshes.get(key);
+        if (mesh == null) {
+            mesh = createMesh(context, MeshBuilder.ring(innerRadius, outerRadius, segments));
+            meshes.put(key, mesh);
+        }
+        return mesh;
+    }
+
+    public static synchronized String getStats() {
+        return "meshes: " + meshes.size() + ", vertices: " + vertexCount + ", uploaded: " + byteSize / 1024 + " KB";
+    }
+
+    /**
+     * Create a mesh (without caching it) from the given geometry.
+     */
+    public static GVRMesh createMesh(GVRContext context, MeshBuilder.MeshData data) {
+        GVRVertexBuffer vertices = new GVRVertexBuffer(context, MeshBuilder.VERTEX_DESCRIPTOR, data.getVertexCount());
+        vertices.setFloatArray("a_position", data.vertices, MeshBuilder.VERTEX_STRIDE, MeshBuilder.POSITION_OFFSET);
+        vertices.setFloatArray("a_texcoord", data.vertices, MeshBuilder.VERTEX_STRIDE, MeshBuilder.TEXCOORD_OFFSET);
+        vertices.setFloatArray("a_normal", data.vertices, MeshBuilder.VERTEX_STRIDE, MeshBuilder.NORMAL_OFFSET);
+
+        GVRIndexBuffer indices = new GVRIndexBuffer(context, 2, data.indices.length);
+        indices.setShortVec(data.indices);
+
+        synchronized (MeshCache.class) {
+            vertexCount += data.getVertexCount();
+            byteSize += data.getByteSize();
+        }
+        return new GVRMesh(vertices, indices);
+    }
+}
@@ -31,20 +31,25 @@ public class NebulaLoader {
     private static final String TAG = "NebulaLoader";
     private static final float DEFAULT_DISTANCE_NEBULA = 550f;
     private static final float DEFAULT_SCALE = 3f;
+    public static final float QUAD_SIZE = 10f;
+    // compiled at build time by KtxTextureCompiler (see buildSrc)
+    private static final String TEXTURE_DIR = "textures/";
+    private static final String TEXTURE_EXTENSION = ".ktx";
 
     private static GVRMesh nebulaMesh;
 
-    public static GVRSceneObject createSceneObject(GVRContext context, SkyObject obj, String name) {
+    public static GVRSceneObject createSceneObject(GVRContext context, SkyObject obj) throws IOException {
         if (nebulaMesh == null) {
-            nebulaMesh = context.createQuad(10f, 10f);
+            nebulaMesh = context.createQuad(QUAD_SIZE, QUAD_SIZE);
         }
-        GVRSceneObject sobj = new GVRSceneObject(context, nebulaMesh,
-                context.getAssetLoader().loadTexture(new GVRAndroidResource(context, obj.texResId)));
+        // nebulae have compressed textures in the assets, and other objects have drawables
+        GVRAndroidResource texture = obj.texName != null
+                ? new GVRAndroidResource(context, TextureResidencyManager.placeholderPath(obj.texName)) : new GVRAndroidResource(context, obj.texResId);
+        GVRSceneObject sobj = new GVRSceneObject(context, nebulaMesh, context.getAssetLoader().loadTexture(texture));
         obj.sceneObj = sobj;
         sobj.getRenderData().setDepthTest(false);
         sobj.getTransform().setScale(obj.initialScale, obj.initialScale, obj.initialScale);
-        sobj.setPickingEnabled(true);
-        sobj.setName(name);
+        sobj.setName(obj.name);
         return sobj;
     }
 
@@ -68,7 +73,7 @@ public class NebulaLoader {
                 }
 
                 addNebula(objectList,
-                        context.getContext().getResources().getIdentifier(lineArr[0].trim(), "drawable", context.getContext().getPackageName()),
+                        TEXTURE_DIR + lineArr[0].trim() + TEXTURE_EXTENSION,
                         Util.hmsToDec(Float.parseFloat(lineArr[1]), Float.parseFloat(lineArr[2]), Float.parseFloat(lineArr[3])),
                         Util.dmsToDec(Float.parseFloat(lineArr[4]), Float.parseFloat(lineArr[5]), Float.parseFloat(lineArr[6])),
                         DEFAULT_SCALE,
@@ -86,14 +91,14 @@ public class NebulaLoader {
         }
     }
 
-    private static void addNebula(List<SkyObject> objectList, int texResId, float ra, float dec, float initialScale, String name) {
+    private static void addNebula(List<SkyObject> objectList, String texName, float ra, float dec, float initialScale, String name) {
         SkyObject obj = new SkyObject();
         objectList.add(obj);
         obj.type = SkyObject.TYPE_NEBULA;
         obj.dist = DEFAULT_DISTANCE_NEBULA;
         obj.initialScale = initialScale;
         obj.name = name;
-        obj.texResId = texResId;
+        obj.texName = texName;
         obj.ra = ra;
         obj.dec = dec;
     }
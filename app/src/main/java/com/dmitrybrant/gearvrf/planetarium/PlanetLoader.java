@@ -15,10 +15,6 @@
 
 package com.dmitrybrant.gearvrf.planetarium;
 
-import com.mhuss.AstroLib.AstroDate;
-import com.mhuss.AstroLib.NoInitException;
-import com.mhuss.AstroLib.ObsInfo;
-import com.mhuss.AstroLib.PlanetData;
 import com.mhuss.AstroLib.Planets;
 
 import org.gearvrf.GVRAndroidResource;
@@ -27,15 +23,17 @@ import org.gearvrf.GVRMesh;
 import org.gearvrf.GVRSceneObject;
 
 import java.io.IOException;
-import java.util.Calendar;
 import java.util.List;
 
 public class PlanetLoader {
     public static final float DEFAULT_DISTANCE_PLANET = 50f;
+    public static final float PLANET_MESH_RADIUS = 1f;
 
-    private static GVRMesh planetMesh;
+    // levels of detail (see MeshCache) of planets at their normal size, and zoomed in
+    public static final int PLANET_LOD = 1;
+    public static final int PLANET_ZOOMED_LOD = 3;
 
-    public static GVRSceneObject createSceneObject(GVRContext context, SkyObject obj, String name, int renderOrder) throws IOException {
+    public static GVRSceneObject createSceneObject(GVRContext context, SkyObject obj, int renderOrder) throws IOException {
         GVRSceneObject planetRevolutionObject = new GVRSceneObject(context);
         obj.sceneObj = planetRevolutionObject;
 
@@ -44,14 +42,14 @@ public class PlanetLoader {
 
         GVRSceneObject planetMeshObject = new GVRSceneObject(context,
                 getPlanetMesh(context),
-                context.getAssetLoader().loadTexture(new GVRAndroidResource(context, obj.texName)));
+                context.getAssetLoader().loadTexture(new GVRAndroidResource(context,
+                        TextureResidencyManager.placeholderPath(obj.texName))));
 
         planetRotationObject.addChildObject(planetMeshObject);
         planetMeshObject.getTransform().setScale(obj.initialScale, obj.initialScale, obj.initialScale);
         planetMeshObject.getRenderData().setDepthTest(true);
         planetMeshObject.getRenderData().setRenderingOrder(renderOrder);
-        planetMeshObject.setPickingEnabled(true);
-        planetMeshObject.setName(name);
+        planetMeshObject.setName(obj.name);
 
         // TODO: implement correct lighting
         if (!obj.name.equals("Sun")) {
@@ -68,11 +66,23 @@ public class PlanetLoader {
         return planetRevolutionObject;
     }
 
+    /**
+     * @return The object that carries the planet's mesh (and scale), given the object
+     * returned by createSceneObject().
+     */
+    public static GVRSceneObject getMeshObject(GVRSceneObject planetObject) {
+        return planetObject.getChildByIndex(0).getChildByIndex(0);
+    }
+
     private static GVRMesh getPlanetMesh(GVRContext context) throws IOException {
-        if (planetMesh == null) {
-            planetMesh = SphereMesh.createSphereMesh(context, 1f, 16, 16, false);
-        }
-        return planetMesh;
+        return MeshCache.getSphere(context, PLANET_MESH_RADIUS, PLANET_LOD, false);
+    }
+
+    /**
+     * @return The more detailed mesh that is shown while a planet is zoomed in.
+     */
+    public static GVRMesh getZoomedPlanetMesh(GVRContext context) {
+        return MeshCache.getSphere(context, PLANET_MESH_RADIUS, PLANET_ZOOMED_LOD, false);
     }
 
     public static void addRings(GVRContext context, SkyObject obj, float innerRadius, float outerRadius, float rotation, int ringResId, int renderOrder) {
@@ -86,46 +96,42 @@ public class PlanetLoader {
         ringObj.getRenderData().getMaterial().setColor(1f, 1f, 1f);
         ringObj.getRenderData().getMaterial().setOpacity(1.0f);
 
-        obj.sceneObj.getChildByIndex(0).getChildByIndex(0).addChildObject(ringObj);
-        obj.sceneObj.getChildByIndex(0).getChildByIndex(0).getTransform().rotateByAxis(rotation, 1f, 0f, 0f);
+        getMeshObject(obj.sceneObj).addChildObject(ringObj);
+        getMeshObject(obj.sceneObj).getTransform().rotateByAxis(rotation, 1f, 0f, 0f);
     }
 
-    public static void loadPlanets(GVRContext context, List<SkyObject> objectList) {
+    public static void loadPlanets(GVRContext context, Ephemeris ephemeris, double jd, List<SkyObject> objectList) {
         try {
-            Calendar calendar = Calendar.getInstance();
-            AstroDate date = new AstroDate(calendar.get(Calendar.DAY_OF_MONTH), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.YEAR),
-                    calendar.get(Calendar.HOUR), calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND));
-            ObsInfo obsInfo = new ObsInfo();
-            double jd = date.jd();
-
-            addPlanet(context, objectList, jd, obsInfo, Planets.SUN, "gstar.jpg", R.string.sun);
-            addPlanet(context, objectList, jd, obsInfo, Planets.LUNA, "moon.jpg", R.string.moon);
-            addPlanet(context, objectList, jd, obsInfo, Planets.MERCURY, "mercurymap.jpg", R.string.mercury);
-            addPlanet(context, objectList, jd, obsInfo, Planets.VENUS, "venus.jpg", R.string.venus);
-            addPlanet(context, objectList, jd, obsInfo, Planets.MARS, "mars_1k_color.jpg", R.string.mars);
-            addPlanet(context, objectList, jd, obsInfo, Planets.JUPITER, "jupiter.jpg", R.string.jupiter);
-            addPlanet(context, objectList, jd, obsInfo, Planets.SATURN, "saturn.jpg", R.string.saturn);
-            addPlanet(context, objectList, jd, obsInfo, Planets.URANUS, "uranus.jpg", R.string.uranus);
-            addPlanet(context, objectList, jd, obsInfo, Planets.NEPTUNE, "neptune.jpg", R.string.neptune);
-            addPlanet(context, objectList, jd, obsInfo, Planets.PLUTO, "pluto.jpg", R.string.pluto);
+            addPlanet(context, objectList, ephemeris, jd, Planets.SUN, "textures/gstar.ktx", R.string.sun);
+            addPlanet(context, objectList, ephemeris, jd, Planets.LUNA, "textures/moon.ktx", R.string.moon);
+            addPlanet(context, objectList, ephemeris, jd, Planets.MERCURY, "textures/mercurymap.ktx", R.string.mercury);
+            addPlanet(context, objectList, ephemeris, jd, Planets.VENUS, "textures/venus.ktx", R.string.venus);
+            addPlanet(context, objectList, ephemeris, jd, Planets.MARS, "textures/mars_1k_color.ktx", R.string.mars);
+            addPlanet(context, objectList, ephemeris, jd, Planets.JUPITER, "textures/jupiter.ktx", R.string.jupiter);
+            addPlanet(context, objectList, ephemeris, jd, Planets.SATURN, "textures/saturn.ktx", R.string.saturn);
+            addPlanet(context, objectList, ephemeris, jd, Planets.URANUS, "textures/uranus.ktx", R.string.uranus);
+            addPlanet(context, objectList, ephemeris, jd, Planets.NEPTUNE, "textures/neptune.ktx", R.string.neptune);
+            addPlanet(context, objectList, ephemeris, jd, Planets.PLUTO, "textures/pluto.ktx", R.string.pluto);
 
         } catch (Exception e) {
             //
         }
     }
 
-    private static void addPlanet(GVRContext context, List<SkyObject> objectList, double julianDate,
-                                  ObsInfo obsInfo, int planetID, String texName,
-                                  int nameResId) throws NoInitException {
-        PlanetData data = new PlanetData(planetID, julianDate, obsInfo);
+    private static void addPlanet(GVRContext context, List<SkyObject> objectList, Ephemeris ephemeris,
+                                  double julianDate, int planetID, String texName, int nameResId) {
+        double[] pos = new double[2];
+        ephemeris.getPosition(planetID, julianDate, pos);
         SkyObject obj = new SkyObject();
         objectList.add(obj);
         obj.type = SkyObject.TYPE_PLANET;
-        obj.dist = (float)data.getEquatorialRadius();
+        obj.planetId = planetID;
+        // only used for drawing the nearer bodies in front
+        obj.dist = (float) ephemeris.getDistance(planetID, julianDate);
         obj.initialScale = 1f;
         obj.name = context.getContext().getString(nameResId);
         obj.texName = texName;
-        obj.ra = Math.toDegrees(data.getRightAscension());
-        obj.dec = Math.toDegrees(data.getDeclination());
+        obj.ra = pos[0];
+        obj.dec = pos[1];
     }
 }
@@ -18,7 +18,7 @@ package com.dmitrybrant.gearvrf.planetarium;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.os.Environment;
-import android.view.Gravity;
+import android.os.SystemClock;
 import android.view.KeyEvent;
 
 import java.io.ByteArrayOutputStream;
@@ -28,11 +28,18 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.mhuss.AstroLib.ObsInfo;
 
 import org.gearvrf.GVRAndroidResource;
 import org.gearvrf.GVRContext;
 import org.gearvrf.GVRMain;
-import org.gearvrf.GVRPicker;
+import org.gearvrf.GVRMaterial;
 import org.gearvrf.GVRPointLight;
 import org.gearvrf.GVRScene;
 import org.gearvrf.GVRSceneObject;
@@ -41,39 +48,98 @@ import org.gearvrf.animation.GVRAnimation;
 import org.gearvrf.animation.GVRAnimationEngine;
 import org.gearvrf.animation.GVRRepeatMode;
 import org.gearvrf.animation.GVRRotationByAxisWithPivotAnimation;
-import org.gearvrf.animation.GVRScaleAnimation;
-import org.gearvrf.scene_objects.GVRTextViewSceneObject;
 import org.gearvrf.scene_objects.GVRWebViewSceneObject;
 import org.gearvrf.utility.Log;
 
 public class PlanetariumMain extends GVRMain {
     private static final String TAG = Log.tag(PlanetariumMain.class);
     private static final int RENDER_ORDER_UI = 100000;
+    private static final int RENDER_ORDER_GROUND = 99950;
     private static final int RENDER_ORDER_PLANET = 99900;
     private static final int RENDER_ORDER_ASTERISM = 1000;
     private static final int RENDER_ORDER_NEBULA = 100;
+    private static final int RENDER_ORDER_STARS = 50;
     private static final int RENDER_ORDER_MILKY_WAY = 0;
 
     private static final float CAMERA_X = 0f;
     private static final float CAMERA_Y = 0f;
     private static final float CAMERA_Z = 0f;
 
+    private static final int LOADER_THREADS = 4;
+    private static final float ZOOM_DURATION_PLANET = 0.3f;
+    private static final float ZOOM_DURATION_NEBULA = 0.5f;
+    // size of the hover text in its glyph atlas (pixels), and in the scene
+    private static final float HUD_TEXT_SIZE = 48f;
+    private static final int HUD_ATLAS_SIZE = 512;
+    private static final float HUD_LINE_HEIGHT = 0.3f;
+    // planets are only moved once their position changes by more than this many degrees
+    private static final double PLANET_MOVE_THRESHOLD = 0.01;
+    // likewise for the sky as a whole
+    private static final double SKY_MOVE_THRESHOLD = 0.01;
+    // the stars are moved to the current epoch once the simulated time has drifted from
+    // the epoch of their positions by more than this many days
+    private static final double EPOCH_UPDATE_INTERVAL = 365.25;
+
+    // the observer's location isn't known, so the latitude is a guess, and the longitude
+    // is worked out from the time zone.
+    private static final double DEFAULT_LATITUDE = 40.0;
+    private static final float GROUND_SIZE = 1800f;
+    private static final float GROUND_DEPTH = 5f;
+
     private MainActivity mActivity;
     private GVRContext mContext;
 
     private GVRAnimationEngine mAnimationEngine;
     private GVRScene mMainScene;
     private GVRSceneObject rootObject;
-
-    private List<SkyObject> skyObjectList = new ArrayList<>();
+    private GVRPointLight mLight;
+
+    private double latitude = DEFAULT_LATITUDE;
+    private double longitude = TimeZone.getDefault().getOffset(System.currentTimeMillis()) / 3600000.0 * 15.0;
+    private Ephemeris ephemeris = new Ephemeris(createObsInfo(latitude, longitude));
+    private SimulationClock clock = new SimulationClock(Ephemeris.julianDate(System.currentTimeMillis()));
+    private List<SkyObject> planetList = new ArrayList<>();
+    private double[] planetPosition = new double[2];
+    private SkyObject sunObject;
+
+    // how the sky is shown (equatorial or horizon view), and the rotation of the sky
+    // (rootObject) relative to the world as of the last time it was moved
+    private HorizonTransform skyFrame = new HorizonTransform();
+    private boolean horizonMode;
+    private GVRSceneObject groundObject;
+    private float skyRotationW = 1f;
+    private float skyRotationX;
+    private float skyRotationY;
+    private float skyRotationZ;
+    private AngularPicker picker = new AngularPicker();
+    private SkyTileManager skyTiles;
+    private TextureResidencyManager textures;
+    // these are set (on the GL thread) once the stars and asterisms have finished loading
     private StarLoader starLoader;
-    private AsterismLoader asterismLoader;
+    private StarField starField;
+    private ConstellationLines constellationLines;
+    private ConstellationLabels constellationLabels;
+    private Asterism activeAsterism;
+    private EpochPropagator propagator;
+    private double propagatedJd = EpochPropagator.JD_J2000;
+    private boolean propagating;
+    // nebulae and other fixed objects, and their positions at J2000 (RA and Dec in turn)
+    private List<SkyObject> nebulaList = new ArrayList<>();
+    private double[] nebulaJ2000 = new double[0];
 
     private List<GVRAnimation> continuousAnimationList = new ArrayList<>();
-    private List<GVRAnimation> unzoomAnimationList = new ArrayList<>();
-    private boolean prevPickedNamedObject;
 
-    private GVRTextViewSceneObject textView;
+    // what the user is currently looking at
+    private float gazeX;
+    private float gazeY;
+    private float gazeZ;
+    private double gazeRa;
+    private double gazeDec;
+    private SkyObject hoverObject;
+    private int hoverStar = -1;
+    private PrefetchScheduler prefetcher = new PrefetchScheduler(PrefetchScheduler.DEFAULT_DWELL_MILLIS);
+
+    private GlyphText textView;
     private GVRWebViewSceneObject webViewObject;
     private boolean webViewVisible;
     private boolean webViewAdded;
@@ -87,19 +153,6 @@ public class PlanetariumMain extends GVRMain {
         mContext = gvrContext;
         mAnimationEngine = gvrContext.getAnimationEngine();
 
-        List<SkyObject> planetObjectList = new ArrayList<>();
-        PlanetLoader.loadPlanets(mContext, planetObjectList);
-        Collections.sort(planetObjectList, (lhs, rhs) -> Float.compare(lhs.dist, rhs.dist));
-        skyObjectList.addAll(planetObjectList);
-        NebulaLoader.loadNebulae(mContext, skyObjectList);
-        OtherObjLoader.loadObjects(skyObjectList);
-
-        asterismLoader = new AsterismLoader();
-        asterismLoader.loadAsterisms(mActivity, skyObjectList);
-
-        starLoader = new StarLoader(mActivity);
-        skyObjectList.addAll(starLoader.getStarList());
-
         mMainScene = gvrContext.getMainScene();
 
         mMainScene.setFrustumCulling(true);
@@ -111,7 +164,11 @@ public class PlanetariumMain extends GVRMain {
         mMainScene.addSceneObject(rootObject);
 
         // sky background
-        rootObject.addChildObject(SkyLoader.createSceneObject(gvrContext, RENDER_ORDER_MILKY_WAY));
+        skyTiles = new SkyTileManager(gvrContext, RENDER_ORDER_MILKY_WAY);
+        rootObject.addChildObject(skyTiles.getSceneObject());
+
+        // full-resolution textures of planets and nebulae, loaded when zoomed
+        textures = new TextureResidencyManager(gvrContext, TextureResidencyManager.DEFAULT_BUDGET_BYTES);
 
         // head-tracking pointer
         GVRSceneObject headTracker = new GVRSceneObject(gvrContext, gvrContext.createQuad(1f, 1f),
@@ -123,14 +180,10 @@ public class PlanetariumMain extends GVRMain {
 
         mMainScene.setStatsEnabled(true);
 
-        // TextView...
-        textView = new GVRTextViewSceneObject(gvrContext, 4f, 2f, "");
+        // hover text, which is only rebuilt when it changes
+        textView = new GlyphText(gvrContext, new GlyphAtlas(HUD_TEXT_SIZE, HUD_ATLAS_SIZE), HUD_LINE_HEIGHT);
         textView.getTransform().setPosition(0.0f, 1.5f, -10.0f);
-        textView.setTextSize(textView.getTextSize() / 4);
-        textView.setText("");
         textView.setTextColor(Color.CYAN);
-        textView.setGravity(Gravity.CENTER);
-        textView.setRefreshFrequency(GVRTextViewSceneObject.IntervalFrequency.HIGH);
         textView.getRenderData().setDepthTest(false);
         textView.getRenderData().setRenderingOrder(RENDER_ORDER_UI + 1);
         mMainScene.getMainCameraRig().addChildObject(textView);
@@ -141,192 +194,501 @@ public class PlanetariumMain extends GVRMain {
         webViewObject.getTransform().setPosition(0.0f, -5.0f, -12.0f);
         webViewObject.getRenderData().setRenderingOrder(RENDER_ORDER_UI);
 
-        GVRPointLight mLight = new GVRPointLight(gvrContext);
+        // ground, for hiding everything below the horizon in the horizon view
+        groundObject = new GVRSceneObject(gvrContext, gvrContext.createQuad(GROUND_SIZE, GROUND_SIZE));
+        GVRMaterial groundMaterial = new GVRMaterial(gvrContext, GVRMaterial.GVRShaderType.Color.ID);
+        groundMaterial.setColor(0.02f, 0.03f, 0.02f);
+        groundObject.getRenderData().setMaterial(groundMaterial);
+        groundObject.getRenderData().setDepthTest(false);
+        groundObject.getRenderData().setRenderingOrder(RENDER_ORDER_GROUND);
+        groundObject.getTransform().setRotationByAxis(-90f, 1f, 0f, 0f);
+        groundObject.getTransform().setPosition(0f, -GROUND_DEPTH, 0f);
+        groundObject.setEnable(false);
+        mMainScene.addSceneObject(groundObject);
+
+        mLight = new GVRPointLight(gvrContext);
         mLight.setAmbientIntensity(0.5f, 0.5f, 0.5f, 1.0f);
         mLight.setDiffuseIntensity(1.0f, 1.0f, 1.0f, 1.0f);
         mLight.setSpecularIntensity(1.0f, 1.0f, 1.0f, 1.0f);
 
         // TODO: rootObject.attachLight(mLight);
 
-        for (int i = 0; i < skyObjectList.size(); i++) {
-            SkyObject obj = skyObjectList.get(i);
-            if (obj.type == SkyObject.TYPE_STAR) {
+        startLoading();
+    }
 
-                asterismLoader.addStar(obj);
+    /**
+     * Load the catalogs in parallel on a pool of worker threads, and attach each group of
+     * objects to the scene (on the GL thread) as soon as it's ready, so that the sky and
+     * the pointer are shown right away instead of after everything has loaded.
+     */
+    private void startLoading() {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(LOADER_THREADS,
+                Runtime.getRuntime().availableProcessors()));
 
-            } else if (obj.type == SkyObject.TYPE_NEBULA || obj.type == SkyObject.TYPE_OTHER) {
+        executor.execute(() -> {
+            try {
+                List<SkyObject> planetObjectList = new ArrayList<>();
+                PlanetLoader.loadPlanets(mContext, ephemeris, clock.getJulianDate(), planetObjectList);
+                Collections.sort(planetObjectList, (lhs, rhs) -> Float.compare(lhs.dist, rhs.dist));
+                mContext.runOnGlThread(() -> attachPlanets(planetObjectList));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to load planets.", e);
+            }
+        });
 
-                GVRSceneObject sobj = NebulaLoader.createSceneObject(mContext, obj, Integer.toString(i));
-                rootObject.addChildObject(sobj);
-                sobj.getRenderData().setRenderingOrder(RENDER_ORDER_NEBULA);
-                setObjectPosition(sobj, obj.ra, obj.dec, obj.dist);
+        executor.execute(() -> {
+            try {
+                List<SkyObject> nebulaObjectList = new ArrayList<>();
+                NebulaLoader.loadNebulae(mContext, nebulaObjectList);
+                OtherObjLoader.loadObjects(nebulaObjectList);
+                mContext.runOnGlThread(() -> attachNebulae(nebulaObjectList));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to load nebulae.", e);
+            }
+        });
 
-            } else if (obj.type == SkyObject.TYPE_PLANET) {
+        Future<StarLoader> starFuture = executor.submit(() -> new StarLoader(mActivity));
 
-                GVRSceneObject sobj = PlanetLoader.createSceneObject(gvrContext, obj, Integer.toString(i), RENDER_ORDER_PLANET - i);
-                rootObject.addChildObject(sobj);
-                setObjectPosition(sobj, obj.ra, obj.dec, PlanetLoader.DEFAULT_DISTANCE_PLANET);
+        executor.execute(() -> {
+            try {
+                List<SkyObject> asterismObjectList = new ArrayList<>();
+                AsterismLoader loader = new AsterismLoader();
+                loader.loadAsterisms(mActivity, asterismObjectList);
+
+                StarLoader stars = starFuture.get();
+                loader.linkStars(stars.getCatalog());
+                ConstellationLabels labels = new ConstellationLabels(mActivity, loader.getAsterisms(),
+                        StarLoader.DEFAULT_DISTANCE_STAR);
+                // build after linking, since asterism stars get their magnitude boosted
+                StarField field = new StarField(stars.getCatalog());
+                ConstellationLines lines = new ConstellationLines(loader.getAsterisms(), stars.getCatalog());
+                EpochPropagator epochPropagator = new EpochPropagator(stars.getCatalog(),
+                        new ForkJoinPool(Runtime.getRuntime().availableProcessors()));
+                mContext.runOnGlThread(() -> attachAsterisms(stars, field, loader, lines, labels, epochPropagator));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to load asterisms.", e);
+            }
+        });
 
-                if (!obj.name.equals("Moon")) {
-                    animateCounterClockwise(sobj.getChildByIndex(0), 10f);
-                }
+        executor.shutdown();
+    }
 
-                if (obj.name.equals("Sun")) {
+    private void attachPlanets(List<SkyObject> planetObjectList) {
+        for (int i = 0; i < planetObjectList.size(); i++) {
+            SkyObject obj = planetObjectList.get(i);
 
-                    // let there be light
-                    mLight.setPosition(sobj.getTransform().getPositionX(), sobj.getTransform().getPositionY(), sobj.getTransform().getPositionZ());
+            GVRSceneObject sobj;
+            try {
+                sobj = PlanetLoader.createSceneObject(mContext, obj, RENDER_ORDER_PLANET - i);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to create planet.", e);
+                continue;
+            }
+            rootObject.addChildObject(sobj);
+            setObjectPosition(sobj, obj.ra, obj.dec, PlanetLoader.DEFAULT_DISTANCE_PLANET);
+            obj.hoverZoom = new HoverZoom(PlanetLoader.getMeshObject(sobj), obj.initialScale, ZOOM_DURATION_PLANET);
+            obj.hoverZoom.setZoomedMesh(PlanetLoader.getMeshObject(sobj).getRenderData(), PlanetLoader.getZoomedPlanetMesh(mContext));
+            textures.register(obj, PlanetLoader.getMeshObject(sobj).getRenderData());
+            picker.addSphere(obj, PlanetLoader.DEFAULT_DISTANCE_PLANET, PlanetLoader.PLANET_MESH_RADIUS);
+            planetList.add(obj);
+
+            if (!obj.name.equals("Moon")) {
+                animateCounterClockwise(sobj.getChildByIndex(0), 10f);
+            }
 
-                } else if (obj.name.equals("Saturn")) {
-                    // put a ring on it
-                    PlanetLoader.addRings(gvrContext, obj, 1.0f, 2.3f, 15f, R.drawable.saturn_rings, RENDER_ORDER_PLANET);
-                } else if (obj.name.equals("Uranus")) {
-                    // put a ring on it
-                    PlanetLoader.addRings(gvrContext, obj, 1.3f, 1.6f, -10f, R.drawable.uranus_rings, RENDER_ORDER_PLANET);
-                }
+            if (obj.name.equals("Sun")) {
+
+                // let there be light
+                sunObject = obj;
+                mLight.setPosition(sobj.getTransform().getPositionX(), sobj.getTransform().getPositionY(), sobj.getTransform().getPositionZ());
+
+            } else if (obj.name.equals("Saturn")) {
+                // put a ring on it
+                PlanetLoader.addRings(mContext, obj, 1.0f, 2.3f, 15f, R.drawable.saturn_rings, RENDER_ORDER_PLANET);
+            } else if (obj.name.equals("Uranus")) {
+                // put a ring on it
+                PlanetLoader.addRings(mContext, obj, 1.3f, 1.6f, -10f, R.drawable.uranus_rings, RENDER_ORDER_PLANET);
             }
         }
+    }
 
-        for (Asterism asterism : asterismLoader.getAsterisms()) {
-            GVRSceneObject asterismObj = asterism.createSceneObject(gvrContext);
-            asterismObj.setName(Integer.toString(skyObjectList.indexOf(asterism.getSkyObject())));
-            asterismObj.getRenderData().setRenderingOrder(RENDER_ORDER_ASTERISM);
-            asterismObj.setPickingEnabled(true);
-            rootObject.addChildObject(asterismObj);
-
-            GVRSceneObject labelObj = asterism.createLabelObject(gvrContext, mActivity);
-            setObjectPosition(labelObj, asterism.getCenterRa(), asterism.getCenterDec(), StarLoader.DEFAULT_DISTANCE_STAR);
-            labelObj.getRenderData().setRenderingOrder(RENDER_ORDER_ASTERISM + 1);
-            rootObject.addChildObject(labelObj);
-            asterism.setLabelObject(labelObj);
-            asterism.setPassive();
+    private void attachNebulae(List<SkyObject> nebulaObjectList) {
+        for (SkyObject obj : nebulaObjectList) {
+            GVRSceneObject sobj;
+            try {
+                sobj = NebulaLoader.createSceneObject(mContext, obj);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to create nebula.", e);
+                continue;
+            }
+            rootObject.addChildObject(sobj);
+            sobj.getRenderData().setRenderingOrder(RENDER_ORDER_NEBULA);
+            setObjectPosition(sobj, obj.ra, obj.dec, obj.dist);
+            obj.hoverZoom = new HoverZoom(sobj, obj.initialScale, ZOOM_DURATION_NEBULA);
+            if (obj.texName != null) {
+                textures.register(obj, sobj.getRenderData());
+            }
+            picker.addQuad(obj, obj.dist, NebulaLoader.QUAD_SIZE);
+            nebulaList.add(obj);
+        }
+        nebulaJ2000 = new double[nebulaList.size() * 2];
+        for (int i = 0; i < nebulaList.size(); i++) {
+            nebulaJ2000[i * 2] = nebulaList.get(i).ra;
+            nebulaJ2000[i * 2 + 1] = nebulaList.get(i).dec;
         }
+        // they're at J2000 for now, so make sure they're moved to the current epoch
+        propagatedJd = Double.NaN;
+    }
+
+    private void attachAsterisms(StarLoader stars, StarField field, AsterismLoader loader,
+                                 ConstellationLines lines, ConstellationLabels labels,
+                                 EpochPropagator epochPropagator) {
+        // the stars and lines are transformed into the display frame vertex by vertex
+        // (see updateSky), so they're not attached to the rotating rootObject.
+        field.getBuilder().setFrame(skyFrame);
+        GVRSceneObject starFieldObj = field.createSceneObject(mContext);
+        starFieldObj.getRenderData().setRenderingOrder(RENDER_ORDER_STARS);
+        mMainScene.addSceneObject(starFieldObj);
+
+        lines.setFrame(skyFrame);
+        GVRSceneObject linesObj = lines.createSceneObject(mContext);
+        linesObj.getRenderData().setRenderingOrder(RENDER_ORDER_ASTERISM);
+        mMainScene.addSceneObject(linesObj);
+
+        // the labels turn with the rest of the sky
+        GVRSceneObject labelsObj = labels.createSceneObject(mContext);
+        labelsObj.getRenderData().setRenderingOrder(RENDER_ORDER_ASTERISM + 1);
+        rootObject.addChildObject(labelsObj);
+
+        starLoader = stars;
+        starField = field;
+        constellationLines = lines;
+        constellationLabels = labels;
+        propagator = epochPropagator;
     }
 
     @Override
     public void onStep() {
-        for (Asterism asterism : asterismLoader.getAsterisms()) {
-            asterism.setPassive();
+        clock.advance(mContext.getFrameTime());
+        updateSky();
+        if (starLoader == null) {
+            return;
         }
+        updateEpoch();
+        starField.update();
 
-        boolean haveNamedObject = false;
-        String text = "";
+        updateGaze();
+        skyTiles.update(gazeX, gazeY, gazeZ);
 
-        float[] lookAt = mMainScene.getMainCameraRig().getLookAt();
-        double dec = Math.toDegrees(Math.asin(lookAt[1]));
-        double ra = Math.toDegrees(Math.PI + Math.atan2(lookAt[0], lookAt[2]));
-        SkyObject pickedStar = starLoader.pickStar(ra, dec);
-        if (pickedStar != null) {
-            haveNamedObject = true;
-            text = pickedStar.name;
+        // only the asterism that was entered or left needs to change
+        Asterism pickedAsterism = constellationLines.pick(gazeRa, gazeDec);
+        if (pickedAsterism != activeAsterism) {
+            if (activeAsterism != null) {
+                activeAsterism.setPassive();
+            }
+            if (pickedAsterism != null) {
+                pickedAsterism.setActive();
+            }
+            activeAsterism = pickedAsterism;
         }
+        constellationLines.update();
+        constellationLabels.update();
 
-        for (GVRPicker.GVRPickedObject pickedObject : GVRPicker.pickObjects(mContext.getMainScene(), CAMERA_X, CAMERA_Y, CAMERA_Z, CAMERA_X, CAMERA_Y, CAMERA_Z - 1000f)) {
-            SkyObject obj = skyObjectList.get(Integer.parseInt(pickedObject.getHitObject().getName()));
+        int pickedStar = starLoader.pickStar(gazeRa, gazeDec);
+        SkyObject pickedObject = picker.pick(gazeX, gazeY, gazeZ);
 
-            if (obj.type == SkyObject.TYPE_ASTERISM) {
-                for (Asterism asterism : asterismLoader.getAsterisms()) {
-                    if (asterism.getSkyObject().equals(obj)) {
-                        asterism.setActive();
-                        break;
-                    }
-                }
-                continue;
+        // hover state machine: nothing happens unless the gaze enters or leaves something
+        if (pickedObject != hoverObject) {
+            if (hoverObject != null && hoverObject.hoverZoom != null) {
+                hoverObject.hoverZoom.unzoom(mAnimationEngine);
+            }
+            if (pickedObject != null && pickedObject.hoverZoom != null) {
+                pickedObject.hoverZoom.zoom(mAnimationEngine);
+                textures.request(pickedObject);
             }
+            hoverObject = pickedObject;
+            updateHoverText(pickedStar);
+        } else if (pickedStar != hoverStar) {
+            updateHoverText(pickedStar);
+        }
+        prefetcher.update(SystemClock.uptimeMillis());
+    }
 
-            haveNamedObject = true;
-            text = obj.name;
-
-            unzoomAll();
-
-            if (obj.type == SkyObject.TYPE_PLANET) {
-                GVRScaleAnimation anim = new GVRScaleAnimation(pickedObject.getHitObject(), 0.3f, obj.initialScale * 8f);
-                anim.start(mAnimationEngine);
-                GVRScaleAnimation unanim = new GVRScaleAnimation(pickedObject.getHitObject(), 0.3f, obj.initialScale);
-                unzoomAnimationList.add(unanim);
-            } else if (obj.type == SkyObject.TYPE_NEBULA || obj.type == SkyObject.TYPE_OTHER) {
-                GVRScaleAnimation anim = new GVRScaleAnimation(pickedObject.getHitObject(), 0.5f, obj.initialScale * 8f);
-                anim.start(mAnimationEngine);
-                GVRScaleAnimation unanim = new GVRScaleAnimation(pickedObject.getHitObject(), 0.5f, obj.initialScale);
-                unzoomAnimationList.add(unanim);
+    private void updateHoverText(int pickedStar) {
+        hoverStar = pickedStar;
+        String pageName = null;
+        if (hoverObject != null) {
+            textView.setText(hoverObject.name);
+            if (hoverObject.type != SkyObject.TYPE_OTHER) {
+                pageName = Util.transformObjectName(hoverObject.name);
             }
+        } else if (hoverStar >= 0) {
+            String name = starLoader.getCatalog().getName(hoverStar);
+            textView.setText(name);
+            pageName = Util.transformObjectName(name);
+        } else {
+            textView.setText("");
         }
+        prefetcher.setTarget(pageName, SystemClock.uptimeMillis());
+    }
 
-        if (prevPickedNamedObject && !haveNamedObject) {
-            unzoomAll();
+    /**
+     * Bring the sky up to the current simulated time: turn the whole sky with the rotation
+     * of the Earth (as seen from the observer's latitude in the horizon view), and move the
+     * planets that have moved far enough to notice.
+     */
+    private void updateSky() {
+        if (rootObject == null) {
+            return;
+        }
+        double jd = clock.getJulianDate();
+        if (horizonMode) {
+            skyFrame.setHorizon(latitude, HorizonTransform.localSiderealTime(jd, longitude));
+        } else {
+            skyFrame.setEquatorial(clock.getSiderealAngle());
+        }
+        if (skyFrame.angleFrom(skyRotationW, skyRotationX, skyRotationY, skyRotationZ) > SKY_MOVE_THRESHOLD) {
+            skyRotationW = skyFrame.getRotationW();
+            skyRotationX = skyFrame.getRotationX();
+            skyRotationY = skyFrame.getRotationY();
+            skyRotationZ = skyFrame.getRotationZ();
+            rootObject.getTransform().setRotation(skyRotationW, skyRotationX, skyRotationY, skyRotationZ);
+            if (starField != null) {
+                starField.getBuilder().invalidateFrame();
+                constellationLines.invalidateFrame();
+            }
         }
-        prevPickedNamedObject = haveNamedObject;
 
-        if (text.length() > 0) {
-            textView.setText(text);
-        } else if (!haveNamedObject && textView.getText().length() > 0) {
-            textView.setText("");
+        for (int i = 0; i < planetList.size(); i++) {
+            SkyObject obj = planetList.get(i);
+            ephemeris.getPosition(obj.planetId, jd, planetPosition);
+            if (SkyMath.angularDistance(obj.ra, obj.dec, planetPosition[0], planetPosition[1]) < PLANET_MOVE_THRESHOLD) {
+                continue;
+            }
+            obj.ra = planetPosition[0];
+            obj.dec = planetPosition[1];
+            setObjectPosition(obj.sceneObj, obj.ra, obj.dec, PlanetLoader.DEFAULT_DISTANCE_PLANET);
+            picker.updatePosition(obj);
+            if (obj == sunObject) {
+                GVRTransform t = obj.sceneObj.getTransform();
+                mLight.setPosition(t.getPositionX(), t.getPositionY(), t.getPositionZ());
+            }
         }
     }
 
-    private void unzoomAll() {
-        if (unzoomAnimationList.size() > 0) {
-            for (GVRAnimation anim : unzoomAnimationList) {
-                anim.start(mAnimationEngine);
-            }
-            unzoomAnimationList.clear();
+    /**
+     * Move the stars (and everything that depends on their positions), the nebulae and
+     * the sky tiles to the current simulated date, once it has drifted far enough from the
+     * date they were last moved to. The positions and indices are computed in the
+     * background, and swapped in on the GL thread when they're ready.
+     */
+    private void updateEpoch() {
+        double jd = clock.getJulianDate();
+        if (propagating || Math.abs(jd - propagatedJd) < EPOCH_UPDATE_INTERVAL) {
+            return;
         }
+        propagating = true;
+        List<SkyObject> nebulae = new ArrayList<>(nebulaList);
+        double[] nebulaStart = nebulaJ2000;
+        propagator.getPool().execute(() -> {
+            Runnable swap = null;
+            try {
+                int count = propagator.size();
+                double[] ra = new double[count];
+                double[] dec = new double[count];
+                propagator.propagate(jd, ra, dec);
+                SkyIndex index = StarLoader.buildSkyIndex(ra, dec, count);
+                float[] lineDirections = constellationLines.buildDirections(ra, dec);
+                ConstellationIndex lineIndex = constellationLines.buildIndex(lineDirections);
+
+                // the nebulae and sky tiles have no proper motion, so they're only precessed
+                double[] m = new double[9];
+                EpochPropagator.precessionNutationMatrix(jd, m);
+                double[] nebulaPositions = new double[nebulaStart.length];
+                double[] pos = new double[2];
+                for (int i = 0; i < nebulaStart.length; i += 2) {
+                    EpochPropagator.precess(m, nebulaStart[i], nebulaStart[i + 1], pos);
+                    nebulaPositions[i] = pos[0];
+                    nebulaPositions[i + 1] = pos[1];
+                }
+                float[] tileRotation = new float[4];
+                SkyMath.sceneRotation(m, tileRotation);
+
+                swap = () -> {
+                    StarCatalog catalog = starLoader.getCatalog();
+                    System.arraycopy(ra, 0, catalog.ra, 0, count);
+                    System.arraycopy(dec, 0, catalog.dec, 0, count);
+                    starLoader.setSkyIndex(index);
+                    starField.getBuilder().invalidatePositions();
+                    constellationLines.setDirections(lineDirections, lineIndex);
+                    constellationLabels.invalidatePositions();
+                    for (int i = 0; i < nebulae.size(); i++) {
+                        SkyObject obj = nebulae.get(i);
+                        obj.ra = nebulaPositions[i * 2];
+                        obj.dec = nebulaPositions[i * 2 + 1];
+                        setObjectPosition(obj.sceneObj, obj.ra, obj.dec, obj.dist);
+                        picker.updatePosition(obj);
+                    }
+                    skyTiles.setRotation(tileRotation[0], tileRotation[1], tileRotation[2], tileRotation[3]);
+                };
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to move the sky to the new epoch.", e);
+            } finally {
+                // if it failed, it's not tried again until the date has moved on; if more
+                // nebulae were attached in the meantime, it's done again right away
+                Runnable update = swap;
+                mContext.runOnGlThread(() -> {
+                    if (update != null) {
+                        update.run();
+                    }
+                    propagatedJd = nebulae.size() == nebulaList.size() ? jd : Double.NaN;
+                    propagating = false;
+                });
+            }
+        });
     }
 
-    public void onTap() {
-        if (null == mMainScene) {
+    /**
+     * Change the rate of the simulated time, in response to swiping up or down.
+     */
+    public void onSwipe(VRTouchPadGestureDetector.SwipeDirection direction) {
+        if (mContext == null) {
             return;
         }
-        webViewVisible = false;
+        mContext.runOnGlThread(() -> {
+            boolean changed = direction == VRTouchPadGestureDetector.SwipeDirection.Up ? clock.faster() : clock.slower();
+            if (changed) {
+                textView.setText(clock.getRateDescription());
+            }
+        });
+    }
 
-        float[] lookAt = mMainScene.getMainCameraRig().getLookAt();
-        double dec = Math.toDegrees(Math.asin(lookAt[1]));
-        double ra = Math.toDegrees(Math.PI + Math.atan2(lookAt[0], lookAt[2]));
-        SkyObject pickedObj = starLoader.pickStar(ra, dec);
+    /**
+     * Switch between the equatorial view and the horizon view, in response to a long press.
+     */
+    public void toggleHorizonMode() {
+        if (mContext == null) {
+            return;
+        }
+        mContext.runOnGlThread(() -> {
+            horizonMode = !horizonMode;
+            groundObject.setEnable(horizonMode);
+            textView.setText(horizonMode ? "Horizon view" : "Equatorial view");
+        });
+    }
 
-        for (GVRPicker.GVRPickedObject pickedObject : GVRPicker.pickObjects(mContext.getMainScene(), CAMERA_X, CAMERA_Y, CAMERA_Z, CAMERA_X, CAMERA_Y, CAMERA_Z - 1000f)) {
-            String objName = pickedObject.getHitObject().getName();
-            SkyObject obj = skyObjectList.get(Integer.parseInt(objName));
+    private static ObsInfo createObsInfo(double latitude, double longitude) {
+        ObsInfo obsInfo = new ObsInfo();
+        obsInfo.setLatitudeDeg(latitude);
+        obsInfo.setLongitudeDeg(longitude);
+        return obsInfo;
+    }
 
-            if (obj.type == SkyObject.TYPE_ASTERISM) {
-                continue;
-            }
+    /**
+     * Work out the RA and Dec of the point that's being looked at, from the rotation of
+     * the camera rig and the head, without allocating anything (unlike getLookAt()). The
+     * direction is taken into the frame of the sky, which is turned by the simulated time.
+     */
+    private void updateGaze() {
+        GVRTransform rig = mMainScene.getMainCameraRig().getTransform();
+        GVRTransform head = mMainScene.getMainCameraRig().getHeadTransform();
+        float rw = rig.getRotationW(), rx = rig.getRotationX(), ry = rig.getRotationY(), rz = rig.getRotationZ();
+        float hw = head.getRotationW(), hx = head.getRotationX(), hy = head.getRotationY(), hz = head.getRotationZ();
+
+        // combined rotation: rig * head
+        float cw = rw * hw - rx * hx - ry * hy - rz * hz;
+        float cx = rw * hx + rx * hw + ry * hz - rz * hy;
+        float cy = rw * hy - rx * hz + ry * hw + rz * hx;
+        float cz = rw * hz + rx * hy - ry * hx + rz * hw;
+
+        // ...and into the sky frame: inverse(sky) * rig * head
+        float sw = skyRotationW, sx = -skyRotationX, sy = -skyRotationY, sz = -skyRotationZ;
+        float w = sw * cw - sx * cx - sy * cy - sz * cz;
+        float x = sw * cx + sx * cw + sy * cz - sz * cy;
+        float y = sw * cy - sx * cz + sy * cw + sz * cx;
+        float z = sw * cz + sx * cy - sy * cx + sz * cw;
+
+        // rotate the forward vector (0, 0, -1)
+        gazeX = -2f * (x * z + w * y);
+        gazeY = -2f * (y * z - w * x);
+        gazeZ = -(1f - 2f * (x * x + y * y));
+        gazeRa = SkyMath.vectorRa(gazeX, gazeY, gazeZ);
+        gazeDec = SkyMath.vectorDec(gazeX, gazeY, gazeZ);
+    }
 
-            pickedObj = obj;
-            // only care about the first picked object
-            break;
+    /**
+     * Show the description of whatever is being looked at, in response to a tap.
+     */
+    public void onTap() {
+        if (mContext == null) {
+            return;
         }
+        // the hover state and the prefetcher belong to the GL thread
+        mContext.runOnGlThread(() -> {
+            if (null == mMainScene || null == starLoader) {
+                return;
+            }
+            webViewVisible = false;
 
-        if (pickedObj != null) {
-            mActivity.loadWebPageForObject(pickedObj);
-            webViewVisible = true;
+            // the object under the gaze was already picked in onStep
+            SkyObject pickedObj = hoverObject;
+            int pickedStar = hoverStar;
+            if (pickedObj == null && pickedStar >= 0) {
+                pickedObj = starLoader.getCatalog().createSkyObject(pickedStar);
+            }
 
-            webViewObject.getTransform().setPosition(0f, 0f, 0f);
-            webViewObject.getTransform().setRotationByAxis(0f, 0f, 0f, 1f);
-            webViewObject.getTransform().setRotationByAxis(0f, 0f, 1f, 0f);
-            webViewObject.getTransform().setRotationByAxis(0f, 1f, 0f, 0f);
-            setObjectPosition(webViewObject, pickedObj.ra - 20f, pickedObj.dec, 12f);
-        }
+            if (pickedObj != null) {
+                if (pickedObj.type != SkyObject.TYPE_OTHER) {
+                    prefetcher.recordOpen(Util.transformObjectName(pickedObj.name));
+                    Log.d(TAG, "Prefetch " + prefetcher.getStats() + "; " + RestBaseClient.getCacheStats());
+                }
+                Log.d(TAG, "Textures " + textures.getStats() + "; meshes " + MeshCache.getStats());
+                mActivity.loadWebPageForObject(pickedObj);
+                webViewVisible = true;
+
+                // the panel isn't part of the sky, so it shouldn't turn with it; place it
+                // where the sky is right now, and leave it there
+                setObjectPosition(webViewObject, pickedObj.ra - 20f, pickedObj.dec, 12f);
+                webViewObject.getTransform().rotateWithPivot(skyRotationW, skyRotationX, skyRotationY, skyRotationZ,
+                        0f, 0f, 0f);
+            }
 
-        updateWebViewVisible();
+            updateWebViewVisible();
+        });
     }
 
     private void updateWebViewVisible() {
         if (webViewVisible) {
             if (!webViewAdded) {
-                rootObject.addChildObject(webViewObject);
+                mMainScene.addSceneObject(webViewObject);
                 webViewAdded = true;
             }
-        } else {
-            rootObject.removeChildObject(webViewObject);
+        } else if (webViewAdded) {
+            mMainScene.removeSceneObject(webViewObject);
             webViewAdded = false;
         }
     }
 
+    /**
+     * Place the object at the given RA and Dec and distance, facing the center. This sets
+     * the position and rotation outright (rather than rotating the object into place), so
+     * it may be called again to move the object.
+     */
     private void setObjectPosition(GVRSceneObject obj, double ra, double dec, float dist) {
-        obj.getTransform().setPosition(0, 0, -dist);
-        obj.getTransform().rotateByAxisWithPivot((float) ra, 0, 1, 0, 0, 0, 0);
-        obj.getTransform().rotateByAxisWithPivot((float) dec, (float) Math.cos(Math.toRadians(ra)),
-                0, (float) -Math.sin(Math.toRadians(ra)), 0, 0, 0);
+        obj.getTransform().setPosition(SkyMath.vectorX(ra, dec) * dist, SkyMath.vectorY(ra, dec) * dist,
+                SkyMath.vectorZ(ra, dec) * dist);
+
+        // equivalent to rotating by ra around the Y axis, followed by dec around the
+        // (rotated) X axis
+        double raRad = Math.toRadians(ra);
+        double cr = Math.cos(raRad / 2.0);
+        double sr = Math.sin(raRad / 2.0);
+        double cd = Math.cos(Math.toRadians(dec) / 2.0);
+        double sd = Math.sin(Math.toRadians(dec) / 2.0);
+        double xd = sd * Math.cos(raRad);
+        double zd = -sd * Math.sin(raRad);
+        obj.getTransform().setRotation((float) (cd * cr), (float) (xd * cr - zd * sr),
+                (float) (cd * sr), (float) (xd * sr + zd * cr));
     }
 
     public boolean handleKeyEvent(KeyEvent event) {
@@ -0,0 +1,222 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Fetches the description of whatever the user is looking at before they tap on it, so
+ * that it can be shown right away when they do.
+ *
+ * Once the gaze has rested on the same object for the dwell time, the object becomes a
+ * candidate for prefetching. Candidates wait in a queue, most recent first, and are
+ * dropped if they aren't started before they go stale (i.e. the user has long since
+ * looked elsewhere). Prefetches are started no more often than the minimum interval,
+ * and no more than a few at a time, so that looking around the sky doesn't flood the
+ * network. A prefetch that fails may be tried again after a delay, if the gaze is still
+ * (or again) on the same object, and a page that has since been evicted from memory may
+ * be prefetched again.
+ *
+ * Everything here is called from the GL thread. Prefetches complete on the main thread,
+ * and are only handed over to be processed in the next update.
+ */
+public class PrefetchScheduler {
+    public static final long DEFAULT_DWELL_MILLIS = 600;
+    private static final long MIN_INTERVAL_MILLIS = 400;
+    private static final long STALE_MILLIS = 5000;
+    private static final int MAX_CONCURRENT = 2;
+    private static final int MAX_QUEUED = 8;
+    private static final long RETRY_DELAY_MILLIS = 10000;
+    // prefetched pages that are remembered, for attributing instant opens to prefetching;
+    // this is about the number of pages that RestBaseClient keeps in memory
+    private static final int MAX_REMEMBERED = 32;
+
+    private static class Candidate {
+        final String name;
+        final long time;
+
+        Candidate(String name, long time) {
+            this.name = name;
+            this.time = time;
+        }
+    }
+
+    private static class Completion {
+        final String name;
+        final boolean success;
+
+        Completion(String name, boolean success) {
+            this.name = name;
+            this.success = success;
+        }
+    }
+
+    private final long dwellMillis;
+    private final PriorityQueue<Candidate> queue = new PriorityQueue<>(MAX_QUEUED,
+            (lhs, rhs) -> Long.compare(rhs.time, lhs.time));
+    // pages that are being prefetched
+    private final Set<String> active = new HashSet<>();
+    // pages that were prefetched recently, least recently used first
+    private final Set<String> prefetched = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_REMEMBERED;
+        }
+    });
+    // pages whose prefetch failed, and when they may be tried again
+    private final Map<String, Long> retryTimes = new HashMap<>();
+    // prefetches that have finished, waiting for the next update
+    private final ConcurrentLinkedQueue<Completion> completions = new ConcurrentLinkedQueue<>();
+
+    private String target;
+    private long targetSince;
+    private boolean targetQueued;
+    private long lastStart;
+
+    private int started;
+    private int failed;
+    private int dropped;
+    private int opens;
+    private int instantOpens;
+    private int prefetchedOpens;
+
+    public PrefetchScheduler(long dwellMillis) {
+        this.dwellMillis = dwellMillis;
+    }
+
+    /**
+     * Set the page that is under the gaze, or null if there's nothing there. Only needs
+     * to be called when the gaze moves to a different object.
+     */
+    public void setTarget(String name, long now) {
+        target = name;
+        targetSince = now;
+        targetQueued = false;
+    }
+
+    /**
+     * Queue the current target if the gaze has dwelled on it long enough, and start as
+     * many queued prefetches as the limits allow. Called every frame.
+     */
+    public void update(long now) {
+        processCompletions(now);
+        if (target != null && !targetQueued && now - targetSince >= dwellMillis && now >= retryTime(target)) {
+            targetQueued = true;
+            if (!active.contains(target) && !RestBaseClient.isInMemory(target)) {
+                // if it was prefetched before, it has been evicted since
+                prefetched.remove(target);
+                queue.add(new Candidate(target, now));
+                if (queue.size() > MAX_QUEUED) {
+                    // the oldest candidate is the least likely to be tapped
+                    dropOldest();
+                }
+            }
+        }
+        while (!queue.isEmpty() && active.size() < MAX_CONCURRENT && now - lastStart >= MIN_INTERVAL_MILLIS) {
+            Candidate candidate = queue.poll();
+            if (now - candidate.time > STALE_MILLIS) {
+                dropped++;
+                continue;
+            }
+            start(candidate.name, now);
+        }
+    }
+
+    /**
+     * Record that the user opened the given page, for measuring how often prefetching
+     * made it show up right away.
+     */
+    public void recordOpen(String name) {
+        opens++;
+        if (RestBaseClient.isInMemory(name)) {
+            instantOpens++;
+            if (prefetched.contains(name)) {
+                prefetchedOpens++;
+            }
+        }
+    }
+
+    /**
+     * @return The fraction of opened pages that were already in memory.
+     */
+    public float getHitRate() {
+        return opens == 0 ? 0f : (float) instantOpens / opens;
+    }
+
+    public String getStats() {
+        return "opens: " + opens + ", instant: " + instantOpens + " (" + prefetchedOpens + " prefetched)"
+                + ", prefetches started: " + started + ", failed: " + failed + ", dropped: " + dropped;
+    }
+
+    private void start(String name, long now) {
+        active.add(name);
+        retryTimes.remove(name);
+        lastStart = now;
+        started++;
+        RestBaseClient.getPage(name, new RestBaseClient.OnGetPageResult() {
+            @Override
+            public void onSuccess(String pageContents) {
+                completions.add(new Completion(name, true));
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                completions.add(new Completion(name, false));
+            }
+        });
+    }
+
+    private void processCompletions(long now) {
+        Completion completion;
+        while ((completion = completions.poll()) != null) {
+            active.remove(completion.name);
+            if (completion.success) {
+                prefetched.add(completion.name);
+            } else {
+                failed++;
+                retryTimes.put(completion.name, now + RETRY_DELAY_MILLIS);
+                if (completion.name.equals(target)) {
+                    // queue it again once the delay is up, if it's still being looked at
+                    targetQueued = false;
+                }
+            }
+        }
+    }
+
+    private long retryTime(String name) {
+        Long time = retryTimes.get(name);
+        return time != null ? time : 0;
+    }
+
+    private void dropOldest() {
+        Candidate oldest = null;
+        for (Candidate c : queue) {
+            if (oldest == null || c.time < oldest.time) {
+                oldest = c;
+            }
+        }
+        queue.remove(oldest);
+        dropped++;
+    }
+}
@@ -0,0 +1,109 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+/**
+ * Packs rectangles into a larger one (e.g. images into a texture atlas), on shelves: each
+ * rectangle goes on the first shelf that has room for it, and a new shelf is opened
+ * below the others when none does. This wastes little space when the rectangles are of
+ * similar height, such as lines of text, especially if they're inserted tallest first.
+ *
+ * This is plain Java with no dependency on the renderer.
+ */
+public class RectPacker {
+    private final int width;
+    private final int height;
+    private final int padding;
+    private int[] shelfY = new int[8];
+    private int[] shelfHeight = new int[8];
+    private int[] shelfUsed = new int[8];
+    private int shelfCount;
+    private int usedArea;
+
+    /**
+     * @param padding Number of empty pixels to leave around each rectangle, so that
+     *                filtering doesn't bleed between neighbors.
+     */
+    public RectPacker(int width, int height, int padding) {
+        this.width = width;
+        this.height = height;
+        this.padding = padding;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The fraction of the area that is covered by the rectangles inserted so far,
+     * not counting their padding.
+     */
+    public float getOccupancy() {
+        return (float) usedArea / ((float) width * height);
+    }
+
+    /**
+     * Find a place for a rectangle of the given size.
+     * @param out Array that receives the X and Y of the top-left corner of the rectangle.
+     * @return Whether there was room for it.
+     */
+    public boolean insert(int w, int h, int[] out) {
+        int paddedW = w + padding * 2;
+        int paddedH = h + padding * 2;
+        if (paddedW > width) {
+            return false;
+        }
+        int best = -1;
+        for (int i = 0; i < shelfCount; i++) {
+            // prefer the shelf that fits the height most closely
+            if (paddedH <= shelfHeight[i] && shelfUsed[i] + paddedW <= width
+                    && (best < 0 || shelfHeight[i] < shelfHeight[best])) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            int top = shelfCount == 0 ? 0 : shelfY[shelfCount - 1] + shelfHeight[shelfCount - 1];
+            if (top + paddedH > height) {
+                return false;
+            }
+            if (shelfCount == shelfY.length) {
+                shelfY = grow(shelfY);
+                shelfHeight = grow(shelfHeight);
+                shelfUsed = grow(shelfUsed);
+            }
+            best = shelfCount++;
+            shelfY[best] = top;
+            shelfHeight[best] = paddedH;
+            shelfUsed[best] = 0;
+        }
+        out[0] = shelfUsed[best] + padding;
+        out[1] = shelfY[best] + padding;
+        shelfUsed[best] += paddedW;
+        usedArea += w * h;
+        return true;
+    }
+
+    private static int[] grow(int[] arr) {
+        int[] newArr = new int[arr.length * 2];
+        System.arraycopy(arr, 0, newArr, 0, arr.length);
+        return newArr;
+    }
+}
@@ -0,0 +1,133 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The bookkeeping behind TextureResidencyManager: which items are resident, in the order
+ * in which they were last requested, and how much memory they take together, against a
+ * budget. When an item is added over the budget, the least recently requested others are
+ * evicted to make room for it.
+ *
+ * This is plain Java with no dependency on the renderer.
+ */
+public class ResidencyBudget<K> {
+    private final long budgetBytes;
+    // resident items and their sizes, least recently requested first
+    private final LinkedHashMap<K, Long> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long residentBytes;
+    private long peakResidentBytes;
+    private int loads;
+    private int hits;
+    private int evictions;
+
+    public ResidencyBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Record a request for the given item, which makes it the most recently requested one
+     * if it's resident.
+     * @return Whether it's resident, i.e. doesn't need to be loaded.
+     */
+    public boolean request(K key) {
+        if (resident.get(key) != null) {
+            hits++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Make the given item resident (as the most recently requested one), and evict the
+     * least recently requested others until the total fits in the budget again. The new
+     * item itself is never evicted, even if it's larger than the whole budget.
+     * @return The items that were evicted, least recently requested first.
+     */
+    public List<K> add(K key, long bytes) {
+        Long old = resident.put(key, bytes);
+        if (old != null) {
+            residentBytes -= old;
+        }
+        residentBytes += bytes;
+        peakResidentBytes = Math.max(peakResidentBytes, residentBytes);
+        loads++;
+
+        List<K> evicted = new ArrayList<>();
+        Iterator<Map.Entry<K, Long>> it = resident.entrySet().iterator();
+        while (residentBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<K, Long> entry = it.next();
+            if (entry.getKey().equals(key)) {
+                continue;
+            }
+            it.remove();
+            residentBytes -= entry.getValue();
+            evicted.add(entry.getKey());
+            evictions++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Remove the given item (e.g. because it failed to load), without counting it as an
+     * eviction.
+     * @return Whether it was resident.
+     */
+    public boolean remove(K key) {
+        Long bytes = resident.remove(key);
+        if (bytes == null) {
+            return false;
+        }
+        residentBytes -= bytes;
+        return true;
+    }
+
+    public int getResidentCount() {
+        return resident.size();
+    }
+
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public long getPeakResidentBytes() {
+        return peakResidentBytes;
+    }
+
+    public int getLoads() {
+        return loads;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getEvictions() {
+        return evictions;
+    }
+
+    public String getStats() {
+        return "resident: " + resident.size() + " (" + residentBytes / 1024 + " KB, peak " + peakResidentBytes / 1024
+                + " KB), loads: " + loads + ", hits: " + hits + ", evictions: " + evictions;
+    }
+}
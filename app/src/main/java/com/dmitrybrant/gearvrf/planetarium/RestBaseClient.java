@@ -15,65 +15,371 @@
 
 package com.dmitrybrant.gearvrf.planetarium;
 
-import android.os.AsyncTask;
-import android.text.TextUtils;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
+/**
+ * Client for the page summaries of the Wikipedia REST API.
+ *
+ * Summaries are cached in two tiers: the parsed contents of recently viewed pages are
+ * kept in memory, in front of an HTTP cache on disk (in the app's cache directory).
+ * Responses on disk are considered fresh for CACHE_TTL_HOURS, after which they're
+ * revalidated with the server (using their ETag or Last-Modified date), so that pages
+ * that haven't changed aren't downloaded again. If the network can't be reached at all,
+ * whatever is on disk is used, however old it is. Before any of that, pages are looked
+ * up in the database of descriptions bundled with the app, so that they can be shown
+ * without ever going to the network.
+ *
+ * All requests go through one client, so that connections (and HTTP/2 sessions) to the
+ * server are reused, and at most MAX_REQUESTS of them run at once. Requests for a page
+ * that is already being fetched are merged into the one in flight, and every request
+ * can be cancelled through the PageRequest that it returns. Results are delivered on
+ * the main thread.
+ */
 public class RestBaseClient {
     public static final String TAG = "RestBaseServer";
     private static final String BASE_URL = "https://en.wikipedia.org/api/rest_v1/page/summary/";
+    private static final String CACHE_DIR = "restbase";
+    private static final long DISK_CACHE_SIZE = 4 * 1024 * 1024;
+    private static final int MEMORY_CACHE_ENTRIES = 32;
+    private static final int CACHE_TTL_HOURS = 24;
+    private static final int MAX_REQUESTS = 4;
+    private static final int MAX_IDLE_CONNECTIONS = 2;
+    private static final int KEEP_ALIVE_MINUTES = 5;
+
+    private static final LruCache<String, String> memoryCache = new LruCache<>(MEMORY_CACHE_ENTRIES);
+    private static final AtomicInteger memoryHits = new AtomicInteger();
+    private static final AtomicInteger bundledHits = new AtomicInteger();
+    private static final AtomicInteger diskHits = new AtomicInteger();
+    private static final AtomicInteger revalidatedHits = new AtomicInteger();
+    private static final AtomicInteger misses = new AtomicInteger();
+    private static final AtomicInteger fetchCount = new AtomicInteger();
+    private static final AtomicLong totalLatencyMillis = new AtomicLong();
+    private static final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    // fetches in flight, by page name; guarded by itself
+    private static final Map<String, Fetch> inFlight = new HashMap<>();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static OkHttpClient client = createClient(null, 0);
+    private static String baseUrl = BASE_URL;
+    private static DescriptionDatabase bundled;
 
     public interface OnGetPageResult {
         void onSuccess(String pageContents);
         void onError(Throwable e);
     }
 
-    public static void getPage(String name, OnGetPageResult listener) {
-        new GetPageTask(listener).execute(name);
-    }
-
-    private static class GetPageTask extends AsyncTask<String, Void, String> {
+    /**
+     * Handle to a page request, for abandoning it if the page is no longer wanted.
+     */
+    public static class PageRequest {
+        private final Fetch fetch;
         private final OnGetPageResult listener;
 
-        public GetPageTask(OnGetPageResult listener) {
+        private PageRequest(Fetch fetch, OnGetPageResult listener) {
+            this.fetch = fetch;
             this.listener = listener;
         }
 
-        @Override
-        protected String doInBackground(String... params) {
-            try {
-                OkHttpClient client = new OkHttpClient();
-                String pageName = params[0];
-                String url = BASE_URL + pageName;
-                Request request = new Request.Builder().url(url).build();
-                Response response = client.newCall(request).execute();
+        /**
+         * Stop the listener from being called. The fetch itself is cancelled if no one
+         * else is waiting for the same page.
+         */
+        public void cancel() {
+            if (fetch != null) {
+                fetch.removeListener(listener);
+            }
+        }
+    }
 
-                JSONObject json = new JSONObject(response.body().string());
-                return parsePageContent(json);
-            } catch(Exception e) {
-                listener.onError(e);
+    /**
+     * Set up the disk cache and open the bundled descriptions. Should be called once,
+     * before any pages are requested; until it is, pages are only cached in memory.
+     */
+    public static void init(Context context) {
+        init(createClient(new File(context.getCacheDir(), CACHE_DIR), TimeUnit.HOURS.toSeconds(CACHE_TTL_HOURS)),
+                BASE_URL, new DescriptionDatabase(context));
+    }
+
+    /**
+     * Use the given client and server, and forget the pages cached in memory. This is
+     * for pointing the client at a test server.
+     */
+    static void init(OkHttpClient client, String baseUrl, DescriptionDatabase bundled) {
+        RestBaseClient.client = client;
+        RestBaseClient.baseUrl = baseUrl;
+        RestBaseClient.bundled = bundled;
+        memoryCache.evictAll();
+    }
+
+    /**
+     * @param cacheDir Directory for the disk cache, or null for no disk cache.
+     * @param ttlSeconds How long cached responses are used before they're revalidated.
+     */
+    static OkHttpClient createClient(File cacheDir, long ttlSeconds) {
+        // the dispatcher hands over the next call while the thread of the previous one is
+        // still busy, so calls are queued rather than turned away; the dispatcher itself
+        // keeps at most MAX_REQUESTS of them running
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_REQUESTS, MAX_REQUESTS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> new Thread(r, TAG));
+        executor.allowCoreThreadTimeOut(true);
+        Dispatcher dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES));
+        if (cacheDir != null) {
+            builder.cache(new Cache(cacheDir, DISK_CACHE_SIZE))
+                    .addNetworkInterceptor(chain -> {
+                        // keep responses for our own TTL, regardless of what the server says;
+                        // the validators (ETag, Last-Modified) are kept for revalidation later.
+                        Response response = chain.proceed(chain.request());
+                        if (!response.isSuccessful()) {
+                            return response;
+                        }
+                        return response.newBuilder()
+                                .removeHeader("Pragma")
+                                .header("Cache-Control", "public, max-age=" + ttlSeconds)
+                                .build();
+                    });
+        }
+        return builder.build();
+    }
+
+    /**
+     * Request the summary of the given page. The listener is called on the main thread,
+     * unless the page is already in memory or bundled with the app, in which case it's
+     * called right away.
+     */
+    public static PageRequest getPage(String name, OnGetPageResult listener) {
+        String cached = memoryCache.get(name);
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            listener.onSuccess(cached);
+            return new PageRequest(null, listener);
+        }
+        String description = bundled != null ? bundled.get(name) : null;
+        if (description != null) {
+            bundledHits.incrementAndGet();
+            memoryCache.put(name, description);
+            listener.onSuccess(description);
+            return new PageRequest(null, listener);
+        }
+        synchronized (inFlight) {
+            Fetch fetch = inFlight.get(name);
+            if (fetch == null) {
+                fetch = new Fetch(name);
+                inFlight.put(name, fetch);
+                fetch.listeners.add(listener);
+                fetch.start();
+            } else {
+                fetch.listeners.add(listener);
             }
-            return "";
+            return new PageRequest(fetch, listener);
         }
+    }
 
-        @Override
-        protected void onPostExecute(String result) {
-            if (!TextUtils.isEmpty(result)) {
-                listener.onSuccess(result);
+    /**
+     * @return Whether the given page is cached in memory, i.e. whether requesting it would
+     * return right away.
+     */
+    public static boolean isInMemory(String name) {
+        return memoryCache.get(name) != null;
+    }
+
+    public static int getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public static int getBundledHits() {
+        return bundledHits.get();
+    }
+
+    public static int getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * @return The number of requests that were answered from the disk cache after the
+     * server confirmed that the cached page was still current.
+     */
+    public static int getRevalidatedHits() {
+        return revalidatedHits.get();
+    }
+
+    /**
+     * @return The number of requests that had to download the page.
+     */
+    public static int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The average time, in milliseconds, from starting a fetch until its page was
+     * parsed, over all fetches that completed (not counting pages found in memory).
+     */
+    public static long getAverageLatencyMillis() {
+        int count = fetchCount.get();
+        return count == 0 ? 0 : totalLatencyMillis.get() / count;
+    }
+
+    public static long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+
+    public static String getCacheStats() {
+        return "memory hits: " + memoryHits.get() + ", bundled hits: " + bundledHits.get() + ", disk hits: " + diskHits.get()
+                + ", revalidated: " + revalidatedHits.get() + ", misses: " + misses.get()
+                + ", average latency: " + getAverageLatencyMillis() + " ms, max: " + maxLatencyMillis.get() + " ms";
+    }
+
+    /**
+     * A fetch of one page, shared by every request for that page while it's in flight.
+     */
+    private static class Fetch implements Callback {
+        private final String name;
+        private final Request request;
+        private final List<OnGetPageResult> listeners = new ArrayList<>();
+        private final long startTime = SystemClock.elapsedRealtime();
+        private Call call;
+        private boolean fallback;
+
+        Fetch(String name) {
+            this.name = name;
+            request = new Request.Builder().url(baseUrl + name).build();
+        }
+
+        void start() {
+            call = client.newCall(request);
+            call.enqueue(this);
+        }
+
+        void removeListener(OnGetPageResult listener) {
+            synchronized (inFlight) {
+                listeners.remove(listener);
+                if (listeners.isEmpty() && inFlight.get(name) == this) {
+                    inFlight.remove(name);
+                    call.cancel();
+                }
             }
         }
 
         @Override
-        protected void onPreExecute() { }
+        public void onFailure(Call call, IOException e) {
+            if (call.isCanceled()) {
+                return;
+            }
+            if (!fallback) {
+                // offline: fall back to the disk cache, however stale
+                synchronized (inFlight) {
+                    if (inFlight.get(name) != this) {
+                        return;
+                    }
+                    fallback = true;
+                    this.call = client.newCall(request.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build());
+                    this.call.enqueue(this);
+                }
+                return;
+            }
+            finish(null, e);
+        }
 
         @Override
-        protected void onProgressUpdate(Void... values) { }
+        public void onResponse(Call call, Response response) {
+            try {
+                if (fallback && !response.isSuccessful()) {
+                    // nothing cached either
+                    response.close();
+                    finish(null, new IOException("Page not available offline."));
+                    return;
+                }
+                countResponse(response);
+                JSONObject json = new JSONObject(response.body().string());
+                String contents = parsePageContent(json);
+                if (json.has("extract_html")) {
+                    memoryCache.put(name, contents);
+                }
+                recordLatency(SystemClock.elapsedRealtime() - startTime);
+                finish(contents, null);
+            } catch (IOException | JSONException e) {
+                finish(null, e);
+            }
+        }
+
+        private void finish(String contents, Throwable error) {
+            List<OnGetPageResult> waiting;
+            synchronized (inFlight) {
+                if (inFlight.get(name) != this) {
+                    return;
+                }
+                inFlight.remove(name);
+                waiting = new ArrayList<>(listeners);
+            }
+            mainHandler.post(() -> {
+                for (OnGetPageResult listener : waiting) {
+                    synchronized (inFlight) {
+                        // cancelled after the result came in, but before it was delivered
+                        if (!listeners.contains(listener)) {
+                            continue;
+                        }
+                    }
+                    if (error != null) {
+                        listener.onError(error);
+                    } else {
+                        listener.onSuccess(contents);
+                    }
+                }
+            });
+        }
+    }
+
+    private static void countResponse(Response response) {
+        if (response.networkResponse() == null) {
+            diskHits.incrementAndGet();
+        } else if (response.cacheResponse() != null) {
+            revalidatedHits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+    }
+
+    private static void recordLatency(long millis) {
+        fetchCount.incrementAndGet();
+        totalLatencyMillis.addAndGet(millis);
+        long max;
+        do {
+            max = maxLatencyMillis.get();
+        } while (millis > max && !maxLatencyMillis.compareAndSet(max, millis));
     }
 
     private static String parsePageContent(JSONObject json) throws JSONException {
@@ -26,99 +26,9 @@ public class RingMesh {
      * @param innerRadius What it says.
      * @param outerRadius What it says.
      * @param nSections Number of segments in the ring.
-     * @return The mesh.
+     * @return The mesh, which is shared with any other ring of the same dimensions.
      */
     public static GVRMesh createRingMesh(GVRContext context, float innerRadius, float outerRadius, int nSections) {
-        float twopi =  2f * (float) Math.PI;
-        GVRMesh mesh = new GVRMesh(context);
-        float[] vertices = new float[(nSections + 1) * 3 * 6];
-        float[] normals = new float[(nSections + 1) * 3 * 6];
-        float[] texCoords = new float[(nSections + 1) * 2 * 6];
-        char[] indices = new char[(nSections + 1) * 6];
-        int vIndex = 0;
-        int tIndex = 0;
-        int nIndex = 0;
-        int iIndex = 0;
-        int triangleIndex = 0;
-        for (int i = 0; i < nSections; i++)
-        {
-            float t = (float) i / (float) nSections;
-            float theta = t * twopi;
-            float s = (float) Math.sin(theta);
-            float c = (float) Math.cos(theta);
-            float t1 = (float) (i + 1) / (float) nSections;
-            float theta1 = t1 * twopi;
-            float s1 = (float) Math.sin(theta1);
-            float c1 = (float) Math.cos(theta1);
-
-            texCoords[tIndex++] = 0f;
-            texCoords[tIndex++] = 0f;
-            texCoords[tIndex++] = 1f;
-            texCoords[tIndex++] = 0f;
-            texCoords[tIndex++] = 1f;
-            texCoords[tIndex++] = 1f;
-
-            vertices[vIndex++] = c * innerRadius;
-            vertices[vIndex++] = s * innerRadius;
-            vertices[vIndex++] = 0f;
-            vertices[vIndex++] = c * outerRadius;
-            vertices[vIndex++] = s * outerRadius;
-            vertices[vIndex++] = 0f;
-            vertices[vIndex++] = c1 * outerRadius;
-            vertices[vIndex++] = s1 * outerRadius;
-            vertices[vIndex++] = 0f;
-
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 1f;
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 1f;
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 1f;
-
-            indices[iIndex++] = (char) (triangleIndex);
-            indices[iIndex++] = (char) (triangleIndex + 1);
-            indices[iIndex++] = (char) (triangleIndex + 2);
-            triangleIndex += 3;
-
-            texCoords[tIndex++] = 0f;
-            texCoords[tIndex++] = 0f;
-            texCoords[tIndex++] = 0f;
-            texCoords[tIndex++] = 1f;
-            texCoords[tIndex++] = 1f;
-            texCoords[tIndex++] = 1f;
-
-            vertices[vIndex++] = c * innerRadius;
-            vertices[vIndex++] = s * innerRadius;
-            vertices[vIndex++] = 0f;
-            vertices[vIndex++] = c1 * innerRadius;
-            vertices[vIndex++] = s1 * innerRadius;
-            vertices[vIndex++] = 0f;
-            vertices[vIndex++] = c1 * outerRadius;
-            vertices[vIndex++] = s1 * outerRadius;
-            vertices[vIndex++] = 0f;
-
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 1f;
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 1f;
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 0f;
-            normals[nIndex++] = 1f;
-
-            indices[iIndex++] = (char) (triangleIndex + 1);
-            indices[iIndex++] = (char) (triangleIndex);
-            indices[iIndex++] = (char) (triangleIndex + 2);
-            triangleIndex += 3;
-        }
-        mesh.setVertices(vertices);
-        mesh.setTexCoords(texCoords);
-        mesh.setNormals(normals);
-        mesh.setIndices(indices);
-        return mesh;
+        return MeshCache.getRing(context, innerRadius, outerRadius, nSections);
     }
 }
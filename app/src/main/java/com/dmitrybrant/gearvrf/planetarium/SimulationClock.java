@@ -0,0 +1,109 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+/**
+ * The time in the simulated sky, which may run faster or slower than real time, or
+ * backwards, for showing how the sky changes over a night or over a year.
+ */
+public class SimulationClock {
+    private static final double SECONDS_PER_DAY = 86400.0;
+    // rotation of the Earth relative to the stars, in degrees per (solar) day
+    private static final double SIDEREAL_DEGREES_PER_DAY = 360.98564736629;
+
+    // simulated seconds per real second: real time, a night in a minute, a day in a
+    // minute, a month in a minute, and a year in a minute; both forwards and backwards.
+    private static final double[] RATES = { -525600.0, -43200.0, -1440.0, -720.0, -1.0, 0.0,
+            1.0, 720.0, 1440.0, 43200.0, 525600.0 };
+    private static final int REAL_TIME_INDEX = 6;
+
+    private final double startJd;
+    private double jd;
+    private int rateIndex = REAL_TIME_INDEX;
+
+    public SimulationClock(double startJd) {
+        this.startJd = startJd;
+        jd = startJd;
+    }
+
+    /**
+     * @return The current simulated time, as a Julian date.
+     */
+    public double getJulianDate() {
+        return jd;
+    }
+
+    public double getRate() {
+        return RATES[rateIndex];
+    }
+
+    public boolean isRealTime() {
+        return rateIndex == REAL_TIME_INDEX;
+    }
+
+    /**
+     * Step up to the next faster rate (or the next slower one, when going backwards).
+     * @return Whether the rate changed.
+     */
+    public boolean faster() {
+        if (rateIndex < RATES.length - 1) {
+            rateIndex++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Step down to the next slower rate (or the next faster one, when going backwards).
+     * @return Whether the rate changed.
+     */
+    public boolean slower() {
+        if (rateIndex > 0) {
+            rateIndex--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Advance the simulated time by the given amount of real time.
+     */
+    public void advance(double realSeconds) {
+        jd += realSeconds * RATES[rateIndex] / SECONDS_PER_DAY;
+    }
+
+    /**
+     * @return The angle, in degrees, by which the Earth has turned relative to the stars
+     * since the clock was started.
+     */
+    public double getSiderealAngle() {
+        return SkyMath.wrapDegrees((jd - startJd) * SIDEREAL_DEGREES_PER_DAY);
+    }
+
+    /**
+     * @return A short description of the current rate, for showing to the user.
+     */
+    public String getRateDescription() {
+        double rate = RATES[rateIndex];
+        if (rate == 0.0) {
+            return "Paused";
+        } else if (rateIndex == REAL_TIME_INDEX) {
+            return "Real time";
+        }
+        return (rate < 0 ? "« " : "» ") + (long) Math.abs(rate) + "×";
+    }
+}
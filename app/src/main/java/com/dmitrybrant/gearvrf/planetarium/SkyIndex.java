@@ -0,0 +1,232 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+/**
+ * Spatial index over a set of points on the celestial sphere, for answering "nearest
+ * point within a given angle" and cone queries.
+ *
+ * The sky is divided into declination bands of equal height, and each band is divided
+ * into RA cells whose true angular width is at least the band height (so there are
+ * fewer cells towards the poles). Cells are stored in compressed-row form: the points of
+ * each cell are contiguous, along with their unit vectors, so a query only has to visit
+ * the handful of cells that overlap its cone, regardless of the size of the catalog.
+ * The cost of a query is therefore bounded by the cone radius and the most crowded cell.
+ */
+public class SkyIndex {
+    private final double cellSize;
+    private final int numBands;
+    private final int[] bandCells;
+    private final int[] bandFirstCell;
+
+    private int[] cellStart = new int[0];
+    private int[] items = new int[0];
+    private float[] itemX = new float[0];
+    private float[] itemY = new float[0];
+    private float[] itemZ = new float[0];
+    private int maxCellSize;
+
+    /**
+     * @param cellSize Height of each declination band (and minimum width of each cell),
+     *                 in degrees. Queries with a radius up to this size visit at most
+     *                 nine cells.
+     */
+    public SkyIndex(double cellSize) {
+        this.cellSize = cellSize;
+        numBands = (int) Math.ceil(180.0 / cellSize);
+        bandCells = new int[numBands];
+        bandFirstCell = new int[numBands + 1];
+        for (int b = 0; b < numBands; b++) {
+            double maxAbsDec = Math.max(Math.abs(bandMinDec(b)), Math.abs(bandMinDec(b) + cellSize));
+            double circumference = 360.0 * Math.cos(Math.toRadians(Math.min(maxAbsDec, 90.0)));
+            bandCells[b] = Math.max(1, (int) (circumference / cellSize));
+            bandFirstCell[b + 1] = bandFirstCell[b] + bandCells[b];
+        }
+    }
+
+    /**
+     * @return The number of points in the most crowded cell, which bounds the cost of a query.
+     */
+    public int getMaxCellSize() {
+        return maxCellSize;
+    }
+
+    /**
+     * (Re)build the index from the given positions, in degrees. The index of each point
+     * in these arrays is what queries return.
+     */
+    public void build(double[] ra, double[] dec, int count) {
+        int totalCells = bandFirstCell[numBands];
+        int[] pointCell = new int[count];
+        int[] start = new int[totalCells + 1];
+        for (int i = 0; i < count; i++) {
+            pointCell[i] = cellOf(ra[i], dec[i]);
+            start[pointCell[i] + 1]++;
+        }
+        maxCellSize = 0;
+        for (int c = 0; c < totalCells; c++) {
+            maxCellSize = Math.max(maxCellSize, start[c + 1]);
+            start[c + 1] += start[c];
+        }
+
+        int[] fill = new int[totalCells];
+        int[] newItems = new int[count];
+        float[] x = new float[count];
+        float[] y = new float[count];
+        float[] z = new float[count];
+        for (int i = 0; i < count; i++) {
+            int pos = start[pointCell[i]] + fill[pointCell[i]]++;
+            newItems[pos] = i;
+            x[pos] = SkyMath.vectorX(ra[i], dec[i]);
+            y[pos] = SkyMath.vectorY(ra[i], dec[i]);
+            z[pos] = SkyMath.vectorZ(ra[i], dec[i]);
+        }
+        cellStart = start;
+        items = newItems;
+        itemX = x;
+        itemY = y;
+        itemZ = z;
+    }
+
+    /**
+     * @return The index of the point closest to the given position that is within the
+     * given angular radius (in degrees), or -1 if there is none.
+     */
+    public int nearest(double ra, double dec, double radius) {
+        float qx = SkyMath.vectorX(ra, dec);
+        float qy = SkyMath.vectorY(ra, dec);
+        float qz = SkyMath.vectorZ(ra, dec);
+        // points are compared by the squared chord to the query, rather than the dot
+        // product, whose cosines can't tell apart angles under about an arcminute in
+        // single precision.
+        float bestChord = chordSquared(radius);
+        int best = -1;
+
+        int firstBand = bandOf(dec - radius);
+        int lastBand = bandOf(dec + radius);
+        for (int b = firstBand; b <= lastBand; b++) {
+            int cells = bandCells[b];
+            double halfWidth = raHalfWidth(b, dec, radius);
+            int first = firstCellInRange(b, ra, halfWidth);
+            int span = cellSpan(b, first, ra, halfWidth);
+            for (int n = 0; n < span; n++) {
+                int c = bandFirstCell[b] + (first + n) % cells;
+                for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    float dx = itemX[i] - qx, dy = itemY[i] - qy, dz = itemZ[i] - qz;
+                    float chord = dx * dx + dy * dy + dz * dz;
+                    if (chord <= bestChord) {
+                        bestChord = chord;
+                        best = items[i];
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find all points within the given angular radius (in degrees) of the given position.
+     * @param out Array that receives the indices of the points that were found.
+     * @return The number of points found, which is at most the length of the output array.
+     */
+    public int cone(double ra, double dec, double radius, int[] out) {
+        float qx = SkyMath.vectorX(ra, dec);
+        float qy = SkyMath.vectorY(ra, dec);
+        float qz = SkyMath.vectorZ(ra, dec);
+        float maxChord = chordSquared(radius);
+        int found = 0;
+
+        int firstBand = bandOf(dec - radius);
+        int lastBand = bandOf(dec + radius);
+        for (int b = firstBand; b <= lastBand; b++) {
+            int cells = bandCells[b];
+            double halfWidth = raHalfWidth(b, dec, radius);
+            int first = firstCellInRange(b, ra, halfWidth);
+            int span = cellSpan(b, first, ra, halfWidth);
+            for (int n = 0; n < span; n++) {
+                int c = bandFirstCell[b] + (first + n) % cells;
+                for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    float dx = itemX[i] - qx, dy = itemY[i] - qy, dz = itemZ[i] - qz;
+                    if (dx * dx + dy * dy + dz * dz <= maxChord) {
+                        if (found == out.length) {
+                            return found;
+                        }
+                        out[found++] = items[i];
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The square of the straight-line distance between two unit vectors that are
+     * the given angle (in degrees) apart.
+     */
+    private static float chordSquared(double angle) {
+        double halfChord = Math.sin(Math.toRadians(angle) / 2.0);
+        return (float) (4.0 * halfChord * halfChord);
+    }
+
+    private double bandMinDec(int band) {
+        return -90.0 + band * cellSize;
+    }
+
+    private int bandOf(double dec) {
+        int band = (int) Math.floor((dec + 90.0) / cellSize);
+        return Math.max(0, Math.min(numBands - 1, band));
+    }
+
+    private int cellOf(double ra, double dec) {
+        int band = bandOf(dec);
+        int cell = (int) (SkyMath.wrapDegrees(ra) / 360.0 * bandCells[band]);
+        return bandFirstCell[band] + Math.min(cell, bandCells[band] - 1);
+    }
+
+    /**
+     * @return Half of the RA extent, in degrees, that a cone of the given radius covers
+     * within the given band, or 180 if the cone covers the whole band.
+     */
+    private double raHalfWidth(int band, double dec, double radius) {
+        double lo = Math.max(bandMinDec(band), dec - radius);
+        double hi = Math.min(bandMinDec(band) + cellSize, dec + radius);
+        double maxAbsDec = Math.max(Math.abs(lo), Math.abs(hi));
+        double sinRadius = Math.sin(Math.toRadians(radius));
+        double cosDec = Math.cos(Math.toRadians(maxAbsDec));
+        if (maxAbsDec >= 90.0 || cosDec <= sinRadius) {
+            return 180.0;
+        }
+        return Math.toDegrees(Math.asin(sinRadius / cosDec));
+    }
+
+    private int firstCellInRange(int band, double ra, double halfWidth) {
+        if (halfWidth >= 180.0) {
+            return 0;
+        }
+        return (int) Math.floor(SkyMath.wrapDegrees(ra - halfWidth) / 360.0 * bandCells[band]);
+    }
+
+    private int cellSpan(int band, int first, double ra, double halfWidth) {
+        int cells = bandCells[band];
+        if (halfWidth >= 180.0) {
+            return cells;
+        }
+        double cellWidth = 360.0 / cells;
+        double startRa = first * cellWidth;
+        double endRa = SkyMath.wrapDegrees(ra - halfWidth) + 2.0 * halfWidth;
+        return Math.min(cells, (int) Math.floor((endRa - startRa) / cellWidth) + 1);
+    }
+}
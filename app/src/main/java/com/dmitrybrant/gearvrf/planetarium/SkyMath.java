@@ -0,0 +1,141 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+/**
+ * Conversions between equatorial coordinates (in degrees) and unit vectors in scene
+ * space. The convention matches the way objects are placed in the scene, i.e. an object
+ * at (ra, dec) is found by rotating the point (0, 0, -1) by ra around the Y axis, and
+ * then by dec towards the pole.
+ */
+public class SkyMath {
+
+    public static float vectorX(double ra, double dec) {
+        return (float) (-Math.sin(Math.toRadians(ra)) * Math.cos(Math.toRadians(dec)));
+    }
+
+    public static float vectorY(double ra, double dec) {
+        return (float) Math.sin(Math.toRadians(dec));
+    }
+
+    public static float vectorZ(double ra, double dec) {
+        return (float) (-Math.cos(Math.toRadians(ra)) * Math.cos(Math.toRadians(dec)));
+    }
+
+    /**
+     * @return Right ascension, in degrees [0, 360), of the given direction vector.
+     */
+    public static double vectorRa(double x, double y, double z) {
+        return Math.toDegrees(Math.PI + Math.atan2(x, z));
+    }
+
+    /**
+     * @return Declination, in degrees, of the given unit vector.
+     */
+    public static double vectorDec(double x, double y, double z) {
+        return Math.toDegrees(Math.asin(Math.max(-1.0, Math.min(1.0, y))));
+    }
+
+    /**
+     * @return Angular distance, in degrees, between the two given positions.
+     */
+    public static double angularDistance(double ra1, double dec1, double ra2, double dec2) {
+        double sinDDec = Math.sin(Math.toRadians(dec2 - dec1) / 2.0);
+        double sinDRa = Math.sin(Math.toRadians(ra2 - ra1) / 2.0);
+        double h = sinDDec * sinDDec + Math.cos(Math.toRadians(dec1)) * Math.cos(Math.toRadians(dec2)) * sinDRa * sinDRa;
+        return Math.toDegrees(2.0 * Math.asin(Math.min(1.0, Math.sqrt(h))));
+    }
+
+    /**
+     * @return Angular distance, in degrees, from the unit vector q to the great-circle arc
+     * between the unit vectors a and b (taking the shorter way around).
+     */
+    public static double arcDistance(float qx, float qy, float qz,
+                                     float ax, float ay, float az, float bx, float by, float bz) {
+        // normal of the plane of the arc
+        double nx = ay * bz - az * by;
+        double ny = az * bx - ax * bz;
+        double nz = ax * by - ay * bx;
+        double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (len > 1e-9) {
+            nx /= len;
+            ny /= len;
+            nz /= len;
+            // the point is beside the arc if it's on the inner side of the planes through a and b
+            double sideA = (ny * az - nz * ay) * qx + (nz * ax - nx * az) * qy + (nx * ay - ny * ax) * qz;
+            double sideB = (by * nz - bz * ny) * qx + (bz * nx - bx * nz) * qy + (bx * ny - by * nx) * qz;
+            if (sideA >= 0 && sideB >= 0) {
+                double dot = qx * nx + qy * ny + qz * nz;
+                return Math.toDegrees(Math.asin(Math.min(1.0, Math.abs(dot))));
+            }
+        }
+        double dotA = qx * ax + qy * ay + qz * az;
+        double dotB = qx * bx + qy * by + qz * bz;
+        return Math.toDegrees(Math.acos(Math.max(-1.0, Math.min(1.0, Math.max(dotA, dotB)))));
+    }
+
+    /**
+     * Convert a rotation matrix (row-major) that acts on equatorial vectors, with x towards
+     * RA 0 and z towards the pole, into a quaternion for the same rotation in scene space.
+     * @param out Receives the w, x, y and z components of the quaternion.
+     */
+    public static void sceneRotation(double[] m, float[] out) {
+        // scene space is (-y, z, -x) in equatorial terms, so the matrix is permuted, and
+        // the signs of the elements that mix the pole with the other two axes are flipped
+        double m00 = m[4], m01 = -m[5], m02 = m[3];
+        double m10 = -m[7], m11 = m[8], m12 = -m[6];
+        double m20 = m[1], m21 = -m[2], m22 = m[0];
+        double trace = m00 + m11 + m22;
+        double w, x, y, z;
+        if (trace > 0) {
+            double s = 2.0 * Math.sqrt(trace + 1.0);
+            w = s / 4.0;
+            x = (m21 - m12) / s;
+            y = (m02 - m20) / s;
+            z = (m10 - m01) / s;
+        } else if (m00 > m11 && m00 > m22) {
+            double s = 2.0 * Math.sqrt(1.0 + m00 - m11 - m22);
+            w = (m21 - m12) / s;
+            x = s / 4.0;
+            y = (m01 + m10) / s;
+            z = (m02 + m20) / s;
+        } else if (m11 > m22) {
+            double s = 2.0 * Math.sqrt(1.0 + m11 - m00 - m22);
+            w = (m02 - m20) / s;
+            x = (m01 + m10) / s;
+            y = s / 4.0;
+            z = (m12 + m21) / s;
+        } else {
+            double s = 2.0 * Math.sqrt(1.0 + m22 - m00 - m11);
+            w = (m10 - m01) / s;
+            x = (m02 + m20) / s;
+            y = (m12 + m21) / s;
+            z = s / 4.0;
+        }
+        out[0] = (float) w;
+        out[1] = (float) x;
+        out[2] = (float) y;
+        out[3] = (float) z;
+    }
+
+    /**
+     * @return The given angle in degrees, wrapped to [0, 360).
+     */
+    public static double wrapDegrees(double angle) {
+        angle %= 360.0;
+        return angle < 0 ? angle + 360.0 : angle;
+    }
+}
@@ -34,10 +34,13 @@ public class SkyObject {
     public float dist;
     public float mag;
     public int hipNum;
+    // for planets, the AstroLib body ID
+    public int planetId;
     public String name;
     public String className;
 
     public float initialScale;
+    public HoverZoom hoverZoom;
     public int texResId;
     public String texName;
 }
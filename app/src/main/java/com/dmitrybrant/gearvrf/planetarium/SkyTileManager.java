@@ -0,0 +1,338 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gearvrf.GVRBitmapImage;
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRMesh;
+import org.gearvrf.GVRSceneObject;
+import org.gearvrf.GVRTexture;
+import org.gearvrf.GVRTextureParameters;
+import org.gearvrf.utility.Log;
+
+/**
+ * The sky background, drawn as a pyramid of cube-face tiles (see SkyTiles) that are
+ * streamed in around the direction of the gaze.
+ *
+ * The base level (one tile per face) is loaded up front and always shown. Sharper tiles
+ * are decoded on a background thread when they come into the view cone, and uploaded on
+ * the GL thread a few per frame, so that streaming never stalls rendering. Each tile is
+ * drawn over its parent, so the sky sharpens as tiles arrive without ever showing holes.
+ * A bounded number of sharper tiles are kept, and the least recently wanted ones are
+ * evicted first.
+ */
+public class SkyTileManager {
+    private static final String TAG = "SkyTileManager";
+    // half the size of the cube that the tiles are drawn on
+    private static final float CUBE_SIZE = 300f;
+    private static final double VIEW_CONE = 55.0;
+    // the wanted tiles are only worked out again after the gaze has moved this far
+    private static final double REFRESH_ANGLE = 2.0;
+    private static final int MAX_RESIDENT_TILES = 64;
+    private static final int MAX_UPLOADS_PER_FRAME = 1;
+
+    private static class DecodedTile {
+        final int tile;
+        final Bitmap bitmap;
+
+        DecodedTile(int tile, Bitmap bitmap) {
+            this.tile = tile;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final GVRContext context;
+    private final AssetManager assets;
+    private final GVRSceneObject sceneObject;
+    private final GVRTextureParameters textureParams;
+    private final int renderOrder;
+    private final int levels;
+
+    // per tile, by ordinal: level, face and position, parent, center direction, and
+    // the smallest cosine of the angle from the gaze at which it's still wanted
+    private final int tileCount;
+    private final int[] tileLevel;
+    private final int[] tileFace;
+    private final int[] tileX;
+    private final int[] tileY;
+    private final int[] tileParent;
+    private final float[] tileCenter;
+    private final float[] tileReach;
+
+    private final boolean[] wanted;
+    private final GVRSceneObject[] tileObjects;
+    private final Future<?>[] pending;
+    // sharper tiles that are shown, least recently wanted first
+    private final LinkedHashMap<Integer, GVRSceneObject> resident = new LinkedHashMap<>(MAX_RESIDENT_TILES, 0.75f, true);
+    private final ConcurrentLinkedQueue<DecodedTile> decoded = new ConcurrentLinkedQueue<>();
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor();
+
+    // rotation of the tiles from J2000 to the current epoch
+    private float rotationW = 1f;
+    private float rotationX;
+    private float rotationY;
+    private float rotationZ;
+
+    private float lastGazeX;
+    private float lastGazeY;
+    private float lastGazeZ;
+    private boolean refreshed;
+
+    public SkyTileManager(GVRContext context, int renderOrder) throws IOException {
+        this.context = context;
+        this.renderOrder = renderOrder;
+        assets = context.getContext().getAssets();
+        levels = readLevels(assets);
+        sceneObject = new GVRSceneObject(context);
+        textureParams = new GVRTextureParameters(context);
+        textureParams.setWrapSType(GVRTextureParameters.TextureWrapType.GL_CLAMP_TO_EDGE);
+        textureParams.setWrapTType(GVRTextureParameters.TextureWrapType.GL_CLAMP_TO_EDGE);
+
+        tileCount = SkyTiles.levelStart(levels);
+        tileLevel = new int[tileCount];
+        tileFace = new int[tileCount];
+        tileX = new int[tileCount];
+        tileY = new int[tileCount];
+        tileParent = new int[tileCount];
+        tileCenter = new float[tileCount * 3];
+        tileReach = new float[tileCount];
+        wanted = new boolean[tileCount];
+        tileObjects = new GVRSceneObject[tileCount];
+        pending = new Future<?>[tileCount];
+
+        double[] dir = new double[3];
+        for (int level = 0; level < levels; level++) {
+            int across = SkyTiles.tilesAcross(level);
+            for (int face = 0; face < SkyTiles.FACES; face++) {
+                for (int y = 0; y < across; y++) {
+                    for (int x = 0; x < across; x++) {
+                        int tile = SkyTiles.ordinal(level, face, x, y);
+                        tileLevel[tile] = level;
+                        tileFace[tile] = face;
+                        tileX[tile] = x;
+                        tileY[tile] = y;
+                        tileParent[tile] = level == 0 ? -1 : SkyTiles.ordinal(level - 1, face, x / 2, y / 2);
+
+                        SkyTiles.faceDirection(face, (x + 0.5) / across, (y + 0.5) / across, dir);
+                        double len = Math.sqrt(dir[0] * dir[0] + dir[1] * dir[1] + dir[2] * dir[2]);
+                        for (int i = 0; i < 3; i++) {
+                            tileCenter[tile * 3 + i] = (float) (dir[i] / len);
+                        }
+                        // the corners are the farthest points of the tile from its center
+                        double radius = 0;
+                        for (int corner = 0; corner < 4; corner++) {
+                            SkyTiles.faceDirection(face, (double) (x + corner % 2) / across, (double) (y + corner / 2) / across, dir);
+                            len = Math.sqrt(dir[0] * dir[0] + dir[1] * dir[1] + dir[2] * dir[2]);
+                            double dot = (dir[0] * tileCenter[tile * 3] + dir[1] * tileCenter[tile * 3 + 1] + dir[2] * tileCenter[tile * 3 + 2]) / len;
+                            radius = Math.max(radius, Math.toDegrees(Math.acos(Math.min(1.0, dot))));
+                        }
+                        tileReach[tile] = (float) Math.cos(Math.toRadians(Math.min(180.0, VIEW_CONE + radius)));
+                    }
+                }
+            }
+        }
+
+        // the base level is decoded right away, and never evicted
+        for (int face = 0; face < SkyTiles.FACES; face++) {
+            int tile = SkyTiles.ordinal(0, face, 0, 0);
+            Bitmap bitmap = decodeTile(tile);
+            if (bitmap != null) {
+                showTile(tile, bitmap);
+            }
+            wanted[tile] = true;
+        }
+    }
+
+    public GVRSceneObject getSceneObject() {
+        return sceneObject;
+    }
+
+    /**
+     * Turn the tiles, which are drawn at J2000, by the given rotation (a quaternion in
+     * the frame of the sky), such as the precession to the current epoch.
+     */
+    public void setRotation(float w, float x, float y, float z) {
+        rotationW = w;
+        rotationX = x;
+        rotationY = y;
+        rotationZ = z;
+        sceneObject.getTransform().setRotation(w, x, y, z);
+        refreshed = false;
+    }
+
+    /**
+     * Request the tiles around the given gaze direction (a unit vector in the frame of the
+     * sky), and show a few of the tiles that have finished decoding. Called every frame.
+     */
+    public void update(float skyGazeX, float skyGazeY, float skyGazeZ) {
+        // take the gaze back into the frame of the tiles, by the inverse of their rotation:
+        // v + 2w(v x u) + 2u x (u x v), with u the vector part
+        float tx = 2f * (skyGazeY * rotationZ - skyGazeZ * rotationY);
+        float ty = 2f * (skyGazeZ * rotationX - skyGazeX * rotationZ);
+        float tz = 2f * (skyGazeX * rotationY - skyGazeY * rotationX);
+        float gazeX = skyGazeX + rotationW * tx - (rotationY * tz - rotationZ * ty);
+        float gazeY = skyGazeY + rotationW * ty - (rotationZ * tx - rotationX * tz);
+        float gazeZ = skyGazeZ + rotationW * tz - (rotationX * ty - rotationY * tx);
+        if (!refreshed || lastGazeX * gazeX + lastGazeY * gazeY + lastGazeZ * gazeZ < (float) Math.cos(Math.toRadians(REFRESH_ANGLE))) {
+            refreshed = true;
+            lastGazeX = gazeX;
+            lastGazeY = gazeY;
+            lastGazeZ = gazeZ;
+            refresh(gazeX, gazeY, gazeZ);
+        }
+
+        for (int i = 0; i < MAX_UPLOADS_PER_FRAME; i++) {
+            DecodedTile t = decoded.poll();
+            if (t == null) {
+                break;
+            }
+            pending[t.tile] = null;
+            if (!wanted[t.tile] || tileObjects[t.tile] != null) {
+                t.bitmap.recycle();
+                continue;
+            }
+            showTile(t.tile, t.bitmap);
+            resident.put(t.tile, tileObjects[t.tile]);
+            evict();
+        }
+    }
+
+    private void refresh(float gazeX, float gazeY, float gazeZ) {
+        for (int tile = SkyTiles.levelStart(1); tile < tileCount; tile++) {
+            // a tile is only wanted if its parent is, so each level narrows the search
+            boolean want = wanted[tileParent[tile]]
+                    && gazeX * tileCenter[tile * 3] + gazeY * tileCenter[tile * 3 + 1] + gazeZ * tileCenter[tile * 3 + 2] >= tileReach[tile];
+            wanted[tile] = want;
+            if (want) {
+                if (tileObjects[tile] != null) {
+                    // mark it as recently wanted
+                    resident.get(tile);
+                } else if (pending[tile] == null) {
+                    final int t = tile;
+                    pending[tile] = decoder.submit(() -> {
+                        Bitmap bitmap = decodeTile(t);
+                        if (bitmap != null) {
+                            decoded.add(new DecodedTile(t, bitmap));
+                        }
+                    });
+                }
+            } else if (pending[tile] != null) {
+                // not started yet, so no longer worth decoding
+                if (pending[tile].cancel(false)) {
+                    pending[tile] = null;
+                }
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Integer, GVRSceneObject>> it = resident.entrySet().iterator();
+        while (resident.size() > MAX_RESIDENT_TILES && it.hasNext()) {
+            Map.Entry<Integer, GVRSceneObject> entry = it.next();
+            if (wanted[entry.getKey()]) {
+                continue;
+            }
+            sceneObject.removeChildObject(entry.getValue());
+            tileObjects[entry.getKey()] = null;
+            it.remove();
+        }
+    }
+
+    private void showTile(int tile, Bitmap bitmap) {
+        GVRTexture texture = new GVRTexture(context, textureParams);
+        texture.setImage(new GVRBitmapImage(context, bitmap));
+        GVRSceneObject obj = new GVRSceneObject(context, createTileMesh(tile), texture);
+        obj.getRenderData().setDepthTest(false);
+        // sharper tiles are drawn over their parents
+        obj.getRenderData().setRenderingOrder(renderOrder + tileLevel[tile]);
+        obj.setPickingEnabled(false);
+        sceneObject.addChildObject(obj);
+        tileObjects[tile] = obj;
+    }
+
+    /**
+     * Create a quad that covers the given tile on the surface of the cube, facing inwards.
+     */
+    private GVRMesh createTileMesh(int tile) {
+        int across = SkyTiles.tilesAcross(tileLevel[tile]);
+        double[] dir = new double[3];
+        float[] vertices = new float[12];
+        for (int corner = 0; corner < 4; corner++) {
+            // top left, bottom left, top right, bottom right
+            SkyTiles.faceDirection(tileFace[tile], (double) (tileX[tile] + corner / 2) / across,
+                    (double) (tileY[tile] + corner % 2) / across, dir);
+            for (int i = 0; i < 3; i++) {
+                vertices[corner * 3 + i] = (float) dir[i] * CUBE_SIZE;
+            }
+        }
+        float[] texCoords = { 0f, 0f, 0f, 1f, 1f, 0f, 1f, 1f };
+
+        // wind the triangles so that they face the center of the cube
+        float[] normal = SkyTiles.getNormal(tileFace[tile]);
+        float ax = vertices[3] - vertices[0], ay = vertices[4] - vertices[1], az = vertices[5] - vertices[2];
+        float bx = vertices[6] - vertices[0], by = vertices[7] - vertices[1], bz = vertices[8] - vertices[2];
+        float facing = (ay * bz - az * by) * normal[0] + (az * bx - ax * bz) * normal[1] + (ax * by - ay * bx) * normal[2];
+        char[] indices = facing < 0 ? new char[] { 0, 1, 2, 2, 1, 3 } : new char[] { 0, 2, 1, 2, 3, 1 };
+
+        GVRMesh mesh = new GVRMesh(context);
+        mesh.setVertices(vertices);
+        mesh.setTexCoords(texCoords);
+        mesh.setIndices(indices);
+        return mesh;
+    }
+
+    private Bitmap decodeTile(int tile) {
+        String path = SkyTiles.assetPath(tileLevel[tile], tileFace[tile], tileX[tile], tileY[tile]);
+        InputStream instream = null;
+        try {
+            instream = assets.open(path);
+            return BitmapFactory.decodeStream(instream);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load sky tile " + path, e);
+            return null;
+        } finally {
+            if (instream != null) {
+                try { instream.close(); }
+                catch(Exception e) {
+                    //
+                }
+            }
+        }
+    }
+
+    private static int readLevels(AssetManager assets) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(assets.open(SkyTiles.INFO_ASSET)))) {
+            return Integer.parseInt(reader.readLine().trim());
+        }
+    }
+}
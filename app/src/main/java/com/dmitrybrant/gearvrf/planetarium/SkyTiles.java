@@ -0,0 +1,93 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+/**
+ * Layout of the tiled sky background, shared by the build-time SkyTileGenerator and the
+ * runtime SkyTileManager (it has no Android dependencies, so buildSrc compiles it too).
+ *
+ * The sky is projected onto the six faces of a cube around the viewer, in the same frame
+ * as the rest of the sky (see SkyMath). Each face is divided into a pyramid of square
+ * tiles: level 0 is one tile per face, and each level has twice as many tiles across
+ * as the one before. A point (s, t) on a face, each in [0, 1], lies in the direction
+ * normal + (2s - 1) * uAxis + (2t - 1) * vAxis, and t increases down the rows of each
+ * tile image.
+ */
+public class SkyTiles {
+    public static final int FACES = 6;
+    public static final int TILE_SIZE = 256;
+    public static final String ASSET_DIR = "skytiles";
+    // text file holding the number of levels that were generated
+    public static final String INFO_ASSET = ASSET_DIR + "/levels.txt";
+
+    private static final float[][] NORMALS = {
+            { 1, 0, 0 }, { -1, 0, 0 }, { 0, 1, 0 }, { 0, -1, 0 }, { 0, 0, 1 }, { 0, 0, -1 }
+    };
+    private static final float[][] U_AXES = {
+            { 0, 0, 1 }, { 0, 0, -1 }, { 1, 0, 0 }, { 1, 0, 0 }, { -1, 0, 0 }, { 1, 0, 0 }
+    };
+    private static final float[][] V_AXES = {
+            { 0, -1, 0 }, { 0, -1, 0 }, { 0, 0, 1 }, { 0, 0, -1 }, { 0, -1, 0 }, { 0, -1, 0 }
+    };
+
+    /**
+     * @return The number of tiles across each face at the given level.
+     */
+    public static int tilesAcross(int level) {
+        return 1 << level;
+    }
+
+    /**
+     * @return The total number of tiles in all levels below the given one, i.e. the
+     * ordinal of the first tile of the given level.
+     */
+    public static int levelStart(int level) {
+        int start = 0;
+        for (int l = 0; l < level; l++) {
+            start += FACES * tilesAcross(l) * tilesAcross(l);
+        }
+        return start;
+    }
+
+    /**
+     * @return A single number identifying the given tile, counting from the first tile of
+     * level 0. Tiles are ordered by level, then by face, row and column.
+     */
+    public static int ordinal(int level, int face, int x, int y) {
+        int n = tilesAcross(level);
+        return levelStart(level) + (face * n + y) * n + x;
+    }
+
+    /**
+     * Compute the (unnormalized) direction of the given point on the given face.
+     */
+    public static void faceDirection(int face, double s, double t, double[] out) {
+        double a = 2.0 * s - 1.0;
+        double b = 2.0 * t - 1.0;
+        for (int i = 0; i < 3; i++) {
+            out[i] = NORMALS[face][i] + a * U_AXES[face][i] + b * V_AXES[face][i];
+        }
+    }
+
+    public static float[] getNormal(int face) {
+        return NORMALS[face];
+    }
+
+    public static String assetPath(int level, int face, int x, int y) {
+        return ASSET_DIR + "/" + level + "/" + face + "_" + x + "_" + y + ".jpg";
+    }
+}
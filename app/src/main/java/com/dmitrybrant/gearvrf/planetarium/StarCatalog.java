@@ -0,0 +1,134 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact, column-oriented store for the star catalog. Each star is identified by its
+ * index into the parallel arrays below, which are sorted by right ascension (at the epoch
+ * of the catalog; the positions may later be moved to another epoch).
+ *
+ * Names are kept in their encoded form in the string table of the compiled catalog, and
+ * are only decoded (and cached) when they're actually requested.
+ */
+public class StarCatalog {
+    private final int count;
+    public int size() {
+        return count;
+    }
+
+    // sorry, again: these are read in tight loops, so they're exposed directly.
+    public final int[] hipNum;
+    public final double[] ra;
+    public final double[] dec;
+    public final float[] dist;
+    public final float[] mag;
+    public final byte[] spectralClass;
+    // proper motion in RA (times cos(Dec)) and Dec, in milliarcseconds per year
+    public final float[] pmRa;
+    public final float[] pmDec;
+
+    private final int[] nameOffsets;
+    private final String[] names;
+    private ByteBuffer stringTable;
+    private HipIndex hipIndex;
+
+    public StarCatalog(int count) {
+        this.count = count;
+        hipNum = new int[count];
+        ra = new double[count];
+        dec = new double[count];
+        dist = new float[count];
+        mag = new float[count];
+        spectralClass = new byte[count];
+        pmRa = new float[count];
+        pmDec = new float[count];
+        nameOffsets = new int[count];
+        names = new String[count];
+    }
+
+    /**
+     * Set the table from which star names will be decoded. Each entry is an unsigned
+     * short length followed by that many bytes of UTF-8.
+     */
+    public void setStringTable(ByteBuffer stringTable) {
+        this.stringTable = stringTable;
+    }
+
+    /**
+     * Set the offset of the name of the given star in the string table, or -1 if the
+     * star has no proper name.
+     */
+    public void setNameOffset(int index, int offset) {
+        nameOffsets[index] = offset;
+    }
+
+    /**
+     * Build the index for looking up stars by Hipparcos number. Must be called once
+     * all the stars have been filled in.
+     */
+    public void buildHipIndex() {
+        hipIndex = new HipIndex(count);
+        for (int i = 0; i < count; i++) {
+            hipIndex.put(hipNum[i], i);
+        }
+    }
+
+    /**
+     * @return The index of the star with the given Hipparcos number, or -1 if it's not in the catalog.
+     */
+    public int indexOfHip(int hip) {
+        return hipIndex != null ? hipIndex.get(hip) : -1;
+    }
+
+    public String getName(int index) {
+        String name = names[index];
+        if (name == null) {
+            int offset = nameOffsets[index];
+            if (offset < 0 || stringTable == null) {
+                name = "HIP " + hipNum[index];
+            } else {
+                int length = stringTable.getShort(offset) & 0xFFFF;
+                byte[] bytes = new byte[length];
+                ByteBuffer src = stringTable.duplicate();
+                src.position(offset + 2);
+                src.get(bytes);
+                name = new String(bytes, StandardCharsets.UTF_8);
+            }
+            names[index] = name;
+        }
+        return name;
+    }
+
+    /**
+     * Create a standalone SkyObject for the given star, for the places that need to
+     * deal with stars in the same way as other objects (e.g. showing a description).
+     */
+    public SkyObject createSkyObject(int index) {
+        SkyObject s = new SkyObject();
+        s.type = SkyObject.TYPE_STAR;
+        s.hipNum = hipNum[index];
+        s.ra = ra[index];
+        s.dec = dec[index];
+        s.dist = dist[index];
+        s.mag = mag[index];
+        s.name = getName(index);
+        s.initialScale = 1f;
+        return s;
+    }
+}
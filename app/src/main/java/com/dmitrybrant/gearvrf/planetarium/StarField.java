@@ -0,0 +1,89 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import android.opengl.GLES20;
+
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRMaterial;
+import org.gearvrf.GVRMesh;
+import org.gearvrf.GVRRenderData;
+import org.gearvrf.GVRSceneObject;
+import org.gearvrf.GVRShaderId;
+
+/**
+ * The whole star catalog, drawn as a single GL_POINTS mesh whose buffers come from a
+ * StarFieldBuilder. Buffers are only uploaded again when the builder reports a change.
+ */
+public class StarField {
+    private static final String VERTEX_DESCRIPTOR = "float3 a_position float4 a_color float a_size";
+
+    private final StarFieldBuilder builder;
+    public StarFieldBuilder getBuilder() {
+        return builder;
+    }
+
+    private GVRMesh mesh;
+
+    /**
+     * Build the vertex data for the given catalog. This does the bulk of the work, and
+     * may be called on a worker thread.
+     */
+    public StarField(StarCatalog catalog) {
+        builder = new StarFieldBuilder(catalog, StarLoader.DEFAULT_DISTANCE_STAR, StarLoader.MAX_STAR_MAGNITUDE);
+        builder.update();
+    }
+
+    public GVRSceneObject createSceneObject(GVRContext context) {
+        GVRMaterial material = new GVRMaterial(context, new GVRShaderId(StarShader.class));
+        material.setFloat("u_point_scale", 1f);
+
+        mesh = new GVRMesh(context, VERTEX_DESCRIPTOR);
+        mesh.setVertices(builder.getPositions());
+        mesh.setFloatArray("a_color", builder.getColors());
+        mesh.setFloatArray("a_size", builder.getSizes());
+
+        GVRRenderData rd = new GVRRenderData(context);
+        rd.setMesh(mesh);
+        rd.setMaterial(material);
+        rd.setDrawMode(GLES20.GL_POINTS);
+        rd.setDepthTest(false);
+        rd.setDepthMask(false);
+        rd.setAlphaBlend(true);
+
+        GVRSceneObject obj = new GVRSceneObject(context);
+        obj.attachRenderData(rd);
+        return obj;
+    }
+
+    /**
+     * Bring the mesh up to date with the builder. This is cheap when nothing has changed,
+     * so it can be called every frame.
+     */
+    public void update() {
+        int changed = builder.update();
+        if (mesh == null || changed == 0) {
+            return;
+        }
+        if ((changed & StarFieldBuilder.CHANGED_POSITIONS) != 0) {
+            mesh.setVertices(builder.getPositions());
+        }
+        if ((changed & StarFieldBuilder.CHANGED_APPEARANCE) != 0) {
+            mesh.setFloatArray("a_color", builder.getColors());
+            mesh.setFloatArray("a_size", builder.getSizes());
+        }
+    }
+}
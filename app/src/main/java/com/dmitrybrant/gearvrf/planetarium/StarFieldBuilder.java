@@ -0,0 +1,221 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+/**
+ * Builds the vertex data for drawing the star catalog as a single batch of points: one
+ * vertex per star, with a position on the sky sphere, a color given by its spectral
+ * class, and a point size given by its magnitude. Stars fainter than the magnitude limit
+ * get a size of zero, so that every star keeps the same vertex regardless of the limit.
+ *
+ * Positions are given by the direction of each star in the equatorial frame, transformed
+ * into the display frame by a HorizonTransform (if one is set), which also dims stars near
+ * the horizon through the alpha of their color.
+ *
+ * This is plain Java with no dependency on the renderer. Directions, the display frame
+ * and appearance are tracked separately, and only the parts that were invalidated are
+ * recomputed.
+ */
+public class StarFieldBuilder {
+    public static final int CHANGED_POSITIONS = 1;
+    public static final int CHANGED_APPEARANCE = 2;
+
+    private static final float MAX_POINT_SIZE = 12f;
+    private static final float MIN_POINT_SIZE = 1.5f;
+    private static final float BRIGHT_MAGNITUDE = -1.5f;
+
+    // approximate colors of the spectral classes, in the order of Util.SPECTRAL_CLASSES
+    private static final float[][] CLASS_COLORS = {
+            { 0.61f, 0.69f, 1.0f },
+            { 0.67f, 0.75f, 1.0f },
+            { 0.79f, 0.84f, 1.0f },
+            { 0.97f, 0.97f, 1.0f },
+            { 1.0f, 0.96f, 0.92f },
+            { 1.0f, 0.82f, 0.63f },
+            { 1.0f, 0.8f, 0.44f },
+    };
+    private static final float[] DEFAULT_COLOR = { 1f, 1f, 1f };
+
+    private final StarCatalog catalog;
+    private final float distance;
+    private final float[] directions;
+    private final float[] positions;
+    private final float[] colors;
+    private final float[] sizes;
+
+    private float magnitudeLimit;
+    private HorizonTransform frame;
+    private int dirtyFrom;
+    private int dirtyTo;
+    private boolean frameDirty;
+    private boolean appearanceDirty;
+
+    public StarFieldBuilder(StarCatalog catalog, float distance, float magnitudeLimit) {
+        this.catalog = catalog;
+        this.distance = distance;
+        this.magnitudeLimit = magnitudeLimit;
+        directions = new float[catalog.size() * 3];
+        positions = new float[catalog.size() * 3];
+        colors = new float[catalog.size() * 4];
+        sizes = new float[catalog.size()];
+        invalidatePositions();
+        appearanceDirty = true;
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public float[] getColors() {
+        return colors;
+    }
+
+    public float[] getSizes() {
+        return sizes;
+    }
+
+    public int getVertexCount() {
+        return catalog.size();
+    }
+
+    public float getMagnitudeLimit() {
+        return magnitudeLimit;
+    }
+
+    public void setMagnitudeLimit(float limit) {
+        if (limit != magnitudeLimit) {
+            magnitudeLimit = limit;
+            appearanceDirty = true;
+        }
+    }
+
+    /**
+     * Set the transform from the equatorial frame to the display frame, or null to show
+     * the stars in the equatorial frame.
+     */
+    public void setFrame(HorizonTransform frame) {
+        this.frame = frame;
+        frameDirty = true;
+    }
+
+    /**
+     * Mark the display frame as changed, so that all positions are transformed again.
+     */
+    public void invalidateFrame() {
+        frameDirty = true;
+    }
+
+    /**
+     * Mark the positions of all stars as changed (e.g. after the catalog was propagated
+     * to a new epoch).
+     */
+    public void invalidatePositions() {
+        invalidatePositions(0, catalog.size());
+    }
+
+    /**
+     * Mark the positions of the stars in the given range (end exclusive) as changed.
+     */
+    public void invalidatePositions(int from, int to) {
+        if (dirtyFrom >= dirtyTo) {
+            dirtyFrom = from;
+            dirtyTo = to;
+        } else {
+            dirtyFrom = Math.min(dirtyFrom, from);
+            dirtyTo = Math.max(dirtyTo, to);
+        }
+    }
+
+    /**
+     * Mark the magnitudes or spectral classes of the stars as changed.
+     */
+    public void invalidateAppearance() {
+        appearanceDirty = true;
+    }
+
+    /**
+     * Recompute whatever has been invalidated since the last update.
+     * @return A combination of CHANGED_POSITIONS and CHANGED_APPEARANCE, telling which
+     * arrays were modified (and need to be uploaded again), or 0 if nothing changed.
+     */
+    public int update() {
+        int changed = 0;
+        if (dirtyFrom < dirtyTo) {
+            for (int i = dirtyFrom; i < dirtyTo; i++) {
+                double ra = catalog.ra[i];
+                double dec = catalog.dec[i];
+                directions[i * 3] = SkyMath.vectorX(ra, dec);
+                directions[i * 3 + 1] = SkyMath.vectorY(ra, dec);
+                directions[i * 3 + 2] = SkyMath.vectorZ(ra, dec);
+            }
+            if (!frameDirty) {
+                applyFrame(dirtyFrom, dirtyTo);
+            }
+            dirtyFrom = dirtyTo = 0;
+            changed |= CHANGED_POSITIONS | CHANGED_APPEARANCE;
+        }
+        if (frameDirty) {
+            applyFrame(0, catalog.size());
+            frameDirty = false;
+            changed |= CHANGED_POSITIONS | CHANGED_APPEARANCE;
+        }
+        if (appearanceDirty) {
+            for (int i = 0; i < catalog.size(); i++) {
+                float[] color = catalog.spectralClass[i] >= 0 && catalog.spectralClass[i] < CLASS_COLORS.length
+                        ? CLASS_COLORS[catalog.spectralClass[i]] : DEFAULT_COLOR;
+                colors[i * 4] = color[0];
+                colors[i * 4 + 1] = color[1];
+                colors[i * 4 + 2] = color[2];
+                sizes[i] = pointSize(catalog.mag[i]);
+            }
+            appearanceDirty = false;
+            changed |= CHANGED_APPEARANCE;
+        }
+        return changed;
+    }
+
+    /**
+     * Compute the display positions, and the dimming by the atmosphere, of the given
+     * range of stars from their directions.
+     */
+    private void applyFrame(int from, int to) {
+        if (frame == null) {
+            for (int i = from * 3; i < to * 3; i++) {
+                positions[i] = directions[i] * distance;
+            }
+            for (int i = from; i < to; i++) {
+                colors[i * 4 + 3] = 1f;
+            }
+            return;
+        }
+        frame.transform(directions, positions, from, to, distance);
+        for (int i = from; i < to; i++) {
+            colors[i * 4 + 3] = frame.transmission(positions[i * 3 + 1] / distance);
+        }
+    }
+
+    /**
+     * Point size that grows with the fourth root of the star's flux, which keeps faint
+     * stars visible without letting the brightest ones swamp the view.
+     */
+    private float pointSize(float mag) {
+        if (mag > magnitudeLimit) {
+            return 0f;
+        }
+        float size = MAX_POINT_SIZE * (float) Math.pow(10.0, -0.1 * (mag - BRIGHT_MAGNITUDE));
+        return Math.max(MIN_POINT_SIZE, Math.min(MAX_POINT_SIZE, size));
+    }
+}
@@ -16,14 +16,12 @@
 package com.dmitrybrant.gearvrf.planetarium;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 
-import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.gearvrf.utility.Log;
 
@@ -32,112 +30,111 @@ public class StarLoader {
     public static final float MAX_STAR_MAGNITUDE = 7f;
     public static final float DEFAULT_DISTANCE_STAR = 500f;
     private static final double STAR_PICK_RADIUS = 0.5;
+    private static final double STAR_INDEX_CELL_SIZE = 1.0;
 
-    private List<SkyObject> starList = new ArrayList<>();
+    // Binary catalog produced at build time by StarCatalogCompiler (see buildSrc),
+    // which documents the format in detail.
+    private static final String CATALOG_ASSET = "stars.bin";
+    private static final int CATALOG_MAGIC = 0x53544152;
+    private static final int CATALOG_VERSION = 3;
+    private static final int HEADER_SIZE = 20;
+
+    private StarCatalog catalog = new StarCatalog(0);
+    private SkyIndex skyIndex = new SkyIndex(STAR_INDEX_CELL_SIZE);
 
     public StarLoader(Context context) {
-        InputStream instream = null;
+        AssetFileDescriptor fd = null;
+        FileInputStream instream = null;
         try {
             Log.d(TAG, "Loading stars...");
-            instream = context.getAssets().open("stars.txt");
-            BufferedReader buffreader = new BufferedReader(new InputStreamReader(instream));
-            String line;
-            String[] lineArr;
-            buffreader.readLine();
-            while ((line = buffreader.readLine()) != null) {
-                lineArr = line.split("\\s+");
-                if (lineArr.length < 6) {
-                    continue;
-                }
-
-                SkyObject s = new SkyObject();
-                starList.add(s);
-                s.type = SkyObject.TYPE_STAR;
-                s.hipNum = Integer.parseInt(lineArr[0]);
-
-                s.ra = Double.parseDouble(lineArr[1]);
-                s.dec = Double.parseDouble(lineArr[2]);
-                s.dist = (float)Double.parseDouble(lineArr[3]);
-
-                s.mag = Float.parseFloat(lineArr[4]);
-                s.className = lineArr[5];
-                s.name = "HIP " + s.hipNum;
-
-                // for converting to (x,y,z):
-                //s.x = (float) ((s.dist * Math.cos(s.dec)) * Math.cos(s.ra));
-                //s.y = (float) ((s.dist * Math.cos(s.dec)) * Math.sin(s.ra));
-                //s.z = (float) (s.dist * Math.sin(s.dec));
-            }
+            fd = context.getAssets().openFd(CATALOG_ASSET);
+            instream = fd.createInputStream();
+            ByteBuffer buffer = instream.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+            catalog = readCatalog(buffer);
+            skyIndex.build(catalog.ra, catalog.dec, catalog.size());
         } catch (IOException e) {
             Log.e(TAG, "Failed to read star database.", e);
         } finally {
             if (instream != null) {
-                try { instream.close(); instream = null; }
+                try { instream.close(); }
                 catch(Exception e) {
                     //
                 }
             }
-        }
-        try {
-            Log.d(TAG, "Loading star names...");
-            instream = context.getAssets().open("starnames.txt");
-            BufferedReader buffreader = new BufferedReader(new InputStreamReader(instream));
-            String line;
-            String[] lineArr;
-            buffreader.readLine();
-            while ((line = buffreader.readLine()) != null) {
-                lineArr = line.split(":");
-                int index = Integer.parseInt(lineArr[0]);
-                for (SkyObject star : starList) {
-                    if (star.hipNum == index) {
-                        star.name = Util.transformStarName(lineArr[1]);
-                    }
-                }
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to read star names.", e);
-        } finally {
-            if (instream != null) {
-                try { instream.close(); }
+            if (fd != null) {
+                try { fd.close(); }
                 catch(Exception e) {
                     //
                 }
             }
         }
+    }
 
-        //sort them by RA
-        Collections.sort(starList, (lhs, rhs) -> Double.compare(lhs.ra, rhs.ra));
+    /**
+     * Read the compiled catalog in the given buffer, which is kept for decoding names.
+     */
+    static StarCatalog readCatalog(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != CATALOG_MAGIC || buffer.getInt(4) != CATALOG_VERSION) {
+            throw new IOException("Unsupported star database format.");
+        }
+        int count = buffer.getInt(8);
+        int recordSize = buffer.getInt(12);
+        int stringTableOffset = buffer.getInt(16);
+
+        // records are already sorted by RA (at the epoch of the catalog), so they can be taken in order
+        StarCatalog stars = new StarCatalog(count);
+        for (int i = 0; i < count; i++) {
+            int pos = HEADER_SIZE + i * recordSize;
+            stars.hipNum[i] = buffer.getInt(pos);
+            stars.ra[i] = buffer.getDouble(pos + 4);
+            stars.dec[i] = buffer.getDouble(pos + 12);
+            stars.dist[i] = buffer.getFloat(pos + 20);
+            stars.mag[i] = buffer.getFloat(pos + 24);
+            stars.setNameOffset(i, buffer.getInt(pos + 28));
+            stars.spectralClass[i] = buffer.get(pos + 32);
+            stars.pmRa[i] = buffer.getFloat(pos + 36);
+            stars.pmDec[i] = buffer.getFloat(pos + 40);
+        }
+
+        ByteBuffer stringTable = buffer.duplicate();
+        stringTable.position(stringTableOffset);
+        stars.setStringTable(stringTable.slice());
+        stars.buildHipIndex();
+        return stars;
     }
 
-    public List<SkyObject> getStarList() {
-        return starList;
+    public StarCatalog getCatalog() {
+        return catalog;
     }
 
-    public SkyObject pickStar(double ra, double dec) {
-        double numStars = starList.size();
-        int i, j = (int) ((ra / 360.0) * numStars);
-        if (j >= starList.size()) { j = starList.size() - 1; }
-        if (j < 0) { j = 0; }
-        i = j;
-        while (i >= 0) {
-            if (ra - starList.get(i).ra > STAR_PICK_RADIUS) {
-                break;
-            }
-            if (Math.abs(starList.get(i).dec - dec) <= STAR_PICK_RADIUS) {
-                return starList.get(i);
-            }
-            i--;
-        }
-        i = j;
-        while (i < starList.size()) {
-            if (starList.get(i).ra - ra > STAR_PICK_RADIUS) {
-                break;
-            }
-            if (Math.abs(starList.get(i).dec - dec) <= STAR_PICK_RADIUS) {
-                return starList.get(i);
-            }
-            i++;
-        }
-        return null;
+    /**
+     * Build a spatial index of the stars at the given positions (e.g. the positions of
+     * the catalog at another epoch), suitable for passing to setSkyIndex(). Does not
+     * touch the current index, so it may be called on a background thread.
+     */
+    public static SkyIndex buildSkyIndex(double[] ra, double[] dec, int count) {
+        SkyIndex index = new SkyIndex(STAR_INDEX_CELL_SIZE);
+        index.build(ra, dec, count);
+        return index;
+    }
+
+    public void setSkyIndex(SkyIndex index) {
+        skyIndex = index;
+    }
+
+    /**
+     * @return The index of the star closest to the given coordinates, within the pick
+     * radius, or -1 if there is none.
+     */
+    public int pickStar(double ra, double dec) {
+        return skyIndex.nearest(ra, dec, STAR_PICK_RADIUS);
+    }
+
+    /**
+     * Find all stars within the given angular radius (in degrees) of the given coordinates.
+     * @return The number of star indices written to the output array.
+     */
+    public int findStars(double ra, double dec, double radius, int[] out) {
+        return skyIndex.cone(ra, dec, radius, out);
     }
 }
@@ -0,0 +1,52 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRShader;
+
+/**
+ * Shader for drawing stars as round, soft-edged points, with a per-vertex color and
+ * point size.
+ */
+public class StarShader extends GVRShader {
+
+    private static final String VERTEX_SHADER = "layout(location = 0) in vec3 a_position;\n"
+            + "layout(location = 1) in vec4 a_color;\n"
+            + "layout(location = 2) in float a_size;\n"
+            + "@MATRIX_UNIFORMS\n"
+            + "@MATERIAL_UNIFORMS\n"
+            + "layout(location = 0) out vec4 v_color;\n"
+            + "void main() {\n"
+            + "    v_color = a_color;\n"
+            + "    gl_PointSize = a_size * u_point_scale;\n"
+            + "    gl_Position = u_mvp * vec4(a_position, 1.0);\n"
+            + "}\n";
+
+    private static final String FRAGMENT_SHADER = "precision mediump float;\n"
+            + "layout(location = 0) in vec4 v_color;\n"
+            + "layout(location = 0) out vec4 fragColor;\n"
+            + "void main() {\n"
+            + "    float d = length(gl_PointCoord - vec2(0.5));\n"
+            + "    fragColor = vec4(v_color.rgb, v_color.a * (1.0 - smoothstep(0.25, 0.5, d)));\n"
+            + "}\n";
+
+    public StarShader(GVRContext context) {
+        super("float u_point_scale", "", "float3 a_position float4 a_color float a_size", GLSLESVersion.VULKAN);
+        setSegment("VertexTemplate", VERTEX_SHADER);
+        setSegment("FragmentTemplate", FRAGMENT_SHADER);
+    }
+}
@@ -0,0 +1,180 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import android.content.res.AssetFileDescriptor;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.gearvrf.GVRAndroidResource;
+import org.gearvrf.GVRContext;
+import org.gearvrf.GVRImage;
+import org.gearvrf.GVRRenderData;
+import org.gearvrf.GVRTexture;
+import org.gearvrf.utility.Log;
+
+/**
+ * Keeps the full-resolution textures of planets and nebulae in memory only while they're
+ * worth having. Each object starts out with a tiny placeholder texture (the smallest
+ * mipmaps of its full texture, see KtxTextureCompiler), which is all that is visible at
+ * its normal size. The full texture is loaded in the background when the object is
+ * hovered (and zoomed in), and swapped in once it's ready.
+ *
+ * Full textures stay resident after the object is no longer hovered, until the total
+ * size of resident textures exceeds the budget, at which point the least recently
+ * requested ones go back to their placeholders (see ResidencyBudget).
+ *
+ * Everything here is called from the GL thread.
+ */
+public class TextureResidencyManager {
+    private static final String TAG = "TextureResidency";
+    public static final long DEFAULT_BUDGET_BYTES = 2 * 1024 * 1024;
+    private static final String PLACEHOLDER_DIR = "small/";
+
+    private static class Entry {
+        final SkyObject obj;
+        final GVRRenderData renderData;
+        final GVRTexture placeholder;
+        GVRTexture full;
+        boolean loading;
+
+        Entry(SkyObject obj, GVRRenderData renderData) {
+            this.obj = obj;
+            this.renderData = renderData;
+            placeholder = renderData.getMaterial().getMainTexture();
+        }
+    }
+
+    private final GVRContext context;
+    private final Map<SkyObject, Entry> entries = new HashMap<>();
+    // entries with full textures (or loading them)
+    private final ResidencyBudget<Entry> budget;
+
+    public TextureResidencyManager(GVRContext context, long budgetBytes) {
+        this.context = context;
+        budget = new ResidencyBudget<>(budgetBytes);
+    }
+
+    /**
+     * @return The asset path of the placeholder for the given full texture, e.g.
+     * textures/small/m42.ktx for textures/m42.ktx.
+     */
+    public static String placeholderPath(String texName) {
+        int slash = texName.lastIndexOf('/');
+        return texName.substring(0, slash + 1) + PLACEHOLDER_DIR + texName.substring(slash + 1);
+    }
+
+    /**
+     * Manage the texture of the given object, whose render data currently has the
+     * placeholder for the texture named by obj.texName.
+     */
+    public void register(SkyObject obj, GVRRenderData renderData) {
+        entries.put(obj, new Entry(obj, renderData));
+    }
+
+    /**
+     * Make sure that the full texture of the given object is (or will soon be) shown.
+     */
+    public void request(SkyObject obj) {
+        Entry entry = entries.get(obj);
+        if (entry == null || budget.request(entry)) {
+            return;
+        }
+        load(entry);
+    }
+
+    public long getResidentBytes() {
+        return budget.getResidentBytes();
+    }
+
+    public long getPeakResidentBytes() {
+        return budget.getPeakResidentBytes();
+    }
+
+    public String getStats() {
+        return budget.getStats();
+    }
+
+    private void load(Entry entry) {
+        GVRAndroidResource resource;
+        try {
+            resource = new GVRAndroidResource(context, entry.obj.texName);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open texture " + entry.obj.texName, e);
+            return;
+        }
+        entry.loading = true;
+        for (Entry evicted : budget.add(entry, assetSize(entry.obj.texName))) {
+            unload(evicted);
+        }
+
+        context.getAssetLoader().loadTexture(resource, new GVRAndroidResource.TextureCallback() {
+            @Override
+            public void loaded(GVRImage image, GVRAndroidResource androidResource) {
+                context.runOnGlThread(() -> {
+                    if (!entry.loading) {
+                        // evicted while it was loading
+                        return;
+                    }
+                    entry.loading = false;
+                    entry.full = new GVRTexture(context);
+                    entry.full.setImage(image);
+                    entry.renderData.getMaterial().setMainTexture(entry.full);
+                });
+            }
+
+            @Override
+            public void failed(Throwable t, GVRAndroidResource androidResource) {
+                Log.e(TAG, "Failed to load texture " + entry.obj.texName, t);
+                context.runOnGlThread(() -> release(entry));
+            }
+
+            @Override
+            public boolean stillWanted(GVRAndroidResource androidResource) {
+                return entry.loading;
+            }
+        });
+    }
+
+    private void release(Entry entry) {
+        if (budget.remove(entry)) {
+            unload(entry);
+        }
+    }
+
+    private void unload(Entry entry) {
+        entry.loading = false;
+        if (entry.full != null) {
+            entry.renderData.getMaterial().setMainTexture(entry.placeholder);
+            entry.full = null;
+        }
+    }
+
+    /**
+     * @return The size of the given asset, which (for a compressed texture) is close to
+     * the memory it takes on the GPU.
+     */
+    private long assetSize(String path) {
+        try (AssetFileDescriptor fd = context.getContext().getAssets().openFd(path)) {
+            return fd.getLength();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
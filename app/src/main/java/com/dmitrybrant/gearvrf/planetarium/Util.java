@@ -17,6 +17,7 @@ package com.dmitrybrant.gearvrf.planetarium;
 
 public class Util {
     public static final String TAG = "Util";
+    public static final String SPECTRAL_CLASSES = "OBAFGKM";
 
     public static String formatAsHtml(String content) {
         String html = "<html><head><style type=\"text/css\">" +
@@ -312,4 +313,15 @@ public class Util {
         name = name.replace("Mercury", "Mercury (planet)");
         return name;
     }
+
+    /**
+     * @return The index of the given spectral class (e.g. "G8III") in SPECTRAL_CLASSES,
+     * or -1 if it isn't one of the standard classes.
+     */
+    public static byte spectralClassCode(String className) {
+        if (className == null || className.length() == 0) {
+            return -1;
+        }
+        return (byte) SPECTRAL_CLASSES.indexOf(Character.toUpperCase(className.charAt(0)));
+    }
 }
@@ -0,0 +1,141 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AngularPickerTest {
+    private static final float DISTANCE = 100f;
+
+    private static SkyObject object(double ra, double dec) {
+        SkyObject obj = new SkyObject();
+        obj.ra = ra;
+        obj.dec = dec;
+        obj.initialScale = 1f;
+        return obj;
+    }
+
+    private static SkyObject pick(AngularPicker picker, double ra, double dec) {
+        return picker.pick(SkyMath.vectorX(ra, dec), SkyMath.vectorY(ra, dec), SkyMath.vectorZ(ra, dec));
+    }
+
+    @Test
+    public void testQuadAcrossRaSeam() {
+        // a quad 2 units wide at a distance of 100 spans about 0.57 degrees either side
+        AngularPicker picker = new AngularPicker();
+        SkyObject quad = object(359.9, 0.0);
+        picker.addQuad(quad, DISTANCE, 2f);
+        assertSame(quad, pick(picker, 359.9, 0.0));
+        assertSame(quad, pick(picker, 0.3, 0.0));
+        assertSame(quad, pick(picker, 359.5, 0.4));
+        assertNull(pick(picker, 0.6, 0.0));
+        assertNull(pick(picker, 359.1, 0.0));
+        assertNull(pick(picker, 359.9, 0.7));
+    }
+
+    @Test
+    public void testSphereAcrossRaSeam() {
+        // a sphere of radius 1 at a distance of 100 spans about 0.57 degrees
+        AngularPicker picker = new AngularPicker();
+        SkyObject sphere = object(0.2, 30.0);
+        picker.addSphere(sphere, DISTANCE, 1f);
+        // at a declination of 30, a degree of RA is about 0.87 degrees of arc
+        assertSame(sphere, pick(picker, 359.8, 30.0));
+        assertSame(sphere, pick(picker, 0.8, 30.0));
+        assertNull(pick(picker, 359.4, 30.0));
+        assertNull(pick(picker, 1.0, 30.0));
+    }
+
+    @Test
+    public void testQuadAtPole() {
+        AngularPicker picker = new AngularPicker();
+        SkyObject quad = object(0.0, 90.0);
+        picker.addQuad(quad, DISTANCE, 2f);
+        // the orientation of a quad at the pole is arbitrary, so any RA near it is a hit
+        for (double ra = 0.0; ra < 360.0; ra += 45.0) {
+            assertSame(quad, pick(picker, ra, 89.7));
+            assertNull(pick(picker, ra, 89.0));
+        }
+        assertSame(quad, pick(picker, 123.0, 90.0));
+    }
+
+    @Test
+    public void testSphereNearSouthPole() {
+        AngularPicker picker = new AngularPicker();
+        SkyObject sphere = object(90.0, -89.8);
+        picker.addSphere(sphere, DISTANCE, 1f);
+        // across the pole from the sphere, RA differs by 180 degrees but the arc is small
+        assertSame(sphere, pick(picker, 270.0, -89.9));
+        assertSame(sphere, pick(picker, 0.0, -90.0));
+        assertNull(pick(picker, 270.0, -89.2));
+    }
+
+    @Test
+    public void testRejectedOutsideBoundingCone() {
+        AngularPicker picker = new AngularPicker();
+        SkyObject sphere = object(120.0, 10.0);
+        SkyObject quad = object(240.0, -10.0);
+        picker.addSphere(sphere, DISTANCE, 1f);
+        picker.addQuad(quad, DISTANCE, 2f);
+        // the opposite direction would intersect the line through each shape, but behind the camera
+        assertNull(pick(picker, 300.0, -10.0));
+        assertNull(pick(picker, 60.0, 10.0));
+        // just outside the angular radius of the sphere
+        assertNull(pick(picker, 120.0, 10.6));
+        assertSame(sphere, pick(picker, 120.0, 10.5));
+    }
+
+    @Test
+    public void testQuadCornersInsideBoundingCone() {
+        AngularPicker picker = new AngularPicker();
+        SkyObject quad = object(180.0, 0.0);
+        picker.addQuad(quad, DISTANCE, 2f);
+        // near the corner of the quad, further out than its half-width
+        assertSame(quad, pick(picker, 180.53, 0.53));
+        // the same angle from the center, but towards the middle of an edge
+        assertNull(pick(picker, 180.75, 0.0));
+    }
+
+    @Test
+    public void testNearestObjectWins() {
+        AngularPicker picker = new AngularPicker();
+        SkyObject far = object(45.0, 45.0);
+        SkyObject near = object(45.0, 45.0);
+        picker.addQuad(far, DISTANCE, 20f);
+        picker.addSphere(near, DISTANCE / 2f, 1f);
+        assertSame(near, pick(picker, 45.0, 45.0));
+        // outside the sphere, but still on the quad
+        assertSame(far, pick(picker, 45.0, 48.0));
+    }
+
+    @Test
+    public void testInitialScaleAndUpdatePosition() {
+        AngularPicker picker = new AngularPicker();
+        SkyObject sphere = object(10.0, 0.0);
+        sphere.initialScale = 3f;
+        picker.addSphere(sphere, DISTANCE, 1f);
+        assertSame(sphere, pick(picker, 11.5, 0.0));
+
+        sphere.ra = 350.0;
+        picker.updatePosition(sphere);
+        assertNull(pick(picker, 10.0, 0.0));
+        assertSame(sphere, pick(picker, 351.5, 0.0));
+    }
+}
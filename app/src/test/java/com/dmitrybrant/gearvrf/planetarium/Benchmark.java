@@ -0,0 +1,59 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+/**
+ * A small timing harness for the benchmarks (the *Benchmark classes), which run on the
+ * JVM rather than on the device, so they measure the relative cost of the code rather
+ * than the time it takes on any particular headset. They are left out of the normal test
+ * run; run them with "gradlew testDebugUnitTest -Pbenchmark".
+ */
+final class Benchmark {
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final long ROUND_NANOS = 200_000_000L;
+    private static final int ROUNDS = 5;
+
+    private Benchmark() {
+    }
+
+    /**
+     * Run the given code repeatedly until the JIT has had a chance to compile it, then
+     * time it over several rounds, and print the best one.
+     * @param opsPerRun Number of operations (e.g. stars) that each run of the code covers.
+     * @return The time per operation of the best round, in nanoseconds.
+     */
+    static double run(String name, int opsPerRun, Runnable code) {
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < WARMUP_NANOS) {
+            code.run();
+        }
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long runs = 0;
+            start = System.nanoTime();
+            long elapsed;
+            do {
+                code.run();
+                runs++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ROUND_NANOS);
+            best = Math.min(best, (double) elapsed / (runs * opsPerRun));
+        }
+        System.out.println(String.format("%s: %.1f ns/op", name, best));
+        return best;
+    }
+}
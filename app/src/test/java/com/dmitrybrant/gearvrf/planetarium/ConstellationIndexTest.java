@@ -0,0 +1,161 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the index against a brute-force search over every segment, with the cell size
+ * and pick radius that ConstellationLines uses.
+ */
+public class ConstellationIndexTest {
+    private static final double CELL_SIZE = ConstellationLines.INDEX_CELL_SIZE;
+    private static final double RADIUS = ConstellationLines.PICK_RADIUS;
+
+    private float[] segmentA;
+    private float[] segmentB;
+    private int count;
+
+    private ConstellationIndex build(double[]... segments) {
+        count = segments.length;
+        segmentA = new float[count * 3];
+        segmentB = new float[count * 3];
+        for (int s = 0; s < count; s++) {
+            setVector(segmentA, s, segments[s][0], segments[s][1]);
+            setVector(segmentB, s, segments[s][2], segments[s][3]);
+        }
+        return new ConstellationIndex(segmentA, segmentB, count, CELL_SIZE, RADIUS);
+    }
+
+    private static void setVector(float[] arr, int i, double ra, double dec) {
+        arr[i * 3] = SkyMath.vectorX(ra, dec);
+        arr[i * 3 + 1] = SkyMath.vectorY(ra, dec);
+        arr[i * 3 + 2] = SkyMath.vectorZ(ra, dec);
+    }
+
+    private double distance(int s, double ra, double dec) {
+        return SkyMath.arcDistance(SkyMath.vectorX(ra, dec), SkyMath.vectorY(ra, dec), SkyMath.vectorZ(ra, dec),
+                segmentA[s * 3], segmentA[s * 3 + 1], segmentA[s * 3 + 2],
+                segmentB[s * 3], segmentB[s * 3 + 1], segmentB[s * 3 + 2]);
+    }
+
+    private int bruteForceNearest(double ra, double dec, double radius) {
+        int best = -1;
+        double bestDistance = radius;
+        for (int s = 0; s < count; s++) {
+            double d = distance(s, ra, dec);
+            if (d <= bestDistance) {
+                bestDistance = d;
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    private void assertMatchesBruteForce(ConstellationIndex index, double ra, double dec, double radius) {
+        int expected = bruteForceNearest(ra, dec, radius);
+        int actual = index.nearest(ra, dec, radius);
+        String where = "at " + ra + ", " + dec;
+        if (expected < 0) {
+            assertEquals(where, -1, actual);
+        } else {
+            // segments that meet at a star are equally near to it, so compare distances
+            assertTrue(where, actual >= 0);
+            assertEquals(where, distance(expected, ra, dec), distance(actual, ra, dec), 1e-9);
+        }
+    }
+
+    /**
+     * @return Random segments of up to 20 degrees, similar to the lines of the figures,
+     * about as many as there are in the real figures.
+     */
+    private ConstellationIndex buildRandom(Random random) {
+        double[][] segments = new double[700][];
+        for (int s = 0; s < segments.length; s++) {
+            double ra = random.nextDouble() * 360.0;
+            double dec = Math.toDegrees(Math.asin(random.nextDouble() * 2.0 - 1.0));
+            double length = random.nextDouble() * 20.0;
+            double angle = random.nextDouble() * 2.0 * Math.PI;
+            double dec2 = Math.max(-90.0, Math.min(90.0, dec + length * Math.sin(angle)));
+            double ra2 = SkyMath.wrapDegrees(ra + length * Math.cos(angle) / Math.max(0.05, Math.cos(Math.toRadians(dec))));
+            segments[s] = new double[] { ra, dec, ra2, dec2 };
+        }
+        return build(segments);
+    }
+
+    @Test
+    public void testRandomGaze() {
+        Random random = new Random(11);
+        ConstellationIndex index = buildRandom(random);
+        for (int i = 0; i < 5000; i++) {
+            double ra = random.nextDouble() * 360.0;
+            double dec = Math.toDegrees(Math.asin(random.nextDouble() * 2.0 - 1.0));
+            assertMatchesBruteForce(index, ra, dec, RADIUS);
+            assertMatchesBruteForce(index, ra, dec, RADIUS / 3.0);
+        }
+    }
+
+    @Test
+    public void testRandomGazeAtPolesAndSeam() {
+        Random random = new Random(12);
+        ConstellationIndex index = buildRandom(random);
+        for (int i = 0; i < 5000; i++) {
+            // within a few cells of either pole, and of RA 0
+            double dec = (90.0 - random.nextDouble() * 3.0 * CELL_SIZE) * (random.nextBoolean() ? 1 : -1);
+            assertMatchesBruteForce(index, random.nextDouble() * 360.0, dec, RADIUS);
+            double ra = SkyMath.wrapDegrees((random.nextDouble() - 0.5) * 2.0 * CELL_SIZE);
+            assertMatchesBruteForce(index, ra, random.nextDouble() * 180.0 - 90.0, RADIUS);
+        }
+    }
+
+    @Test
+    public void testAcrossRaSeam() {
+        ConstellationIndex index = build(new double[] { 358.0, 10.0, 2.0, 10.0 }, new double[] { 180.0, 0.0, 185.0, 0.0 });
+        assertEquals(0, index.nearest(0.0, 11.0, RADIUS));
+        assertEquals(0, index.nearest(359.9, 9.0, RADIUS));
+        assertEquals(0, index.nearest(360.0, 10.0, RADIUS));
+        assertEquals(0, index.nearest(-0.5, 10.0, RADIUS));
+        assertEquals(-1, index.nearest(5.5, 10.0, RADIUS));
+    }
+
+    @Test
+    public void testAcrossPole() {
+        // both segments pass over a pole
+        ConstellationIndex index = build(new double[] { 0.0, 88.0, 180.0, 88.0 }, new double[] { 90.0, -87.0, 270.0, -87.0 });
+        assertEquals(0, index.nearest(90.0, 89.9, RADIUS));
+        assertEquals(0, index.nearest(270.0, 88.5, RADIUS));
+        assertEquals(0, index.nearest(45.0, 90.0, RADIUS));
+        assertEquals(1, index.nearest(0.0, -89.0, RADIUS));
+        assertEquals(1, index.nearest(180.0, -88.0, RADIUS));
+        assertEquals(-1, index.nearest(90.0, 86.0, RADIUS));
+    }
+
+    @Test
+    public void testRadius() {
+        ConstellationIndex index = build(new double[] { 100.0, 20.0, 110.0, 20.0 });
+        assertEquals(0, index.nearest(105.0, 22.5, RADIUS));
+        assertEquals(-1, index.nearest(105.0, 22.5, 2.0));
+        assertEquals(-1, index.nearest(105.0, 24.0, RADIUS));
+        // never beyond the radius that the index was built for
+        assertEquals(-1, index.nearest(105.0, 24.0, RADIUS * 2.0));
+    }
+}
@@ -0,0 +1,98 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DescriptionDatabaseTest {
+    private static final File DESCRIPTIONS_DIR = new File("src/test/resources/catalog/descriptions");
+
+    private DescriptionDatabase database;
+
+    @Before
+    public void setUp() throws IOException {
+        database = new DescriptionDatabase(StarLoaderTest.readResource("/catalog/descriptions.bin"));
+    }
+
+    private static String readDescription(String title) throws IOException {
+        return new String(Files.readAllBytes(new File(DESCRIPTIONS_DIR, title + ".html").toPath()),
+                StandardCharsets.UTF_8).trim();
+    }
+
+    @Test
+    public void testSize() {
+        assertEquals(5, database.size());
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        for (String title : new String[] { "Sirius", "Mercury (planet)", "Crab Nebula", "Polaris", "ζ² Reticuli" }) {
+            assertEquals(readDescription(title), database.get(title));
+        }
+    }
+
+    @Test
+    public void testLookupAsRequested() throws IOException {
+        // pages are requested by their transformed names
+        assertEquals(readDescription("Mercury (planet)"), database.get(Util.transformObjectName("Mercury")));
+    }
+
+    @Test
+    public void testMissingTitles() {
+        assertNull(database.get("Vega"));
+        assertNull(database.get(""));
+        // prefixes and extensions of titles that are present
+        assertNull(database.get("Siri"));
+        assertNull(database.get("Sirius B"));
+        assertNull(database.get("sirius"));
+        assertNull(database.get("ζ Reticuli"));
+    }
+
+    @Test
+    public void testRepeatedLookups() throws IOException {
+        String expected = readDescription("Polaris");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected, database.get("Polaris"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFormats() throws IOException {
+        new DescriptionDatabase(StarLoaderTest.readResource("/catalog/stars.bin"));
+    }
+
+    @Test
+    public void testEmptyDatabase() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putInt(0, 0x44455343);
+        buffer.putInt(4, 1);
+        buffer.putInt(12, 16);
+        DescriptionDatabase empty = new DescriptionDatabase(buffer);
+        assertEquals(0, empty.size());
+        assertNull(empty.get("Sirius"));
+    }
+}
@@ -0,0 +1,74 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import com.mhuss.AstroLib.NoInitException;
+import com.mhuss.AstroLib.ObsInfo;
+import com.mhuss.AstroLib.PlanetData;
+import com.mhuss.AstroLib.Planets;
+
+import org.junit.Test;
+
+/**
+ * Cost of a position from the fitted ephemeris, against a full computation with AstroLib,
+ * for every body in turn, advancing the time by about a frame at 60 fps of a time-lapse
+ * at 1000x (so the fits mostly come from the cached windows, as they do while running).
+ * Also the cost of a position far from any cached window, which includes fitting it.
+ */
+public class EphemerisBenchmark {
+    private static final int[] PLANETS = {
+            Planets.SUN, Planets.LUNA, Planets.MERCURY, Planets.VENUS, Planets.MARS,
+            Planets.JUPITER, Planets.SATURN, Planets.URANUS, Planets.NEPTUNE, Planets.PLUTO
+    };
+    private static final double START_JD = 2451544.5;
+    private static final double FRAME_DAYS = 1000.0 / 60.0 / 86400.0;
+
+    @Test
+    public void benchmarkPositions() {
+        ObsInfo obsInfo = new ObsInfo();
+        Ephemeris ephemeris = new Ephemeris(obsInfo);
+        PlanetData data = new PlanetData();
+        double[] pos = new double[2];
+        double[] jd = { START_JD };
+
+        Benchmark.run("Ephemeris, fitted", PLANETS.length, () -> {
+            jd[0] += FRAME_DAYS;
+            for (int planetId : PLANETS) {
+                ephemeris.getPosition(planetId, jd[0], pos);
+            }
+        });
+        Benchmark.run("Ephemeris, refitted", PLANETS.length, () -> {
+            // a year on, so that every window has to be fitted again
+            jd[0] += 365.25;
+            for (int planetId : PLANETS) {
+                ephemeris.getPosition(planetId, jd[0], pos);
+            }
+        });
+        Benchmark.run("PlanetData", PLANETS.length, () -> {
+            jd[0] += FRAME_DAYS;
+            for (int planetId : PLANETS) {
+                try {
+                    data.calc(planetId, jd[0], obsInfo);
+                    pos[0] = data.getRightAscension();
+                    pos[1] = data.getDeclination();
+                } catch (NoInitException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,157 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import com.mhuss.AstroLib.ObsInfo;
+import com.mhuss.AstroLib.PlanetData;
+import com.mhuss.AstroLib.Planets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EphemerisTest {
+    private static final double ARCSEC = 1.0 / 3600.0;
+    // 2000-01-01 to 2030-01-01, sampled at an interval that isn't a whole number of days,
+    // so that the samples fall at every phase of the windows
+    private static final double START_JD = 2451544.5;
+    private static final double END_JD = 2462502.5;
+    private static final double STEP = 3.37;
+    // the fits are good to a few hundredths of an arcsecond
+    private static final double TOLERANCE = 1.0;
+
+    private static final int[] PLANETS = {
+            Planets.SUN, Planets.LUNA, Planets.MERCURY, Planets.VENUS, Planets.MARS,
+            Planets.JUPITER, Planets.SATURN, Planets.URANUS, Planets.NEPTUNE, Planets.PLUTO
+    };
+
+    private static ObsInfo obsInfo() {
+        ObsInfo obsInfo = new ObsInfo();
+        obsInfo.setLatitudeDeg(40.7);
+        obsInfo.setLongitudeDeg(-74.0);
+        return obsInfo;
+    }
+
+    /**
+     * @return The largest error of the fitted position against AstroLib, in arcseconds.
+     */
+    private static double maxError(int planetId, double step) throws Exception {
+        ObsInfo obsInfo = obsInfo();
+        Ephemeris ephemeris = new Ephemeris(obsInfo);
+        PlanetData data = new PlanetData();
+        double[] pos = new double[2];
+        double maxError = 0.0;
+        for (double jd = START_JD; jd < END_JD; jd += step) {
+            ephemeris.getPosition(planetId, jd, pos);
+            data.calc(planetId, jd, obsInfo);
+            double ra = Math.toDegrees(data.getRightAscension());
+            double dec = Math.toDegrees(data.getDeclination());
+            maxError = Math.max(maxError, SkyMath.angularDistance(pos[0], pos[1], ra, dec) / ARCSEC);
+        }
+        return maxError;
+    }
+
+    @Test
+    public void testSunMatchesAstroLib() throws Exception {
+        double error = maxError(Planets.SUN, STEP);
+        assertTrue("Sun is off by " + error + "\"", error < TOLERANCE);
+    }
+
+    @Test
+    public void testMoonMatchesAstroLib() throws Exception {
+        // the Moon moves fastest, so sample it more densely
+        double error = maxError(Planets.LUNA, STEP / 16.0);
+        assertTrue("Moon is off by " + error + "\"", error < TOLERANCE);
+    }
+
+    @Test
+    public void testPlanetsMatchAstroLib() throws Exception {
+        for (int planetId : PLANETS) {
+            if (planetId == Planets.SUN || planetId == Planets.LUNA) {
+                continue;
+            }
+            double error = maxError(planetId, STEP);
+            assertTrue("Planet " + planetId + " is off by " + error + "\"", error < TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testExactPositionMatchesAstroLib() throws Exception {
+        ObsInfo obsInfo = obsInfo();
+        Ephemeris ephemeris = new Ephemeris(obsInfo);
+        PlanetData data = new PlanetData();
+        double[] pos = new double[2];
+        for (int planetId : PLANETS) {
+            ephemeris.getExactPosition(planetId, START_JD, pos);
+            data.calc(planetId, START_JD, obsInfo);
+            assertEquals(SkyMath.wrapDegrees(Math.toDegrees(data.getRightAscension())), pos[0], 1e-9);
+            assertEquals(Math.toDegrees(data.getDeclination()), pos[1], 1e-9);
+        }
+    }
+
+    @Test
+    public void testDistanceMatchesAstroLib() throws Exception {
+        ObsInfo obsInfo = obsInfo();
+        Ephemeris ephemeris = new Ephemeris(obsInfo);
+        PlanetData data = new PlanetData();
+        for (int planetId : PLANETS) {
+            double maxError = 0.0;
+            // a shorter span than the positions, since every window is fitted again
+            for (double jd = START_JD; jd < START_JD + 3650.0; jd += STEP / 4.0) {
+                data.calc(planetId, jd, obsInfo);
+                double expected = data.getEclipticRadius();
+                maxError = Math.max(maxError, Math.abs(ephemeris.getDistance(planetId, jd) - expected) / expected);
+            }
+            assertTrue("Planet " + planetId + " distance is off by " + maxError, maxError < 1e-6);
+        }
+    }
+
+    @Test
+    public void testDistanceOrder() {
+        Ephemeris ephemeris = new Ephemeris(obsInfo());
+        double jd = START_JD + 1000.0;
+        assertTrue(ephemeris.getDistance(Planets.LUNA, jd) < 0.003);
+        assertEquals(1.0, ephemeris.getDistance(Planets.SUN, jd), 0.02);
+        assertTrue(ephemeris.getDistance(Planets.NEPTUNE, jd) > ephemeris.getDistance(Planets.SATURN, jd));
+    }
+
+    @Test
+    public void testRevisitingEarlierWindows() {
+        // moving back and forth in time reuses cached windows, and evicts the oldest ones;
+        // a window that's fitted again may differ by a hair, since AstroLib keeps some state
+        // between calls
+        Ephemeris ephemeris = new Ephemeris(obsInfo());
+        double[] first = new double[2];
+        double[] again = new double[2];
+        double jd = START_JD + 100.25;
+        ephemeris.getPosition(Planets.MARS, jd, first);
+        for (int i = 1; i <= 10; i++) {
+            ephemeris.getPosition(Planets.MARS, jd + i * 8.0, again);
+        }
+        ephemeris.getPosition(Planets.MARS, jd, again);
+        assertEquals(first[0], again[0], 1e-6);
+        assertEquals(first[1], again[1], 1e-6);
+    }
+
+    @Test
+    public void testJulianDate() {
+        assertEquals(2440587.5, Ephemeris.julianDate(0L), 0.0);
+        // 2000-01-01T12:00:00Z
+        assertEquals(2451545.0, Ephemeris.julianDate(946728000000L), 1e-9);
+    }
+}
@@ -0,0 +1,147 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EpochPropagatorTest {
+    private static final double ARCSEC = 1.0 / 3600.0;
+    private static final double DAYS_PER_CENTURY = 36525.0;
+    // a century either side of J2000, and a few millennia out
+    private static final double[] DATES = {
+            EpochPropagator.JD_J2000 - DAYS_PER_CENTURY, EpochPropagator.JD_J2000 + DAYS_PER_CENTURY,
+            EpochPropagator.JD_J2000 - 40 * DAYS_PER_CENTURY, EpochPropagator.JD_J2000 + 40 * DAYS_PER_CENTURY
+    };
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUp() {
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+
+    private static StarCatalog catalog() {
+        StarCatalog catalog = new StarCatalog(4);
+        double[][] stars = { { 0.0, 0.0 }, { 101.287, -16.716 }, { 37.954, 89.264 }, { 317.195, -88.957 } };
+        for (int i = 0; i < stars.length; i++) {
+            catalog.ra[i] = stars[i][0];
+            catalog.dec[i] = stars[i][1];
+        }
+        // Sirius
+        catalog.pmRa[1] = -546.01f;
+        catalog.pmDec[1] = -1223.07f;
+        return catalog;
+    }
+
+    @Test
+    public void testPrecessionOverACentury() {
+        // the equinox itself moves about 46 arcseconds a year in RA, and 20 in Dec
+        double[] m = new double[9];
+        EpochPropagator.precessionNutationMatrix(EpochPropagator.JD_J2000 + DAYS_PER_CENTURY, m);
+        double[] pos = new double[2];
+        EpochPropagator.precess(m, 0.0, 0.0, pos);
+        assertEquals(4612.0 * ARCSEC, pos[0], 30.0 * ARCSEC);
+        assertEquals(2004.0 * ARCSEC, pos[1], 30.0 * ARCSEC);
+    }
+
+    @Test
+    public void testPropagateMatchesPrecessWithoutProperMotion() {
+        StarCatalog catalog = catalog();
+        EpochPropagator propagator = new EpochPropagator(catalog, pool);
+        double[] ra = new double[catalog.size()];
+        double[] dec = new double[catalog.size()];
+        double[] m = new double[9];
+        double[] pos = new double[2];
+        for (double jd : DATES) {
+            propagator.propagate(jd, ra, dec);
+            EpochPropagator.precessionNutationMatrix(jd, m);
+            for (int i = 0; i < catalog.size(); i++) {
+                if (i == 1) {
+                    continue;
+                }
+                EpochPropagator.precess(m, catalog.ra[i], catalog.dec[i], pos);
+                // the propagator keeps its vectors in single precision
+                assertTrue(SkyMath.angularDistance(pos[0], pos[1], ra[i], dec[i]) < 0.1 * ARCSEC);
+            }
+        }
+    }
+
+    @Test
+    public void testProperMotion() {
+        StarCatalog catalog = catalog();
+        EpochPropagator propagator = new EpochPropagator(catalog, pool);
+        double[] ra = new double[catalog.size()];
+        double[] dec = new double[catalog.size()];
+        double[] m = new double[9];
+        double[] fixed = new double[2];
+        double jd = EpochPropagator.JD_J2000 + DAYS_PER_CENTURY;
+        propagator.propagate(jd, ra, dec);
+        EpochPropagator.precessionNutationMatrix(jd, m);
+        EpochPropagator.precess(m, catalog.ra[1], catalog.dec[1], fixed);
+        // Sirius moves about 134 arcseconds in a century, on top of the precession
+        double moved = Math.hypot(546.01, 1223.07) * 100.0 / 1000.0;
+        assertEquals(moved, SkyMath.angularDistance(fixed[0], fixed[1], ra[1], dec[1]) / ARCSEC, 0.5);
+    }
+
+    @Test
+    public void testSceneRotationMatchesPrecess() {
+        double[] m = new double[9];
+        double[] pos = new double[2];
+        float[] q = new float[4];
+        double[][] points = { { 0.0, 0.0 }, { 90.0, 30.0 }, { 200.0, -60.0 }, { 359.9, 89.9 }, { 45.0, -89.0 } };
+        for (double jd : DATES) {
+            EpochPropagator.precessionNutationMatrix(jd, m);
+            SkyMath.sceneRotation(m, q);
+            assertEquals(1.0, q[0] * q[0] + q[1] * q[1] + q[2] * q[2] + q[3] * q[3], 1e-6);
+            for (double[] p : points) {
+                float vx = SkyMath.vectorX(p[0], p[1]);
+                float vy = SkyMath.vectorY(p[0], p[1]);
+                float vz = SkyMath.vectorZ(p[0], p[1]);
+                // v + 2w(u x v) + 2u x (u x v)
+                float tx = 2f * (q[2] * vz - q[3] * vy);
+                float ty = 2f * (q[3] * vx - q[1] * vz);
+                float tz = 2f * (q[1] * vy - q[2] * vx);
+                float rx = vx + q[0] * tx + q[2] * tz - q[3] * ty;
+                float ry = vy + q[0] * ty + q[3] * tx - q[1] * tz;
+                float rz = vz + q[0] * tz + q[1] * ty - q[2] * tx;
+
+                // compare the vectors directly, since the Dec of a single-precision vector
+                // is imprecise near the pole
+                EpochPropagator.precess(m, p[0], p[1], pos);
+                double ex = SkyMath.vectorX(pos[0], pos[1]);
+                double ey = SkyMath.vectorY(pos[0], pos[1]);
+                double ez = SkyMath.vectorZ(pos[0], pos[1]);
+                double cross = Math.sqrt(Math.pow(ry * ez - rz * ey, 2) + Math.pow(rz * ex - rx * ez, 2)
+                        + Math.pow(rx * ey - ry * ex, 2));
+                double angle = Math.toDegrees(Math.atan2(cross, rx * ex + ry * ey + rz * ez));
+                assertTrue("Off by " + angle / ARCSEC + "\" at " + p[0] + ", " + p[1], angle < 0.5 * ARCSEC);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HipIndexTest {
+
+    @Test
+    public void testPutAndGet() {
+        HipIndex index = new HipIndex(3);
+        index.put(11767, 0);
+        index.put(32349, 1);
+        index.put(0, 2);
+        assertEquals(3, index.size());
+        assertEquals(0, index.get(11767));
+        assertEquals(1, index.get(32349));
+        assertEquals(2, index.get(0));
+        assertEquals(-1, index.get(88));
+    }
+
+    @Test
+    public void testReplace() {
+        HipIndex index = new HipIndex(1);
+        index.put(88, 5);
+        index.put(88, 7);
+        assertEquals(1, index.size());
+        assertEquals(7, index.get(88));
+    }
+
+    @Test
+    public void testCollisions() {
+        // fill to capacity with numbers that land in clusters, and check every one
+        int count = 120000;
+        HipIndex index = new HipIndex(count);
+        Random random = new Random(1);
+        int[] hips = new int[count];
+        for (int i = 0; i < count; i++) {
+            hips[i] = i * 16 + random.nextInt(16);
+            index.put(hips[i], i);
+        }
+        assertEquals(count, index.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, index.get(hips[i]));
+            assertEquals(-1, index.get(hips[i] + count * 16));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCapacityExceeded() {
+        HipIndex index = new HipIndex(2);
+        for (int i = 0; i < 100; i++) {
+            index.put(i, i);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import org.junit.Test;
+
+/**
+ * Cost per star of the batch transform into the display frame, which runs every frame
+ * while the sky is turning in horizon mode, over arrays the size of the full Hipparcos
+ * catalog: the rotation alone (equatorial mode), the rotation with refraction (horizon
+ * mode), and the extinction that follows it.
+ */
+public class HorizonTransformBenchmark {
+    private static final int CATALOG_SIZE = 118218;
+
+    @Test
+    public void benchmarkTransform() {
+        StarCatalog catalog = StarFieldBuilderTest.randomCatalog(CATALOG_SIZE, 1);
+        float[] directions = new float[CATALOG_SIZE * 3];
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            directions[i * 3] = SkyMath.vectorX(catalog.ra[i], catalog.dec[i]);
+            directions[i * 3 + 1] = SkyMath.vectorY(catalog.ra[i], catalog.dec[i]);
+            directions[i * 3 + 2] = SkyMath.vectorZ(catalog.ra[i], catalog.dec[i]);
+        }
+        float[] positions = new float[directions.length];
+        float[] alpha = new float[CATALOG_SIZE];
+        HorizonTransform frame = new HorizonTransform();
+        double[] angle = { 0.0 };
+
+        Benchmark.run("HorizonTransform, equatorial", CATALOG_SIZE, () -> {
+            frame.setEquatorial(angle[0] += 0.01);
+            frame.transform(directions, positions, 0, CATALOG_SIZE, 100f);
+        });
+        Benchmark.run("HorizonTransform, horizon", CATALOG_SIZE, () -> {
+            frame.setHorizon(40.0, angle[0] += 0.01);
+            frame.transform(directions, positions, 0, CATALOG_SIZE, 100f);
+        });
+        Benchmark.run("HorizonTransform, horizon and extinction", CATALOG_SIZE, () -> {
+            frame.setHorizon(40.0, angle[0] += 0.01);
+            frame.transform(directions, positions, 0, CATALOG_SIZE, 100f);
+            for (int i = 0; i < CATALOG_SIZE; i++) {
+                alpha[i] = frame.transmission(positions[i * 3 + 1] / 100f);
+            }
+        });
+    }
+}
@@ -0,0 +1,155 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HorizonTransformTest {
+
+    /**
+     * @return The display direction of the given equatorial position, without refraction.
+     */
+    private static float[] transform(HorizonTransform frame, double ra, double dec) {
+        float[] src = { SkyMath.vectorX(ra, dec), SkyMath.vectorY(ra, dec), SkyMath.vectorZ(ra, dec) };
+        float[] dst = new float[3];
+        frame.transform(src, dst, 0, 1, 1f);
+        return dst;
+    }
+
+    private static double altitude(float[] v) {
+        return Math.toDegrees(Math.asin(v[1]));
+    }
+
+    /**
+     * @return The azimuth, in degrees, measured from south towards west, as in Meeus.
+     */
+    private static double azimuth(float[] v) {
+        return SkyMath.wrapDegrees(Math.toDegrees(Math.atan2(-v[0], v[2])));
+    }
+
+    @Test
+    public void testLocalSiderealTime() {
+        // Meeus, Astronomical Algorithms, example 12.a: 1987 April 10, 0h UT
+        assertEquals(197.693195, HorizonTransform.localSiderealTime(2446895.5, 0.0), 1e-5);
+        // and east longitudes add to it
+        assertEquals(SkyMath.wrapDegrees(197.693195 + 100.0), HorizonTransform.localSiderealTime(2446895.5, 100.0), 1e-5);
+    }
+
+    @Test
+    public void testAltAz() {
+        // Meeus, example 13.b: Venus from Washington, 1987 April 10, 19:21 UT
+        HorizonTransform frame = new HorizonTransform();
+        frame.setRefraction(false);
+        double lst = HorizonTransform.localSiderealTime(2446896.30625, -77.065556);
+        frame.setHorizon(38.921389, lst);
+        float[] v = transform(frame, 347.3193375, -6.719892);
+        // the mean rather than the apparent sidereal time, and float precision, allow
+        // for a small difference
+        assertEquals(15.1249, altitude(v), 0.01);
+        assertEquals(68.0337, azimuth(v), 0.01);
+    }
+
+    @Test
+    public void testPolarisAltitudeIsLatitude() {
+        HorizonTransform frame = new HorizonTransform();
+        frame.setRefraction(false);
+        for (double latitude = 10.0; latitude <= 80.0; latitude += 10.0) {
+            for (double lst = 0.0; lst < 360.0; lst += 30.0) {
+                frame.setHorizon(latitude, lst);
+                float[] v = transform(frame, 37.95, 89.264);
+                // Polaris is 0.74 degrees from the pole, and always due north
+                assertEquals(latitude, altitude(v), 0.75);
+                assertEquals(180.0, azimuth(v), 1.0 / Math.cos(Math.toRadians(latitude)));
+            }
+        }
+    }
+
+    @Test
+    public void testZenithAndMeridian() {
+        HorizonTransform frame = new HorizonTransform();
+        frame.setRefraction(false);
+        frame.setHorizon(-33.9, 123.4);
+        // a star at the latitude's declination is overhead as it crosses the meridian
+        assertEquals(90.0, altitude(transform(frame, 123.4, -33.9)), 0.01);
+        // the celestial equator rises due east, and sets due west
+        float[] east = transform(frame, 123.4 + 90.0, 0.0);
+        assertEquals(0.0, altitude(east), 1e-4);
+        assertEquals(1f, east[0], 1e-5f);
+        float[] west = transform(frame, 123.4 - 90.0, 0.0);
+        assertEquals(-1f, west[0], 1e-5f);
+    }
+
+    @Test
+    public void testRotationMatchesMatrix() {
+        HorizonTransform frame = new HorizonTransform();
+        frame.setRefraction(false);
+        frame.setHorizon(51.5, 200.0);
+        // rotating by the quaternion gives the same result as the matrix
+        float w = frame.getRotationW(), qx = frame.getRotationX(), qy = frame.getRotationY(), qz = frame.getRotationZ();
+        for (double ra = 0.0; ra < 360.0; ra += 45.0) {
+            for (double dec = -60.0; dec <= 60.0; dec += 30.0) {
+                float x = SkyMath.vectorX(ra, dec), y = SkyMath.vectorY(ra, dec), z = SkyMath.vectorZ(ra, dec);
+                // v' = v + 2w(q x v) + 2q x (q x v)
+                float cx = qy * z - qz * y, cy = qz * x - qx * z, cz = qx * y - qy * x;
+                float rx = x + 2f * (w * cx + qy * cz - qz * cy);
+                float ry = y + 2f * (w * cy + qz * cx - qx * cz);
+                float rz = z + 2f * (w * cz + qx * cy - qy * cx);
+                float[] v = transform(frame, ra, dec);
+                assertEquals(v[0], rx, 1e-5f);
+                assertEquals(v[1], ry, 1e-5f);
+                assertEquals(v[2], rz, 1e-5f);
+            }
+        }
+        assertEquals(0.0, frame.angleFrom(w, qx, qy, qz), 0.01);
+    }
+
+    @Test
+    public void testRefraction() {
+        HorizonTransform frame = new HorizonTransform();
+        frame.setHorizon(40.0, 0.0);
+        HorizonTransform unrefracted = new HorizonTransform();
+        unrefracted.setRefraction(false);
+        unrefracted.setHorizon(40.0, 0.0);
+        // due south, at a true altitude of 0 and of 45 degrees
+        double horizonLift = altitude(transform(frame, 0.0, -50.0)) - altitude(transform(unrefracted, 0.0, -50.0));
+        double highLift = altitude(transform(frame, 0.0, -5.0)) - altitude(transform(unrefracted, 0.0, -5.0));
+        // about 29 arcminutes at the horizon with Saemundsson's formula, and 1 at 45 degrees
+        assertEquals(29.0 / 60.0, horizonLift, 2.0 / 60.0);
+        assertEquals(1.0 / 60.0, highLift, 0.2 / 60.0);
+    }
+
+    @Test
+    public void testTransmission() {
+        HorizonTransform frame = new HorizonTransform();
+        assertEquals(1f, frame.transmission(0f), 0f);
+        frame.setHorizon(40.0, 0.0);
+        assertEquals(0f, frame.transmission(-0.5f), 0f);
+        float previous = 0f;
+        for (float up = 0f; up <= 1f; up += 0.05f) {
+            float t = frame.transmission(up);
+            assertTrue(t >= previous && t <= 1f);
+            previous = t;
+        }
+        // 0.25 magnitudes of extinction at the zenith are added to the airmass of 1
+        assertEquals(1f, frame.transmission(1f), 1e-3f);
+        frame.setExtinction(false);
+        assertEquals(1f, frame.transmission(0f), 0f);
+    }
+}
@@ -0,0 +1,184 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MeshBuilderTest {
+    private static final int STRIDE = MeshBuilder.VERTEX_STRIDE;
+
+    private static float[] position(MeshBuilder.MeshData mesh, int vertex) {
+        int p = vertex * STRIDE + MeshBuilder.POSITION_OFFSET;
+        return new float[] { mesh.vertices[p], mesh.vertices[p + 1], mesh.vertices[p + 2] };
+    }
+
+    private static float[] normal(MeshBuilder.MeshData mesh, int vertex) {
+        int p = vertex * STRIDE + MeshBuilder.NORMAL_OFFSET;
+        return new float[] { mesh.vertices[p], mesh.vertices[p + 1], mesh.vertices[p + 2] };
+    }
+
+    private static float texcoord(MeshBuilder.MeshData mesh, int vertex, int component) {
+        return mesh.vertices[vertex * STRIDE + MeshBuilder.TEXCOORD_OFFSET + component];
+    }
+
+    /**
+     * @return The (unnormalized) normal of the given triangle, by its winding.
+     */
+    private static float[] faceNormal(MeshBuilder.MeshData mesh, int triangle) {
+        float[] a = position(mesh, mesh.indices[triangle * 3]);
+        float[] b = position(mesh, mesh.indices[triangle * 3 + 1]);
+        float[] c = position(mesh, mesh.indices[triangle * 3 + 2]);
+        float ux = b[0] - a[0], uy = b[1] - a[1], uz = b[2] - a[2];
+        float vx = c[0] - a[0], vy = c[1] - a[1], vz = c[2] - a[2];
+        return new float[] { uy * vz - uz * vy, uz * vx - ux * vz, ux * vy - uy * vx };
+    }
+
+    private static float length(float[] v) {
+        return (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+    }
+
+    @Test
+    public void testSphereCounts() {
+        int[] expectedVertices = { 153, 561, 2145, 8385 };
+        for (int lod = 0; lod < MeshCache.SPHERE_LOD_BANDS.length; lod++) {
+            int bands = MeshCache.SPHERE_LOD_BANDS[lod];
+            int segments = bands * 2;
+            MeshBuilder.MeshData mesh = MeshBuilder.sphere(1f, bands, segments, false);
+            // one row of vertices per edge of a band, with the seam column repeated
+            assertEquals(expectedVertices[lod], mesh.getVertexCount());
+            assertEquals((bands + 1) * (segments + 1), mesh.getVertexCount());
+            // two triangles per quad, except one in each quad of the polar bands
+            assertEquals((bands - 1) * segments * 2 * 3, mesh.indices.length);
+            assertEquals(mesh.getVertexCount() * STRIDE * 4 + mesh.indices.length * 2, mesh.getByteSize());
+            for (char index : mesh.indices) {
+                assertTrue(index < mesh.getVertexCount());
+            }
+        }
+        // the normal level of detail of the planets
+        assertEquals(23712, MeshBuilder.sphere(1f, 16, 32, false).getByteSize());
+    }
+
+    @Test
+    public void testSphereVertices() {
+        float radius = 2.5f;
+        int bands = 8;
+        int segments = 16;
+        MeshBuilder.MeshData mesh = MeshBuilder.sphere(radius, bands, segments, false);
+        for (int r = 0; r <= bands; r++) {
+            for (int s = 0; s <= segments; s++) {
+                int v = r * (segments + 1) + s;
+                float[] p = position(mesh, v);
+                float[] n = normal(mesh, v);
+                assertEquals(radius, length(p), 1e-5f);
+                assertEquals(1f, length(n), 1e-5f);
+                for (int c = 0; c < 3; c++) {
+                    assertEquals(p[c] / radius, n[c], 1e-6f);
+                }
+                // from the south pole up, in equal steps of latitude
+                assertEquals(-Math.cos(Math.PI * r / bands), p[1] / radius, 1e-5);
+                assertEquals((float) s / segments, texcoord(mesh, v, 0), 0f);
+                assertEquals((float) r / bands, texcoord(mesh, v, 1), 0f);
+            }
+            // the seam column repeats the first one exactly
+            float[] first = position(mesh, r * (segments + 1));
+            float[] last = position(mesh, r * (segments + 1) + segments);
+            for (int c = 0; c < 3; c++) {
+                assertEquals(first[c], last[c], 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testSpherePoles() {
+        int bands = 16;
+        int segments = 32;
+        MeshBuilder.MeshData mesh = MeshBuilder.sphere(1f, bands, segments, false);
+        for (int s = 0; s <= segments; s++) {
+            float[] south = position(mesh, s);
+            float[] north = position(mesh, bands * (segments + 1) + s);
+            assertEquals(-1f, south[1], 0f);
+            assertEquals(1f, north[1], 1e-6f);
+            assertEquals(0f, south[0] * south[0] + south[2] * south[2], 1e-12f);
+            assertEquals(0f, north[0] * north[0] + north[2] * north[2], 1e-12f);
+        }
+        // every triangle has some area, including the ones at the poles
+        for (int t = 0; t < mesh.indices.length / 3; t++) {
+            assertTrue("triangle " + t, length(faceNormal(mesh, t)) > 1e-6f);
+        }
+        // and each quad of a polar band has exactly one triangle touching the pole
+        int southTriangles = 0;
+        for (int t = 0; t < mesh.indices.length / 3; t++) {
+            for (int k = 0; k < 3; k++) {
+                if (mesh.indices[t * 3 + k] <= segments) {
+                    southTriangles++;
+                    break;
+                }
+            }
+        }
+        assertEquals(segments, southTriangles);
+    }
+
+    @Test
+    public void testSphereWinding() {
+        for (boolean invert : new boolean[] { false, true }) {
+            MeshBuilder.MeshData mesh = MeshBuilder.sphere(1f, 16, 32, invert);
+            for (int t = 0; t < mesh.indices.length / 3; t++) {
+                float[] n = faceNormal(mesh, t);
+                float[] a = position(mesh, mesh.indices[t * 3]);
+                float dot = n[0] * a[0] + n[1] * a[1] + n[2] * a[2];
+                // counterclockwise seen from outside, or from inside if inverted
+                assertTrue("triangle " + t, invert ? dot < 0f : dot > 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testRing() {
+        int segments = 32;
+        MeshBuilder.MeshData mesh = MeshBuilder.ring(1.5f, 3f, segments);
+        assertEquals(66, mesh.getVertexCount());
+        assertEquals(segments * 6, mesh.indices.length);
+        for (int i = 0; i <= segments; i++) {
+            float[] inner = position(mesh, i * 2);
+            float[] outer = position(mesh, i * 2 + 1);
+            assertEquals(1.5f, length(inner), 1e-5f);
+            assertEquals(3f, length(outer), 1e-5f);
+            assertEquals(0f, inner[2], 0f);
+            assertEquals(0f, texcoord(mesh, i * 2, 0), 0f);
+            assertEquals(1f, texcoord(mesh, i * 2 + 1, 0), 0f);
+            assertEquals((float) i / segments, texcoord(mesh, i * 2, 1), 0f);
+        }
+        for (int t = 0; t < mesh.indices.length / 3; t++) {
+            // facing +Z, like the normals
+            assertTrue("triangle " + t, faceNormal(mesh, t)[2] > 0f);
+        }
+        assertEquals(1f, normal(mesh, 0)[2], 0f);
+    }
+
+    @Test
+    public void testCircleTableIsShared() {
+        float[] table = MeshBuilder.circle(24);
+        assertTrue(table == MeshBuilder.circle(24));
+        assertEquals(table[0], table[48], 0f);
+        assertEquals(table[1], table[49], 0f);
+        assertEquals(0f, table[12], 1e-6f);
+        assertEquals(1f, table[13], 1e-6f);
+    }
+}
@@ -0,0 +1,160 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import android.os.Looper;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class PrefetchSchedulerTest {
+    private static final long DWELL = 100;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private PrefetchScheduler scheduler;
+
+    private static MockResponse page(String extract) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"title\":\"x\",\"extract_html\":\"" + extract + "\"}");
+    }
+
+    private void resetClient() throws IOException {
+        RestBaseClient.init(RestBaseClient.createClient(tempFolder.newFolder(), 0),
+                server.url("/summary/").toString(), null);
+    }
+
+    /**
+     * Keep updating the scheduler at the given time, until the given number of requests
+     * have been made and answered.
+     */
+    private void updateUntilAnswered(long now, int requestCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            scheduler.update(now);
+            shadowOf(Looper.getMainLooper()).idle();
+            if (server.getRequestCount() >= requestCount) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        // let the completion arrive, and be processed
+        for (int i = 0; i < 20; i++) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(10);
+        }
+        scheduler.update(now);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        resetClient();
+        scheduler = new PrefetchScheduler(DWELL);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void testPrefetchAfterDwell() throws Exception {
+        server.enqueue(page("Hot star"));
+        scheduler.setTarget("Vega", 1000);
+        scheduler.update(1000 + DWELL / 2);
+        assertEquals(0, server.getRequestCount());
+
+        updateUntilAnswered(1000 + DWELL, 1);
+        assertEquals(1, server.getRequestCount());
+        assertTrue(RestBaseClient.isInMemory("Vega"));
+
+        scheduler.recordOpen("Vega");
+        assertEquals(1f, scheduler.getHitRate(), 0f);
+    }
+
+    @Test
+    public void testNotPrefetchedAgainWhileInMemory() throws Exception {
+        server.enqueue(page("Hot star"));
+        scheduler.setTarget("Vega", 1000);
+        updateUntilAnswered(1000 + DWELL, 1);
+
+        scheduler.setTarget(null, 2000);
+        scheduler.setTarget("Vega", 3000);
+        updateUntilAnswered(3000 + DWELL, 2);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testPrefetchedAgainAfterEviction() throws Exception {
+        server.enqueue(page("Hot star"));
+        server.enqueue(page("Hot star"));
+        scheduler.setTarget("Vega", 1000);
+        updateUntilAnswered(1000 + DWELL, 1);
+
+        // forget everything in memory (and on disk)
+        resetClient();
+        assertFalse(RestBaseClient.isInMemory("Vega"));
+        scheduler.setTarget(null, 2000);
+        scheduler.setTarget("Vega", 3000);
+        updateUntilAnswered(3000 + DWELL, 2);
+        assertEquals(2, server.getRequestCount());
+        assertTrue(RestBaseClient.isInMemory("Vega"));
+    }
+
+    @Test
+    public void testFailedPrefetchRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("Server error"));
+        server.enqueue(page("Hot star"));
+        scheduler.setTarget("Vega", 1000);
+        updateUntilAnswered(1000 + DWELL, 1);
+        assertFalse(RestBaseClient.isInMemory("Vega"));
+
+        // not right away...
+        updateUntilAnswered(2000, 2);
+        assertEquals(1, server.getRequestCount());
+
+        // ...but once the delay is up, while still looking at it
+        updateUntilAnswered(20000, 2);
+        assertEquals(2, server.getRequestCount());
+        assertTrue(RestBaseClient.isInMemory("Vega"));
+        assertTrue(scheduler.getStats().contains("failed: 1"));
+    }
+}
@@ -0,0 +1,131 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RectPackerTest {
+
+    /**
+     * Check that every rectangle, with its padding, is inside the packer and doesn't
+     * overlap any other rectangle with its padding.
+     */
+    private static void checkPlacement(RectPacker packer, int padding, List<int[]> rects) {
+        for (int i = 0; i < rects.size(); i++) {
+            int[] a = rects.get(i);
+            assertTrue(a[0] - padding >= 0 && a[0] + a[2] + padding <= packer.getWidth());
+            assertTrue(a[1] - padding >= 0 && a[1] + a[3] + padding <= packer.getHeight());
+            for (int j = 0; j < i; j++) {
+                int[] b = rects.get(j);
+                boolean apartX = a[0] + a[2] + padding <= b[0] - padding || b[0] + b[2] + padding <= a[0] - padding;
+                boolean apartY = a[1] + a[3] + padding <= b[1] - padding || b[1] + b[3] + padding <= a[1] - padding;
+                assertTrue("rects " + i + " and " + j + " overlap", apartX || apartY);
+            }
+        }
+    }
+
+    @Test
+    public void testNoOverlap() {
+        for (int padding = 0; padding <= 2; padding++) {
+            RectPacker packer = new RectPacker(256, 256, padding);
+            Random random = new Random(padding);
+            List<int[]> rects = new ArrayList<>();
+            int area = 0;
+            int[] pos = new int[2];
+            for (int i = 0; i < 500; i++) {
+                int w = 1 + random.nextInt(40);
+                int h = 1 + random.nextInt(20);
+                if (packer.insert(w, h, pos)) {
+                    rects.add(new int[] { pos[0], pos[1], w, h });
+                    area += w * h;
+                }
+            }
+            assertTrue(rects.size() > 50);
+            checkPlacement(packer, padding, rects);
+            assertEquals((float) area / (256 * 256), packer.getOccupancy(), 1e-6f);
+        }
+    }
+
+    @Test
+    public void testRejectsTooWide() {
+        RectPacker packer = new RectPacker(100, 50, 2);
+        int[] pos = new int[2];
+        assertFalse(packer.insert(97, 10, pos));
+        assertFalse(packer.insert(1000, 1, pos));
+        assertEquals(0f, packer.getOccupancy(), 0f);
+
+        // exactly as wide as the packer, with its padding
+        assertTrue(packer.insert(96, 10, pos));
+        assertEquals(2, pos[0]);
+        assertEquals(2, pos[1]);
+    }
+
+    @Test
+    public void testRejectsTooTall() {
+        RectPacker packer = new RectPacker(100, 50, 2);
+        int[] pos = new int[2];
+        assertFalse(packer.insert(10, 47, pos));
+        assertTrue(packer.insert(10, 46, pos));
+
+        // a full first shelf leaves 16 pixels for the next one, including its padding
+        packer = new RectPacker(100, 50, 2);
+        assertTrue(packer.insert(96, 30, pos));
+        assertFalse(packer.insert(10, 31, pos));
+        assertFalse(packer.insert(10, 13, pos));
+        assertTrue(packer.insert(10, 12, pos));
+        assertEquals(2, pos[0]);
+        assertEquals(36, pos[1]);
+    }
+
+    @Test
+    public void testManyShelves() {
+        // each rectangle is taller than the ones before, so it opens a new shelf
+        int padding = 1;
+        RectPacker packer = new RectPacker(100, 1000, padding);
+        List<int[]> rects = new ArrayList<>();
+        int[] pos = new int[2];
+        int top = 0;
+        for (int i = 0; i < 20; i++) {
+            int h = i + 1;
+            assertTrue(packer.insert(40, h, pos));
+            assertEquals(padding, pos[0]);
+            assertEquals(top + padding, pos[1]);
+            rects.add(new int[] { pos[0], pos[1], 40, h });
+            top += h + padding * 2;
+        }
+
+        // the shelves that were opened before growing are still usable: this goes next to
+        // the rectangle on the shelf that fits it best
+        assertTrue(packer.insert(40, 4, pos));
+        assertEquals(rects.get(3)[0] + 40 + padding * 2, pos[0]);
+        assertEquals(rects.get(3)[1], pos[1]);
+        rects.add(new int[] { pos[0], pos[1], 40, 4 });
+        assertTrue(packer.insert(40, 18, pos));
+        assertEquals(rects.get(17)[1], pos[1]);
+        rects.add(new int[] { pos[0], pos[1], 40, 18 });
+
+        checkPlacement(packer, padding, rects);
+    }
+}
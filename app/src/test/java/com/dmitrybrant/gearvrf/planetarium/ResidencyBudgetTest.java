@@ -0,0 +1,123 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResidencyBudgetTest {
+
+    @Test
+    public void testWithinBudget() {
+        ResidencyBudget<String> budget = new ResidencyBudget<>(100);
+        assertFalse(budget.request("a"));
+        assertEquals(Collections.emptyList(), budget.add("a", 40));
+        assertEquals(Collections.emptyList(), budget.add("b", 60));
+        assertEquals(2, budget.getResidentCount());
+        assertEquals(100, budget.getResidentBytes());
+        assertTrue(budget.request("a"));
+        assertTrue(budget.request("b"));
+        assertEquals(2, budget.getLoads());
+        assertEquals(2, budget.getHits());
+        assertEquals(0, budget.getEvictions());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyRequested() {
+        ResidencyBudget<String> budget = new ResidencyBudget<>(100);
+        budget.add("a", 30);
+        budget.add("b", 30);
+        budget.add("c", 30);
+        // a request makes "a" the most recent, so "b" goes first
+        assertTrue(budget.request("a"));
+        assertEquals(Collections.singletonList("b"), budget.add("d", 30));
+        assertFalse(budget.request("b"));
+        assertEquals(90, budget.getResidentBytes());
+
+        // as many as it takes to make room, in order
+        assertEquals(Arrays.asList("c", "a"), budget.add("e", 50));
+        assertEquals(80, budget.getResidentBytes());
+        assertTrue(budget.request("d"));
+        assertTrue(budget.request("e"));
+        assertEquals(3, budget.getEvictions());
+    }
+
+    @Test
+    public void testOversizedItemStays() {
+        ResidencyBudget<String> budget = new ResidencyBudget<>(100);
+        budget.add("a", 50);
+        budget.add("b", 20);
+        // larger than the whole budget: everything else goes, but it stays
+        assertEquals(Arrays.asList("a", "b"), budget.add("big", 150));
+        assertTrue(budget.request("big"));
+        assertEquals(150, budget.getResidentBytes());
+        assertEquals(220, budget.getPeakResidentBytes());
+
+        // and is the first to go for the next one
+        assertEquals(Collections.singletonList("big"), budget.add("c", 10));
+        assertEquals(10, budget.getResidentBytes());
+        assertEquals(220, budget.getPeakResidentBytes());
+    }
+
+    @Test
+    public void testPeakIncludesNewItemBeforeEviction() {
+        ResidencyBudget<String> budget = new ResidencyBudget<>(100);
+        budget.add("a", 80);
+        budget.add("b", 80);
+        // both were resident together for a moment, while "b" was starting to load
+        assertEquals(160, budget.getPeakResidentBytes());
+        assertEquals(80, budget.getResidentBytes());
+    }
+
+    @Test
+    public void testRemove() {
+        ResidencyBudget<String> budget = new ResidencyBudget<>(100);
+        budget.add("a", 40);
+        budget.add("b", 40);
+        assertTrue(budget.remove("a"));
+        assertFalse(budget.remove("a"));
+        assertFalse(budget.request("a"));
+        assertEquals(40, budget.getResidentBytes());
+        // a removal isn't an eviction
+        assertEquals(0, budget.getEvictions());
+        assertEquals(Collections.emptyList(), budget.add("c", 60));
+    }
+
+    @Test
+    public void testAddAgainReplacesSize() {
+        ResidencyBudget<String> budget = new ResidencyBudget<>(100);
+        budget.add("a", 40);
+        budget.add("a", 60);
+        assertEquals(1, budget.getResidentCount());
+        assertEquals(60, budget.getResidentBytes());
+    }
+
+    @Test
+    public void testStats() {
+        ResidencyBudget<String> budget = new ResidencyBudget<>(4096);
+        budget.add("a", 2048);
+        budget.add("b", 3072);
+        budget.request("b");
+        assertEquals("resident: 1 (3 KB, peak 5 KB), loads: 2, hits: 1, evictions: 1", budget.getStats());
+    }
+}
@@ -0,0 +1,348 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import android.os.Looper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class RestBaseClientTest {
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final long TTL_SECONDS = 3600;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+
+    /**
+     * Collects the results delivered to a listener.
+     */
+    private static class Result implements RestBaseClient.OnGetPageResult {
+        final List<String> pages = new ArrayList<>();
+        final List<Throwable> errors = new ArrayList<>();
+
+        @Override
+        public void onSuccess(String pageContents) {
+            pages.add(pageContents);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            errors.add(e);
+        }
+
+        boolean isDone() {
+            return !pages.isEmpty() || !errors.isEmpty();
+        }
+    }
+
+    private static MockResponse page(String extract) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setHeader("ETag", "\"" + extract.hashCode() + "\"")
+                .setBody("{\"title\":\"x\",\"extract_html\":\"" + extract + "\"}");
+    }
+
+    /**
+     * Run the main looper until all the given results have arrived.
+     */
+    private static void await(Result... results) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            boolean done = true;
+            for (Result result : results) {
+                done &= result.isDone();
+            }
+            if (done) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Timed out waiting for the page.");
+    }
+
+    /**
+     * Run the main looper for a while, for results that aren't expected to arrive.
+     */
+    private static void settle() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(10);
+        }
+    }
+
+    private void useServer(long ttlSeconds) throws IOException {
+        RestBaseClient.init(RestBaseClient.createClient(tempFolder.newFolder(), ttlSeconds),
+                server.url("/summary/").toString(), null);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void testDownload() throws Exception {
+        useServer(TTL_SECONDS);
+        server.enqueue(page("Brightest star"));
+        int misses = RestBaseClient.getMisses();
+        Result result = new Result();
+        RestBaseClient.getPage("Sirius", result);
+        await(result);
+        assertEquals("Brightest star", result.pages.get(0));
+        assertEquals("/summary/Sirius", server.takeRequest().getPath());
+        assertEquals(misses + 1, RestBaseClient.getMisses());
+    }
+
+    @Test
+    public void testMemoryCacheHit() throws Exception {
+        useServer(TTL_SECONDS);
+        server.enqueue(page("Red giant"));
+        Result first = new Result();
+        RestBaseClient.getPage("Arcturus", first);
+        await(first);
+        assertTrue(RestBaseClient.isInMemory("Arcturus"));
+
+        // answered right away, without going to the looper or the server
+        int memoryHits = RestBaseClient.getMemoryHits();
+        Result second = new Result();
+        RestBaseClient.getPage("Arcturus", second);
+        assertEquals("Red giant", second.pages.get(0));
+        assertEquals(memoryHits + 1, RestBaseClient.getMemoryHits());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testDiskCacheHit() throws Exception {
+        File cacheDir = tempFolder.newFolder();
+        String url = server.url("/summary/").toString();
+        RestBaseClient.init(RestBaseClient.createClient(cacheDir, TTL_SECONDS), url, null);
+        server.enqueue(page("Pole star"));
+        Result first = new Result();
+        RestBaseClient.getPage("Polaris", first);
+        await(first);
+
+        // a fresh client forgets what's in memory, but the response is still on disk
+        RestBaseClient.init(RestBaseClient.createClient(cacheDir, TTL_SECONDS), url, null);
+        assertFalse(RestBaseClient.isInMemory("Polaris"));
+        int diskHits = RestBaseClient.getDiskHits();
+        Result second = new Result();
+        RestBaseClient.getPage("Polaris", second);
+        await(second);
+        assertEquals("Pole star", second.pages.get(0));
+        assertEquals(diskHits + 1, RestBaseClient.getDiskHits());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testRevalidation() throws Exception {
+        File cacheDir = tempFolder.newFolder();
+        String url = server.url("/summary/").toString();
+        // with no TTL, every cached response is revalidated
+        RestBaseClient.init(RestBaseClient.createClient(cacheDir, 0), url, null);
+        server.enqueue(page("Hot star"));
+        Result first = new Result();
+        RestBaseClient.getPage("Vega", first);
+        await(first);
+        server.takeRequest();
+
+        RestBaseClient.init(RestBaseClient.createClient(cacheDir, 0), url, null);
+        server.enqueue(new MockResponse().setResponseCode(304));
+        int revalidated = RestBaseClient.getRevalidatedHits();
+        Result second = new Result();
+        RestBaseClient.getPage("Vega", second);
+        await(second);
+        assertEquals("Hot star", second.pages.get(0));
+        assertEquals(revalidated + 1, RestBaseClient.getRevalidatedHits());
+        RecordedRequest request = server.takeRequest();
+        assertEquals("\"" + "Hot star".hashCode() + "\"", request.getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void testStaleCacheUsedWhenOffline() throws Exception {
+        File cacheDir = tempFolder.newFolder();
+        String url = server.url("/summary/").toString();
+        RestBaseClient.init(RestBaseClient.createClient(cacheDir, 0), url, null);
+        server.enqueue(page("Summer triangle"));
+        Result first = new Result();
+        RestBaseClient.getPage("Deneb", first);
+        await(first);
+
+        // the cached response is stale, and the server can't be reached to revalidate it
+        server.shutdown();
+        RestBaseClient.init(RestBaseClient.createClient(cacheDir, 0), url, null);
+        int diskHits = RestBaseClient.getDiskHits();
+        Result second = new Result();
+        RestBaseClient.getPage("Deneb", second);
+        await(second);
+        assertEquals("Summer triangle", second.pages.get(0));
+        assertEquals(diskHits + 1, RestBaseClient.getDiskHits());
+
+        // nothing cached for this one
+        Result third = new Result();
+        RestBaseClient.getPage("Altair", third);
+        await(third);
+        assertTrue(third.pages.isEmpty());
+        assertNotNull(third.errors.get(0));
+    }
+
+    @Test
+    public void testConcurrentRequestsCoalesced() throws Exception {
+        useServer(TTL_SECONDS);
+        server.enqueue(page("Variable star").setBodyDelay(200, TimeUnit.MILLISECONDS));
+        Result first = new Result();
+        Result second = new Result();
+        RestBaseClient.getPage("Betelgeuse", first);
+        RestBaseClient.getPage("Betelgeuse", second);
+        await(first, second);
+        assertEquals("Variable star", first.pages.get(0));
+        assertEquals("Variable star", second.pages.get(0));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testCancelOneListener() throws Exception {
+        useServer(TTL_SECONDS);
+        server.enqueue(page("Blue supergiant").setBodyDelay(200, TimeUnit.MILLISECONDS));
+        Result cancelled = new Result();
+        Result kept = new Result();
+        RestBaseClient.PageRequest request = RestBaseClient.getPage("Rigel", cancelled);
+        RestBaseClient.getPage("Rigel", kept);
+        request.cancel();
+        await(kept);
+        settle();
+        assertEquals("Blue supergiant", kept.pages.get(0));
+        assertTrue(cancelled.pages.isEmpty());
+        assertTrue(cancelled.errors.isEmpty());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testCancelAfterResponse() throws Exception {
+        useServer(TTL_SECONDS);
+        server.enqueue(page("Nearest star"));
+        Result result = new Result();
+        RestBaseClient.PageRequest request = RestBaseClient.getPage("Proxima", result);
+
+        // wait for the result to be posted to the main looper, without running it
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (shadowOf(Looper.getMainLooper()).getScheduler().size() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        request.cancel();
+        settle();
+        assertFalse(result.isDone());
+        assertTrue(RestBaseClient.isInMemory("Proxima"));
+    }
+
+    @Test
+    public void testCancelAllListeners() throws Exception {
+        useServer(TTL_SECONDS);
+        server.enqueue(page("Binary star").setBodyDelay(500, TimeUnit.MILLISECONDS));
+        server.enqueue(page("Binary star"));
+        Result first = new Result();
+        Result second = new Result();
+        RestBaseClient.PageRequest firstRequest = RestBaseClient.getPage("Castor", first);
+        RestBaseClient.PageRequest secondRequest = RestBaseClient.getPage("Castor", second);
+        firstRequest.cancel();
+        secondRequest.cancel();
+        settle();
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertFalse(RestBaseClient.isInMemory("Castor"));
+
+        // the fetch was abandoned, so a new request starts another one
+        Result third = new Result();
+        RestBaseClient.getPage("Castor", third);
+        await(third);
+        assertEquals("Binary star", third.pages.get(0));
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        // many more pages than can be fetched at once, from a slow server
+        final int pageCount = 32;
+        final long delayMillis = 100;
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int count = active.incrementAndGet();
+                maxActive.accumulateAndGet(count, Math::max);
+                Thread.sleep(delayMillis);
+                active.decrementAndGet();
+                return page(request.getPath().substring("/summary/".length()));
+            }
+        });
+        useServer(TTL_SECONDS);
+
+        Result[] results = new Result[pageCount];
+        long start = System.nanoTime();
+        for (int i = 0; i < pageCount; i++) {
+            results[i] = new Result();
+            RestBaseClient.getPage("Star_" + i, results[i]);
+        }
+        await(results);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        for (int i = 0; i < pageCount; i++) {
+            assertEquals("Star_" + i, results[i].pages.get(0));
+        }
+        assertEquals(pageCount, server.getRequestCount());
+        // at most MAX_REQUESTS at once, but no fewer, so that the queue drains in a
+        // quarter of the time it would take one by one
+        assertEquals(4, maxActive.get());
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < pageCount * delayMillis / 2);
+    }
+}
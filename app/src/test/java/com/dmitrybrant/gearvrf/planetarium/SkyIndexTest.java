@@ -0,0 +1,141 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SkyIndexTest {
+    private static final double CELL_SIZE = 1.0;
+
+    private static SkyIndex build(double[] ra, double[] dec) {
+        SkyIndex index = new SkyIndex(CELL_SIZE);
+        index.build(ra, dec, ra.length);
+        return index;
+    }
+
+    @Test
+    public void testNearestAcrossRaSeam() {
+        double[] ra = { 359.9, 0.3, 180.0 };
+        double[] dec = { 10.0, 10.0, 10.0 };
+        SkyIndex index = build(ra, dec);
+        assertEquals(0, index.nearest(0.05, 10.0, 0.5));
+        assertEquals(1, index.nearest(0.2, 10.0, 0.5));
+        assertEquals(0, index.nearest(359.8, 10.0, 0.5));
+        assertEquals(-1, index.nearest(1.0, 10.0, 0.5));
+    }
+
+    @Test
+    public void testNearestAtPoles() {
+        // points on opposite sides of each pole are close together
+        double[] ra = { 0.0, 180.0, 90.0, 270.0 };
+        double[] dec = { 89.8, 89.7, -89.9, -89.5 };
+        SkyIndex index = build(ra, dec);
+        assertEquals(0, index.nearest(200.0, 89.95, 0.5));
+        assertEquals(1, index.nearest(180.0, 89.75, 0.5));
+        assertEquals(2, index.nearest(0.0, -90.0, 0.5));
+        assertEquals(3, index.nearest(270.0, -89.4, 0.5));
+        assertEquals(-1, index.nearest(0.0, 88.0, 0.5));
+    }
+
+    @Test
+    public void testConeAcrossRaSeamAndPole() {
+        double[] ra = { 359.5, 0.5, 2.5, 0.0, 120.0, 240.0 };
+        double[] dec = { 0.0, 0.0, 0.0, 89.0, 89.0, 89.0 };
+        SkyIndex index = build(ra, dec);
+
+        int[] out = new int[8];
+        int found = index.cone(0.0, 0.0, 1.0, out);
+        int[] result = Arrays.copyOf(out, found);
+        Arrays.sort(result);
+        assertArrayEquals(new int[] { 0, 1 }, result);
+
+        found = index.cone(0.0, 90.0, 1.1, out);
+        result = Arrays.copyOf(out, found);
+        Arrays.sort(result);
+        assertArrayEquals(new int[] { 3, 4, 5 }, result);
+    }
+
+    @Test
+    public void testConeOutputLimit() {
+        double[] ra = { 10.0, 10.1, 10.2, 10.3 };
+        double[] dec = { 0.0, 0.0, 0.0, 0.0 };
+        int[] out = new int[2];
+        assertEquals(2, build(ra, dec).cone(10.15, 0.0, 1.0, out));
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        // random points, with extra ones crowded around the poles and the RA seam
+        Random random = new Random(42);
+        int count = 20000;
+        double[] ra = new double[count];
+        double[] dec = new double[count];
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+                case 0:
+                    dec[i] = 90.0 - random.nextDouble() * 3.0;
+                    break;
+                case 1:
+                    dec[i] = -90.0 + random.nextDouble() * 3.0;
+                    break;
+                default:
+                    dec[i] = Math.toDegrees(Math.asin(random.nextDouble() * 2.0 - 1.0));
+                    break;
+            }
+            ra[i] = i % 8 == 2 ? SkyMath.wrapDegrees(random.nextDouble() * 4.0 - 2.0) : random.nextDouble() * 360.0;
+        }
+        SkyIndex index = build(ra, dec);
+
+        int[] out = new int[count];
+        for (int q = 0; q < 2000; q++) {
+            double qra = q % 2 == 0 ? SkyMath.wrapDegrees(random.nextDouble() * 4.0 - 2.0) : random.nextDouble() * 360.0;
+            double qdec = q % 3 == 0 ? Math.copySign(88.0 + random.nextDouble() * 2.0, random.nextDouble() - 0.5)
+                    : random.nextDouble() * 180.0 - 90.0;
+            double radius = 0.2 + random.nextDouble() * 0.8;
+
+            int expectedNearest = -1;
+            double bestDist = radius;
+            int expectedCount = 0;
+            for (int i = 0; i < count; i++) {
+                double dist = SkyMath.angularDistance(qra, qdec, ra[i], dec[i]);
+                if (dist <= radius) {
+                    expectedCount++;
+                    if (dist <= bestDist) {
+                        bestDist = dist;
+                        expectedNearest = i;
+                    }
+                }
+            }
+            int nearest = index.nearest(qra, qdec, radius);
+            if (expectedNearest < 0) {
+                assertEquals(-1, nearest);
+            } else {
+                // allow for float rounding between equally distant points
+                assertEquals(bestDist, SkyMath.angularDistance(qra, qdec, ra[nearest], dec[nearest]), 1e-3);
+            }
+            // the index works in single precision, so points right on the edge may differ
+            int found = index.cone(qra, qdec, radius, out);
+            assertEquals(expectedCount, found, Math.max(1, expectedCount / 100));
+        }
+    }
+}
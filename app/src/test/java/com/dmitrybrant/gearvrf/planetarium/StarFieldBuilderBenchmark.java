@@ -0,0 +1,52 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import org.junit.Test;
+
+/**
+ * Cost per star of rebuilding the star field: all of it (as after a change of epoch),
+ * only the display frame (as when the sky turns in horizon mode), and only the
+ * appearance (as when the magnitude limit changes). Uses a random catalog of the size of
+ * the full Hipparcos catalog, which is much larger than the one that is shipped.
+ */
+public class StarFieldBuilderBenchmark {
+    private static final int CATALOG_SIZE = 118218;
+
+    @Test
+    public void benchmarkUpdate() {
+        StarCatalog catalog = StarFieldBuilderTest.randomCatalog(CATALOG_SIZE, 1);
+        StarFieldBuilder builder = new StarFieldBuilder(catalog, 100f, 6f);
+        HorizonTransform frame = new HorizonTransform();
+        frame.setHorizon(40.0, 75.0);
+        builder.setFrame(frame);
+        builder.update();
+
+        Benchmark.run("StarFieldBuilder, all positions", CATALOG_SIZE, () -> {
+            builder.invalidatePositions();
+            builder.update();
+        });
+        Benchmark.run("StarFieldBuilder, frame", CATALOG_SIZE, () -> {
+            builder.invalidateFrame();
+            builder.update();
+        });
+        Benchmark.run("StarFieldBuilder, appearance", CATALOG_SIZE, () -> {
+            builder.invalidateAppearance();
+            builder.update();
+        });
+    }
+}
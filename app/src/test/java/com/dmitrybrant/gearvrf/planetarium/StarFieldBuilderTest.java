@@ -0,0 +1,211 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StarFieldBuilderTest {
+    private static final float DISTANCE = 100f;
+    private static final float MAGNITUDE_LIMIT = 6f;
+
+    private StarCatalog catalog;
+    private StarFieldBuilder builder;
+
+    /**
+     * @return A catalog of stars scattered uniformly over the sky, with magnitudes from
+     * -1.5 to 8 and random spectral classes (including unknown ones).
+     */
+    static StarCatalog randomCatalog(int count, long seed) {
+        Random random = new Random(seed);
+        StarCatalog catalog = new StarCatalog(count);
+        for (int i = 0; i < count; i++) {
+            catalog.hipNum[i] = i + 1;
+            catalog.ra[i] = random.nextDouble() * 360.0;
+            catalog.dec[i] = Math.toDegrees(Math.asin(random.nextDouble() * 2.0 - 1.0));
+            catalog.mag[i] = -1.5f + random.nextFloat() * 9.5f;
+            catalog.spectralClass[i] = (byte) (random.nextInt(Util.SPECTRAL_CLASSES.length() + 1) - 1);
+        }
+        return catalog;
+    }
+
+    @Before
+    public void setUp() {
+        catalog = randomCatalog(1000, 1);
+        builder = new StarFieldBuilder(catalog, DISTANCE, MAGNITUDE_LIMIT);
+    }
+
+    private void assertPosition(int i, float[] positions) {
+        assertEquals(SkyMath.vectorX(catalog.ra[i], catalog.dec[i]) * DISTANCE, positions[i * 3], 1e-4f);
+        assertEquals(SkyMath.vectorY(catalog.ra[i], catalog.dec[i]) * DISTANCE, positions[i * 3 + 1], 1e-4f);
+        assertEquals(SkyMath.vectorZ(catalog.ra[i], catalog.dec[i]) * DISTANCE, positions[i * 3 + 2], 1e-4f);
+    }
+
+    @Test
+    public void testPositions() {
+        assertEquals(StarFieldBuilder.CHANGED_POSITIONS | StarFieldBuilder.CHANGED_APPEARANCE, builder.update());
+        float[] positions = builder.getPositions();
+        assertEquals(catalog.size() * 3, positions.length);
+        for (int i = 0; i < catalog.size(); i++) {
+            assertPosition(i, positions);
+            float x = positions[i * 3], y = positions[i * 3 + 1], z = positions[i * 3 + 2];
+            assertEquals(DISTANCE, (float) Math.sqrt(x * x + y * y + z * z), 1e-3f);
+            // not dimmed outside of horizon mode
+            assertEquals(1f, builder.getColors()[i * 4 + 3], 0f);
+        }
+    }
+
+    @Test
+    public void testSizeFromMagnitude() {
+        catalog.mag[0] = -1.5f;
+        catalog.mag[1] = 1.5f;
+        catalog.mag[2] = 8.5f;
+        catalog.mag[3] = -3f;
+        builder.setMagnitudeLimit(9f);
+        builder.update();
+        float[] sizes = builder.getSizes();
+        assertEquals(12f, sizes[0], 1e-5f);
+        // fourth root of the flux: 3 magnitudes dimmer is half the size
+        assertEquals(12f * (float) Math.pow(10.0, -0.3), sizes[1], 1e-4f);
+        // clamped at both ends
+        assertEquals(1.5f, sizes[2], 0f);
+        assertEquals(12f, sizes[3], 0f);
+
+        for (int i = 0; i < catalog.size(); i++) {
+            for (int j = 0; j < catalog.size(); j++) {
+                if (catalog.mag[i] < catalog.mag[j]) {
+                    assertTrue(sizes[i] >= sizes[j]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testColorFromSpectralClass() {
+        catalog.spectralClass[0] = (byte) Util.SPECTRAL_CLASSES.indexOf('O');
+        catalog.spectralClass[1] = (byte) Util.SPECTRAL_CLASSES.indexOf('G');
+        catalog.spectralClass[2] = (byte) Util.SPECTRAL_CLASSES.indexOf('M');
+        catalog.spectralClass[3] = -1;
+        builder.update();
+        float[] colors = builder.getColors();
+        assertArrayEquals(new float[] { 0.61f, 0.69f, 1f, 1f }, slice(colors, 0), 0f);
+        assertArrayEquals(new float[] { 1f, 0.96f, 0.92f, 1f }, slice(colors, 1), 0f);
+        assertArrayEquals(new float[] { 1f, 0.8f, 0.44f, 1f }, slice(colors, 2), 0f);
+        // unknown classes are white
+        assertArrayEquals(new float[] { 1f, 1f, 1f, 1f }, slice(colors, 3), 0f);
+    }
+
+    private static float[] slice(float[] colors, int i) {
+        float[] color = new float[4];
+        System.arraycopy(colors, i * 4, color, 0, 4);
+        return color;
+    }
+
+    @Test
+    public void testMagnitudeLimit() {
+        builder.update();
+        int hidden = 0;
+        for (int i = 0; i < catalog.size(); i++) {
+            if (catalog.mag[i] > MAGNITUDE_LIMIT) {
+                assertEquals(0f, builder.getSizes()[i], 0f);
+                hidden++;
+            } else {
+                assertTrue(builder.getSizes()[i] > 0f);
+            }
+        }
+        assertTrue(hidden > 0);
+
+        // raising the limit only changes the appearance, and shows every star
+        builder.setMagnitudeLimit(10f);
+        assertEquals(StarFieldBuilder.CHANGED_APPEARANCE, builder.update());
+        for (int i = 0; i < catalog.size(); i++) {
+            assertTrue(builder.getSizes()[i] > 0f);
+        }
+        assertEquals(0, builder.update());
+        builder.setMagnitudeLimit(10f);
+        assertEquals(0, builder.update());
+    }
+
+    @Test
+    public void testDirtyRange() {
+        builder.update();
+        assertEquals(0, builder.update());
+        float[] before = builder.getPositions().clone();
+
+        // move every star, but only report some of them as changed
+        for (int i = 0; i < catalog.size(); i++) {
+            catalog.ra[i] = SkyMath.wrapDegrees(catalog.ra[i] + 10.0);
+        }
+        builder.invalidatePositions(100, 120);
+        builder.invalidatePositions(300, 310);
+        int changed = builder.update();
+        assertTrue((changed & StarFieldBuilder.CHANGED_POSITIONS) != 0);
+
+        // the ranges are merged into one, from 100 to 310
+        float[] positions = builder.getPositions();
+        for (int i = 0; i < catalog.size(); i++) {
+            if (i >= 100 && i < 310) {
+                assertPosition(i, positions);
+            } else {
+                for (int c = 0; c < 3; c++) {
+                    assertEquals(before[i * 3 + c], positions[i * 3 + c], 0f);
+                }
+            }
+        }
+        assertEquals(0, builder.update());
+
+        builder.invalidatePositions();
+        builder.update();
+        for (int i = 0; i < catalog.size(); i++) {
+            assertPosition(i, positions);
+        }
+    }
+
+    @Test
+    public void testFrame() {
+        HorizonTransform frame = new HorizonTransform();
+        frame.setHorizon(40.0, 75.0);
+        builder.setFrame(frame);
+        builder.update();
+
+        float[] directions = new float[catalog.size() * 3];
+        for (int i = 0; i < catalog.size(); i++) {
+            directions[i * 3] = SkyMath.vectorX(catalog.ra[i], catalog.dec[i]);
+            directions[i * 3 + 1] = SkyMath.vectorY(catalog.ra[i], catalog.dec[i]);
+            directions[i * 3 + 2] = SkyMath.vectorZ(catalog.ra[i], catalog.dec[i]);
+        }
+        float[] expected = new float[directions.length];
+        frame.transform(directions, expected, 0, catalog.size(), DISTANCE);
+        assertArrayEquals(expected, builder.getPositions(), 1e-4f);
+        for (int i = 0; i < catalog.size(); i++) {
+            assertEquals(frame.transmission(expected[i * 3 + 1] / DISTANCE), builder.getColors()[i * 4 + 3], 1e-5f);
+        }
+
+        // turning the frame transforms every star again
+        frame.setHorizon(40.0, 80.0);
+        builder.invalidateFrame();
+        assertEquals(StarFieldBuilder.CHANGED_POSITIONS | StarFieldBuilder.CHANGED_APPEARANCE, builder.update());
+        frame.transform(directions, expected, 0, catalog.size(), DISTANCE);
+        assertArrayEquals(expected, builder.getPositions(), 1e-4f);
+    }
+}
@@ -0,0 +1,97 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the small compiled catalog in the test resources, which is produced from the
+ * stars.txt and starnames.txt next to it by StarCatalogCompiler (and checked by its own
+ * test in buildSrc).
+ */
+public class StarLoaderTest {
+    private StarCatalog catalog;
+
+    static ByteBuffer readResource(String name) throws IOException {
+        try (InputStream stream = StarLoaderTest.class.getResourceAsStream(name)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = stream.read(buf)) > 0) {
+                bytes.write(buf, 0, len);
+            }
+            return ByteBuffer.wrap(bytes.toByteArray());
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        catalog = StarLoader.readCatalog(readResource("/catalog/stars.bin"));
+    }
+
+    @Test
+    public void testSortedByRa() {
+        assertEquals(6, catalog.size());
+        for (int i = 1; i < catalog.size(); i++) {
+            assertTrue(catalog.ra[i] >= catalog.ra[i - 1]);
+        }
+        assertEquals(88, catalog.hipNum[0]);
+        assertEquals(118268, catalog.hipNum[catalog.size() - 1]);
+    }
+
+    @Test
+    public void testRecord() {
+        int i = catalog.indexOfHip(32349);
+        assertEquals(101.288541052, catalog.ra[i], 1e-9);
+        assertEquals(-16.713143063, catalog.dec[i], 1e-9);
+        assertEquals(8.601224f, catalog.dist[i], 1e-5f);
+        assertEquals(-1.44f, catalog.mag[i], 0f);
+        assertEquals(Util.SPECTRAL_CLASSES.indexOf('A'), catalog.spectralClass[i]);
+        assertEquals(-546.01f, catalog.pmRa[i], 0f);
+        assertEquals(-1223.07f, catalog.pmDec[i], 0f);
+    }
+
+    @Test
+    public void testNames() {
+        assertEquals("Sirius", catalog.getName(catalog.indexOfHip(32349)));
+        assertEquals("Polaris", catalog.getName(catalog.indexOfHip(11767)));
+        assertEquals(Util.transformStarName("SIG Oct"), catalog.getName(catalog.indexOfHip(104382)));
+        assertEquals("HIP 88", catalog.getName(catalog.indexOfHip(88)));
+    }
+
+    @Test
+    public void testHipLookup() {
+        for (int i = 0; i < catalog.size(); i++) {
+            assertEquals(i, catalog.indexOfHip(catalog.hipNum[i]));
+        }
+        assertEquals(-1, catalog.indexOfHip(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFormats() throws IOException {
+        StarLoader.readCatalog(ByteBuffer.wrap(new byte[64]));
+    }
+}
@@ -0,0 +1,173 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium.build;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Packs the bundled object descriptions into the binary database that is read by
+ * DescriptionDatabase at runtime, so that descriptions can be shown without a network
+ * connection.
+ *
+ * The input is a directory with one file per page, named after the title of the page
+ * (as requested from RestBaseClient, i.e. after Util.transformObjectName) with an .html
+ * extension, and containing the summary HTML of the page. It's downloaded by
+ * DescriptionFetcher.
+ *
+ * Each description is compressed on its own, so that it can be read and inflated without
+ * touching the rest of the file, and the index is sorted by title so that it can be
+ * searched in place.
+ *
+ * All values are big-endian. The file consists of:
+ *
+ * Header:
+ *   int magic ('DESC')
+ *   int version
+ *   int number of entries
+ *   int offset of the title table from the start of the file
+ *
+ * Index entries, sorted by the UTF-8 bytes of their titles (compared as unsigned):
+ *   int offset of the title in the title table
+ *   int offset of the description from the start of the file
+ *   int compressed length of the description
+ *   int uncompressed length of the description
+ *
+ * Title table:
+ *   unsigned short length, followed by that many bytes of UTF-8.
+ *
+ * Descriptions:
+ *   UTF-8 HTML, compressed with raw deflate (no zlib header).
+ */
+public class DescriptionDbPacker {
+    public static final int MAGIC = 0x44455343;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int ENTRY_SIZE = 16;
+    private static final String EXTENSION = ".html";
+
+    private static class Entry {
+        byte[] title;
+        byte[] compressed;
+        int length;
+    }
+
+    public static void pack(File descriptionsDir, File outFile) throws IOException {
+        List<Entry> entries = readEntries(descriptionsDir);
+        entries.sort((lhs, rhs) -> compareBytes(lhs.title, rhs.title));
+        for (int i = 1; i < entries.size(); i++) {
+            if (compareBytes(entries.get(i - 1).title, entries.get(i).title) == 0) {
+                throw new IOException("Duplicate description: " + new String(entries.get(i).title, StandardCharsets.UTF_8));
+            }
+        }
+
+        ByteArrayOutputStream titleBytes = new ByteArrayOutputStream();
+        DataOutputStream titles = new DataOutputStream(titleBytes);
+        int[] titleOffsets = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            titleOffsets[i] = titles.size();
+            titles.writeShort(entries.get(i).title.length);
+            titles.write(entries.get(i).title);
+        }
+        titles.flush();
+
+        int titleTableOffset = HEADER_SIZE + entries.size() * ENTRY_SIZE;
+        int blobOffset = titleTableOffset + titleBytes.size();
+
+        outFile.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            out.writeInt(titleTableOffset);
+
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                out.writeInt(titleOffsets[i]);
+                out.writeInt(blobOffset);
+                out.writeInt(entry.compressed.length);
+                out.writeInt(entry.length);
+                blobOffset += entry.compressed.length;
+            }
+            titleBytes.writeTo(out);
+            for (Entry entry : entries) {
+                out.write(entry.compressed);
+            }
+        }
+    }
+
+    /**
+     * Compare byte arrays as unsigned bytes, which orders UTF-8 strings by code point.
+     */
+    public static int compareBytes(byte[] lhs, byte[] rhs) {
+        int length = Math.min(lhs.length, rhs.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (lhs[i] & 0xFF) - (rhs[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return lhs.length - rhs.length;
+    }
+
+    private static List<Entry> readEntries(File dir) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            // an empty database would silently send every lookup to the network
+            throw new IOException("Descriptions directory not found: " + dir);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            for (File file : files) {
+                String title = file.getName().substring(0, file.getName().length() - EXTENSION.length());
+                byte[] html = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim()
+                        .getBytes(StandardCharsets.UTF_8);
+                Entry entry = new Entry();
+                entry.title = title.getBytes(StandardCharsets.UTF_8);
+                entry.length = html.length;
+                entry.compressed = deflate(deflater, html);
+                entries.add(entry);
+            }
+        } finally {
+            deflater.end();
+        }
+        return entries;
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,217 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium.build;
+
+import com.dmitrybrant.gearvrf.planetarium.Util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Downloads the descriptions that are bundled with the app (see DescriptionDbPacker) from
+ * the Wikipedia REST API: the summary of the page of every object that the app can show
+ * a description of, i.e. every named star, the planets, the nebulae and the
+ * constellations, under the same title that RestBaseClient would request it by.
+ *
+ * This is run by hand (it takes a few minutes, and needs a network connection), and the
+ * result is committed, so that the build itself never goes online. Requests are spaced
+ * out, and retried when the server asks to slow down.
+ *
+ * Pages that don't exist are left out, so they're looked up online as before. Anything
+ * else that goes wrong fails the whole download, and the pages are only moved into the
+ * output directory once all of them have been fetched, so that an incomplete set of
+ * descriptions is never bundled.
+ */
+public class DescriptionFetcher {
+    public static final String BASE_URL = "https://en.wikipedia.org/api/rest_v1/page/summary/";
+    private static final String USER_AGENT = "GearVRf-Planetarium-build";
+    private static final String EXTENSION = ".html";
+    private static final int TIMEOUT_MILLIS = 30000;
+    // the API allows more, but there's no hurry
+    private static final long REQUEST_INTERVAL_MILLIS = 100;
+    private static final int MAX_RETRIES = 5;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * @return The number of descriptions that were written.
+     */
+    public static int fetch(File namesFile, File nebulaeFile, File asterismsFile, Collection<String> planetNames,
+                            File outDir) throws IOException {
+        return fetch(readTitles(namesFile, nebulaeFile, asterismsFile, planetNames), outDir, BASE_URL,
+                REQUEST_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param intervalMillis The time to wait between requests, and the first time to wait
+     *                       before retrying one, unless the server says how long.
+     */
+    static int fetch(Collection<String> titles, File outDir, String baseUrl, long intervalMillis) throws IOException {
+        File tempDir = new File(outDir.getParentFile(), outDir.getName() + ".tmp");
+        deleteDir(tempDir);
+        if (!tempDir.mkdirs()) {
+            throw new IOException("Failed to create " + tempDir);
+        }
+        int count = 0;
+        try {
+            for (String title : titles) {
+                if (title.contains("/")) {
+                    // not a valid file name, and there are no such titles in the catalogs
+                    continue;
+                }
+                String html = fetchSummary(baseUrl, title, intervalMillis);
+                if (html != null) {
+                    Files.write(new File(tempDir, title + EXTENSION).toPath(), html.getBytes(StandardCharsets.UTF_8));
+                    count++;
+                }
+                sleep(intervalMillis);
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteDir(tempDir);
+            throw e;
+        }
+        deleteDir(outDir);
+        if (!tempDir.renameTo(outDir)) {
+            throw new IOException("Failed to move descriptions to " + outDir);
+        }
+        return count;
+    }
+
+    /**
+     * @return The titles of the pages of all the objects, without duplicates.
+     */
+    static List<String> readTitles(File namesFile, File nebulaeFile, File asterismsFile, Collection<String> planetNames)
+            throws IOException {
+        Set<String> titles = new LinkedHashSet<>();
+        for (String name : planetNames) {
+            titles.add(Util.transformObjectName(name));
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(nebulaeFile), StandardCharsets.UTF_8))) {
+            String line;
+            String[] lineArr;
+            while ((line = reader.readLine()) != null) {
+                // same format as read by NebulaLoader
+                lineArr = line.split(",");
+                if (line.startsWith("#") || lineArr.length < 8) {
+                    continue;
+                }
+                titles.add(Util.transformObjectName(lineArr[7]));
+            }
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(asterismsFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // named as by Asterism, from the abbreviation at the start of the line
+                line = line.trim();
+                if (line.length() == 0) {
+                    continue;
+                }
+                String abbreviation = line.split("\\s+")[0];
+                titles.add(Util.transformObjectName(Util.bayerExToFullName(Util.bayerToFullName(abbreviation))));
+            }
+        }
+        for (String name : StarCatalogCompiler.readNames(namesFile).values()) {
+            titles.add(Util.transformObjectName(name));
+        }
+        return new ArrayList<>(titles);
+    }
+
+    /**
+     * @return The summary HTML of the given page, or null if there's no such page.
+     */
+    private static String fetchSummary(String baseUrl, String title, long retryMillis) throws IOException {
+        URL url = new URL(baseUrl + URLEncoder.encode(title, "UTF-8").replace("+", "%20"));
+        for (int retries = 0; ; retries++) {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            try {
+                connection.setConnectTimeout(TIMEOUT_MILLIS);
+                connection.setReadTimeout(TIMEOUT_MILLIS);
+                connection.setRequestProperty("User-Agent", USER_AGENT);
+                int code = connection.getResponseCode();
+                if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+                    return null;
+                } else if ((code == HTTP_TOO_MANY_REQUESTS || code == HttpURLConnection.HTTP_UNAVAILABLE)
+                        && retries < MAX_RETRIES) {
+                    // back off, for as long as the server asks if it does
+                    long delay = retryMillis << retries;
+                    String retryAfter = connection.getHeaderField("Retry-After");
+                    if (retryAfter != null && retryAfter.matches("\\d+")) {
+                        delay = Long.parseLong(retryAfter) * 1000;
+                    }
+                    sleep(delay);
+                    continue;
+                } else if (code != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Failed to fetch " + title + ": HTTP " + code);
+                }
+                JSONObject json = new JSONObject(readAll(connection.getInputStream()));
+                return json.has("extract_html") ? json.getString("extract_html") : null;
+            } catch (JSONException e) {
+                throw new IOException("Failed to parse " + title, e);
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = stream.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void deleteDir(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.deleteIfExists(dir.toPath());
+    }
+}
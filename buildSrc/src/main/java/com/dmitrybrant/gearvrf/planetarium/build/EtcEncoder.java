@@ -0,0 +1,386 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium.build;
+
+/**
+ * Encoder (and decoder, for measuring the error) of 4x4 pixel blocks in the ETC2 RGB8 and
+ * ETC2 RGBA8 (EAC) formats.
+ *
+ * Color is encoded using the individual and differential modes that ETC2 inherits from
+ * ETC1, trying both orientations of the sub-blocks, which is enough for the smooth
+ * imagery of planets and nebulae. Alpha is encoded with an EAC block, searching all of
+ * the modifier tables around the range of the block's alpha values.
+ *
+ * Pixels are given as packed ARGB ints, in rows. Blocks are written big-endian, as the
+ * formats specify.
+ */
+public class EtcEncoder {
+    public static final int BLOCK_BYTES_RGB = 8;
+    public static final int BLOCK_BYTES_RGBA = 16;
+
+    private static final int[][] COLOR_MODIFIERS = {
+            { 2, 8 }, { 5, 17 }, { 9, 29 }, { 13, 42 }, { 18, 60 }, { 24, 80 }, { 33, 106 }, { 47, 183 }
+    };
+    private static final int[][] ALPHA_MODIFIERS = {
+            { -3, -6, -9, -15, 2, 5, 8, 14 },
+            { -3, -7, -10, -13, 2, 6, 9, 12 },
+            { -2, -5, -8, -13, 1, 4, 7, 12 },
+            { -2, -4, -6, -13, 1, 3, 5, 12 },
+            { -3, -6, -8, -12, 2, 5, 7, 11 },
+            { -3, -7, -9, -11, 2, 6, 8, 10 },
+            { -4, -7, -8, -11, 3, 6, 7, 10 },
+            { -3, -5, -8, -11, 2, 4, 7, 10 },
+            { -2, -6, -8, -10, 1, 5, 7, 9 },
+            { -2, -5, -8, -10, 1, 4, 7, 9 },
+            { -2, -4, -8, -10, 1, 3, 7, 9 },
+            { -2, -5, -7, -10, 1, 4, 6, 9 },
+            { -3, -4, -7, -10, 2, 3, 6, 9 },
+            { -1, -2, -3, -10, 0, 1, 2, 9 },
+            { -4, -6, -8, -9, 3, 5, 7, 8 },
+            { -3, -5, -7, -9, 2, 4, 6, 8 },
+    };
+
+    /**
+     * Encode one 4x4 block of color.
+     * @param block The 16 pixels of the block, in rows.
+     * @param out Receives the 8 bytes of the block.
+     */
+    public static void encodeColor(int[] block, byte[] out, int offset) {
+        long best = 0;
+        long bestError = Long.MAX_VALUE;
+        int[] sub = new int[8];
+        for (int flip = 0; flip < 2; flip++) {
+            for (int differential = 0; differential < 2; differential++) {
+                int[][] bases = new int[2][];
+                for (int half = 0; half < 2; half++) {
+                    subBlock(block, flip, half, sub);
+                    bases[half] = averageColor(sub);
+                }
+                int[][] quantized = quantizeBases(bases, differential == 1);
+                if (quantized == null) {
+                    continue;
+                }
+                long bits = (long) differential << 33 | (long) flip << 32;
+                long error = 0;
+                for (int half = 0; half < 2; half++) {
+                    subBlock(block, flip, half, sub);
+                    long[] result = encodeSubBlock(sub, quantized[half], differential == 1);
+                    error += result[0];
+                    bits |= result[1] << (half == 0 ? 37 : 34);
+                    bits |= pixelIndexBits(result[2], flip, half);
+                }
+                if (error < bestError) {
+                    bestError = error;
+                    best = bits | colorBits(quantized, differential == 1);
+                }
+            }
+        }
+        putLong(out, offset, best);
+    }
+
+    /**
+     * Encode the alpha of one 4x4 block as an EAC block.
+     * @param block The 16 pixels of the block, in rows.
+     * @param out Receives the 8 bytes of the block.
+     */
+    public static void encodeAlpha(int[] block, byte[] out, int offset) {
+        int min = 255, max = 0;
+        int[] alpha = new int[16];
+        for (int i = 0; i < 16; i++) {
+            // EAC indices are in columns
+            alpha[i] = block[(i % 4) * 4 + i / 4] >>> 24;
+            min = Math.min(min, alpha[i]);
+            max = Math.max(max, alpha[i]);
+        }
+        if (min == max) {
+            // table 13 has a modifier of zero
+            putLong(out, offset, (long) min << 56 | 1L << 52 | 13L << 48 | indexRepeat(4));
+            return;
+        }
+
+        long best = 0;
+        long bestError = Long.MAX_VALUE;
+        for (int table = 0; table < ALPHA_MODIFIERS.length; table++) {
+            int[] mods = ALPHA_MODIFIERS[table];
+            int span = mods[7] - mods[3];
+            int center = (min + max + 1) / 2;
+            int idealMultiplier = Math.max(1, Math.min(15, Math.round((float) (max - min) / span)));
+            for (int multiplier = Math.max(1, idealMultiplier - 1); multiplier <= Math.min(15, idealMultiplier + 1); multiplier++) {
+                int midOffset = (mods[7] + mods[3]) * multiplier / 2;
+                for (int base = center - midOffset - 2; base <= center - midOffset + 2; base++) {
+                    if (base < 0 || base > 255) {
+                        continue;
+                    }
+                    long error = 0;
+                    long indices = 0;
+                    for (int i = 0; i < 16 && error < bestError; i++) {
+                        int bestIndex = 0;
+                        int bestDiff = Integer.MAX_VALUE;
+                        for (int m = 0; m < 8; m++) {
+                            int diff = clamp(base + mods[m] * multiplier) - alpha[i];
+                            diff *= diff;
+                            if (diff < bestDiff) {
+                                bestDiff = diff;
+                                bestIndex = m;
+                            }
+                        }
+                        error += bestDiff;
+                        indices |= (long) bestIndex << (45 - 3 * i);
+                    }
+                    if (error < bestError) {
+                        bestError = error;
+                        best = (long) base << 56 | (long) multiplier << 52 | (long) table << 48 | indices;
+                    }
+                }
+            }
+        }
+        putLong(out, offset, best);
+    }
+
+    /**
+     * Decode one color block (as written by encodeColor()) into 16 pixels, in rows, with
+     * an opaque alpha.
+     */
+    public static void decodeColor(byte[] in, int offset, int[] block) {
+        long bits = getLong(in, offset);
+        boolean differential = (bits >> 33 & 1) == 1;
+        int flip = (int) (bits >> 32 & 1);
+        int[][] bases = new int[2][3];
+        for (int c = 0; c < 3; c++) {
+            int shift = 59 - c * 8;
+            if (differential) {
+                int base = (int) (bits >> shift & 0x1F);
+                int delta = (int) (bits >> (shift - 3) & 7);
+                delta = delta >= 4 ? delta - 8 : delta;
+                bases[0][c] = expand5(base);
+                bases[1][c] = expand5(base + delta);
+            } else {
+                bases[0][c] = expand4((int) (bits >> (shift + 1) & 0xF));
+                bases[1][c] = expand4((int) (bits >> (shift - 3) & 0xF));
+            }
+        }
+        int[] tables = { (int) (bits >> 37 & 7), (int) (bits >> 34 & 7) };
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                int half = flip == 0 ? x / 2 : y / 2;
+                int i = x * 4 + y;
+                int index = (int) ((bits >> (16 + i) & 1) << 1 | (bits >> i & 1));
+                int modifier = modifierOf(tables[half], index);
+                int r = clamp(bases[half][0] + modifier);
+                int g = clamp(bases[half][1] + modifier);
+                int b = clamp(bases[half][2] + modifier);
+                block[y * 4 + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+    }
+
+    /**
+     * Decode one EAC alpha block (as written by encodeAlpha()) into the alpha of the given
+     * 16 pixels, in rows.
+     */
+    public static void decodeAlpha(byte[] in, int offset, int[] block) {
+        long bits = getLong(in, offset);
+        int base = (int) (bits >>> 56);
+        int multiplier = (int) (bits >> 52 & 0xF);
+        int[] mods = ALPHA_MODIFIERS[(int) (bits >> 48 & 0xF)];
+        for (int i = 0; i < 16; i++) {
+            int a = clamp(base + mods[(int) (bits >> (45 - 3 * i) & 7)] * multiplier);
+            int p = (i % 4) * 4 + i / 4;
+            block[p] = (block[p] & 0xFFFFFF) | a << 24;
+        }
+    }
+
+    /**
+     * Extract the 8 pixels of one half of a block: the left and right halves if flip is 0,
+     * or the top and bottom halves if it's 1.
+     */
+    private static void subBlock(int[] block, int flip, int half, int[] sub) {
+        int n = 0;
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                if ((flip == 0 ? x / 2 : y / 2) == half) {
+                    sub[n++] = block[y * 4 + x];
+                }
+            }
+        }
+    }
+
+    private static int[] averageColor(int[] pixels) {
+        int r = 0, g = 0, b = 0;
+        for (int p : pixels) {
+            r += (p >> 16) & 0xFF;
+            g += (p >> 8) & 0xFF;
+            b += p & 0xFF;
+        }
+        return new int[] { (r + 4) / 8, (g + 4) / 8, (b + 4) / 8 };
+    }
+
+    /**
+     * Quantize the base colors of the two halves to 4 bits each (individual mode), or to
+     * 5 bits and a 3-bit difference (differential mode).
+     * @return The quantized colors, or null if they're too far apart for differential mode.
+     */
+    private static int[][] quantizeBases(int[][] bases, boolean differential) {
+        int[][] q = new int[2][3];
+        for (int c = 0; c < 3; c++) {
+            if (differential) {
+                q[0][c] = (bases[0][c] * 31 + 127) / 255;
+                q[1][c] = (bases[1][c] * 31 + 127) / 255;
+                int delta = q[1][c] - q[0][c];
+                if (delta < -4 || delta > 3) {
+                    return null;
+                }
+            } else {
+                q[0][c] = (bases[0][c] * 15 + 127) / 255;
+                q[1][c] = (bases[1][c] * 15 + 127) / 255;
+            }
+        }
+        return q;
+    }
+
+    private static long colorBits(int[][] q, boolean differential) {
+        long bits = 0;
+        for (int c = 0; c < 3; c++) {
+            int shift = 59 - c * 8;
+            if (differential) {
+                bits |= (long) q[0][c] << shift;
+                bits |= (long) ((q[1][c] - q[0][c]) & 7) << (shift - 3);
+            } else {
+                bits |= (long) q[0][c] << (shift + 1);
+                bits |= (long) q[1][c] << (shift - 3);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Find the best modifier table for the given half of a block, trying the quantized
+     * base color and its neighbors in brightness.
+     * @return The squared error, the table, and the 2-bit index of each of the 8 pixels.
+     */
+    private static long[] encodeSubBlock(int[] sub, int[] quantized, boolean differential) {
+        int max = differential ? 31 : 15;
+        long bestError = Long.MAX_VALUE;
+        long bestTable = 0;
+        long bestIndices = 0;
+        int[] bestBase = quantized;
+        for (int shift = -1; shift <= 1; shift++) {
+            int[] q = { quantized[0] + shift, quantized[1] + shift, quantized[2] + shift };
+            if (shift != 0 && (differential || Math.min(q[0], Math.min(q[1], q[2])) < 0 || Math.max(q[0], Math.max(q[1], q[2])) > max)) {
+                // in differential mode the halves are tied together, so leave the base alone
+                continue;
+            }
+            int r = differential ? expand5(q[0]) : expand4(q[0]);
+            int g = differential ? expand5(q[1]) : expand4(q[1]);
+            int b = differential ? expand5(q[2]) : expand4(q[2]);
+            for (int table = 0; table < 8; table++) {
+                long error = 0;
+                long indices = 0;
+                for (int i = 0; i < 8 && error < bestError; i++) {
+                    int pr = (sub[i] >> 16) & 0xFF, pg = (sub[i] >> 8) & 0xFF, pb = sub[i] & 0xFF;
+                    int bestDiff = Integer.MAX_VALUE;
+                    int bestIndex = 0;
+                    for (int index = 0; index < 4; index++) {
+                        int modifier = modifierOf(table, index);
+                        int dr = clamp(r + modifier) - pr;
+                        int dg = clamp(g + modifier) - pg;
+                        int db = clamp(b + modifier) - pb;
+                        int diff = dr * dr + dg * dg + db * db;
+                        if (diff < bestDiff) {
+                            bestDiff = diff;
+                            bestIndex = index;
+                        }
+                    }
+                    error += bestDiff;
+                    indices |= (long) bestIndex << (2 * i);
+                }
+                if (error < bestError) {
+                    bestError = error;
+                    bestTable = table;
+                    bestIndices = indices;
+                    bestBase = q;
+                }
+            }
+        }
+        System.arraycopy(bestBase, 0, quantized, 0, 3);
+        return new long[] { bestError, bestTable, bestIndices };
+    }
+
+    /**
+     * Place the 2-bit indices of the pixels of one half of a block (in the order given by
+     * subBlock()) into the index bits of the block, which are ordered by column.
+     */
+    private static long pixelIndexBits(long indices, int flip, int half) {
+        long bits = 0;
+        int n = 0;
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                if ((flip == 0 ? x / 2 : y / 2) != half) {
+                    continue;
+                }
+                int index = (int) (indices >> (2 * n++) & 3);
+                int i = x * 4 + y;
+                bits |= (long) (index >> 1) << (16 + i) | (long) (index & 1) << i;
+            }
+        }
+        return bits;
+    }
+
+    private static int modifierOf(int table, int index) {
+        int[] mods = COLOR_MODIFIERS[table];
+        switch (index) {
+            case 0: return mods[0];
+            case 1: return mods[1];
+            case 2: return -mods[0];
+            default: return -mods[1];
+        }
+    }
+
+    private static long indexRepeat(int index) {
+        long bits = 0;
+        for (int i = 0; i < 16; i++) {
+            bits |= (long) index << (45 - 3 * i);
+        }
+        return bits;
+    }
+
+    private static int expand4(int c) {
+        return c << 4 | c;
+    }
+
+    private static int expand5(int c) {
+        return c << 3 | c >> 2;
+    }
+
+    private static int clamp(int c) {
+        return c < 0 ? 0 : (c > 255 ? 255 : c);
+    }
+
+    private static void putLong(byte[] out, int offset, long bits) {
+        for (int i = 0; i < 8; i++) {
+            out[offset + i] = (byte) (bits >>> (56 - 8 * i));
+        }
+    }
+
+    private static long getLong(byte[] in, int offset) {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = bits << 8 | (in[offset + i] & 0xFF);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,247 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium.build;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Converts the JPEG and PNG textures of the planets and nebulae into ETC2-compressed KTX
+ * files, with a full chain of mipmaps, which the GPU samples directly with no decoding.
+ * Images with any transparency become ETC2 RGBA8 (one byte per texel), and the others
+ * ETC2 RGB8 (half a byte per texel), compared with four bytes per texel for the decoded
+ * images.
+ *
+ * Each mipmap is reduced from the one above it by averaging 2x2 pixels. The KTX files
+ * are written in version 1 of the format, little-endian, with no key/value data.
+ *
+ * Alongside each texture, a placeholder with only the smallest mipmaps (from
+ * PLACEHOLDER_SIZE down) is written into the "small" subdirectory, to be shown until the
+ * full texture is needed (see TextureResidencyManager).
+ */
+public class KtxTextureCompiler {
+    private static final byte[] KTX_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int GL_RGB = 0x1907;
+    private static final int GL_RGBA = 0x1908;
+    private static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    private static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+    public static final int PLACEHOLDER_SIZE = 32;
+    public static final String PLACEHOLDER_DIR = "small";
+
+    /**
+     * Convert every .jpg and .png image in the given directory to a .ktx file of the same
+     * name in the output directory, and a placeholder of the same name in its "small"
+     * subdirectory.
+     * @return A summary of each texture, for the build log.
+     */
+    public static List<String> compileAll(File srcDir, File outDir) throws IOException {
+        List<String> summaries = new ArrayList<>();
+        File[] files = srcDir.listFiles((d, name) -> name.endsWith(".jpg") || name.endsWith(".png"));
+        if (files == null) {
+            return summaries;
+        }
+        outDir.mkdirs();
+        for (File file : files) {
+            String name = file.getName().substring(0, file.getName().lastIndexOf('.'));
+            summaries.add(compile(file, new File(outDir, name + ".ktx"), new File(new File(outDir, PLACEHOLDER_DIR), name + ".ktx")));
+        }
+        return summaries;
+    }
+
+    /**
+     * @return A summary of the texture: its size, format, number of mipmaps, and the
+     * PSNR of its largest mipmap.
+     */
+    public static String compile(File srcFile, File outFile, File placeholderFile) throws IOException {
+        BufferedImage image = ImageIO.read(srcFile);
+        if (image == null) {
+            throw new IOException("Unsupported image: " + srcFile);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        boolean alpha = false;
+        for (int p : pixels) {
+            if (p >>> 24 != 0xFF) {
+                alpha = true;
+                break;
+            }
+        }
+
+        List<byte[]> levels = new ArrayList<>();
+        int placeholderLevel = -1;
+        int placeholderWidth = 1;
+        int placeholderHeight = 1;
+        double psnr = 0;
+        while (true) {
+            if (placeholderLevel < 0 && Math.max(width, height) <= PLACEHOLDER_SIZE) {
+                placeholderLevel = levels.size();
+                placeholderWidth = width;
+                placeholderHeight = height;
+            }
+            byte[] data = encode(pixels, width, height, alpha);
+            if (levels.isEmpty()) {
+                psnr = psnr(pixels, decode(data, width, height, alpha), alpha);
+            }
+            levels.add(data);
+            if (width == 1 && height == 1) {
+                break;
+            }
+            int newWidth = Math.max(1, width / 2);
+            int newHeight = Math.max(1, height / 2);
+            pixels = reduce(pixels, width, height, newWidth, newHeight);
+            width = newWidth;
+            height = newHeight;
+        }
+
+        writeKtx(outFile, image.getWidth(), image.getHeight(), alpha, levels);
+        writeKtx(placeholderFile, placeholderWidth, placeholderHeight, alpha, levels.subList(placeholderLevel, levels.size()));
+        return String.format("%s: %dx%d %s, %d levels, PSNR %.1f dB", outFile.getName(),
+                image.getWidth(), image.getHeight(), alpha ? "RGBA8" : "RGB8", levels.size(), psnr);
+    }
+
+    /**
+     * Encode an image into blocks, in rows of blocks. Pixels beyond the edges of images that
+     * aren't a multiple of 4 in size are filled by repeating the edge.
+     */
+    public static byte[] encode(int[] pixels, int width, int height, boolean alpha) {
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        int blockBytes = alpha ? EtcEncoder.BLOCK_BYTES_RGBA : EtcEncoder.BLOCK_BYTES_RGB;
+        byte[] data = new byte[blocksX * blocksY * blockBytes];
+        IntStream.range(0, blocksY).parallel().forEach(by -> {
+            int[] block = new int[16];
+            for (int bx = 0; bx < blocksX; bx++) {
+                for (int y = 0; y < 4; y++) {
+                    for (int x = 0; x < 4; x++) {
+                        int px = Math.min(bx * 4 + x, width - 1);
+                        int py = Math.min(by * 4 + y, height - 1);
+                        block[y * 4 + x] = pixels[py * width + px];
+                    }
+                }
+                int offset = (by * blocksX + bx) * blockBytes;
+                if (alpha) {
+                    EtcEncoder.encodeAlpha(block, data, offset);
+                    EtcEncoder.encodeColor(block, data, offset + 8);
+                } else {
+                    EtcEncoder.encodeColor(block, data, offset);
+                }
+            }
+        });
+        return data;
+    }
+
+    public static int[] decode(byte[] data, int width, int height, boolean alpha) {
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        int blockBytes = alpha ? EtcEncoder.BLOCK_BYTES_RGBA : EtcEncoder.BLOCK_BYTES_RGB;
+        int[] pixels = new int[width * height];
+        int[] block = new int[16];
+        for (int by = 0; by < blocksY; by++) {
+            for (int bx = 0; bx < blocksX; bx++) {
+                int offset = (by * blocksX + bx) * blockBytes;
+                if (alpha) {
+                    EtcEncoder.decodeColor(data, offset + 8, block);
+                    EtcEncoder.decodeAlpha(data, offset, block);
+                } else {
+                    EtcEncoder.decodeColor(data, offset, block);
+                }
+                for (int y = 0; y < 4 && by * 4 + y < height; y++) {
+                    for (int x = 0; x < 4 && bx * 4 + x < width; x++) {
+                        pixels[(by * 4 + y) * width + bx * 4 + x] = block[y * 4 + x];
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * @return The peak signal-to-noise ratio of the decoded image against the original,
+     * in decibels, over the color channels (and alpha, if it's included).
+     */
+    public static double psnr(int[] original, int[] decoded, boolean alpha) {
+        double sum = 0;
+        int channels = alpha ? 4 : 3;
+        for (int i = 0; i < original.length; i++) {
+            for (int c = 0; c < channels; c++) {
+                int d = ((original[i] >>> (c * 8)) & 0xFF) - ((decoded[i] >>> (c * 8)) & 0xFF);
+                sum += d * d;
+            }
+        }
+        double mse = sum / ((double) original.length * channels);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10.0 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    private static int[] reduce(int[] pixels, int width, int height, int newWidth, int newHeight) {
+        int[] out = new int[newWidth * newHeight];
+        for (int y = 0; y < newHeight; y++) {
+            for (int x = 0; x < newWidth; x++) {
+                int x0 = Math.min(x * 2, width - 1), x1 = Math.min(x * 2 + 1, width - 1);
+                int y0 = Math.min(y * 2, height - 1), y1 = Math.min(y * 2 + 1, height - 1);
+                int result = 0;
+                for (int shift = 0; shift <= 24; shift += 8) {
+                    int sum = ((pixels[y0 * width + x0] >>> shift) & 0xFF) + ((pixels[y0 * width + x1] >>> shift) & 0xFF)
+                            + ((pixels[y1 * width + x0] >>> shift) & 0xFF) + ((pixels[y1 * width + x1] >>> shift) & 0xFF);
+                    result |= ((sum + 2) / 4) << shift;
+                }
+                out[y * newWidth + x] = result;
+            }
+        }
+        return out;
+    }
+
+    private static void writeKtx(File outFile, int width, int height, boolean alpha, List<byte[]> levels) throws IOException {
+        outFile.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.write(KTX_IDENTIFIER);
+            writeIntLE(out, 0x04030201);
+            writeIntLE(out, 0); // glType (compressed)
+            writeIntLE(out, 1); // glTypeSize
+            writeIntLE(out, 0); // glFormat (compressed)
+            writeIntLE(out, alpha ? GL_COMPRESSED_RGBA8_ETC2_EAC : GL_COMPRESSED_RGB8_ETC2);
+            writeIntLE(out, alpha ? GL_RGBA : GL_RGB);
+            writeIntLE(out, width);
+            writeIntLE(out, height);
+            writeIntLE(out, 0); // pixelDepth
+            writeIntLE(out, 0); // numberOfArrayElements
+            writeIntLE(out, 1); // numberOfFaces
+            writeIntLE(out, levels.size());
+            writeIntLE(out, 0); // bytesOfKeyValueData
+            // blocks are 8 or 16 bytes, so every level is already aligned to 4 bytes
+            for (byte[] level : levels) {
+                writeIntLE(out, level.length);
+                out.write(level);
+            }
+        }
+    }
+
+    private static void writeIntLE(DataOutputStream out, int value) throws IOException {
+        out.writeInt(Integer.reverseBytes(value));
+    }
+}
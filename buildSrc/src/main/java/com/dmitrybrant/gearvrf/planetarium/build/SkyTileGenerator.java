@@ -0,0 +1,205 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium.build;
+
+import com.dmitrybrant.gearvrf.planetarium.SkyTiles;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Cuts the equirectangular sky map into the pyramid of cube-face tiles described by
+ * SkyTiles, which SkyTileManager streams in at runtime.
+ *
+ * The source image is mapped onto the sky exactly as the single textured sphere used to
+ * be: longitude runs along the width, and the first row is the south pole of the map.
+ * The deepest level is made as sharp as the source image allows, by sampling the source
+ * bilinearly (at four points per pixel), and each level above it is reduced from the
+ * level below by averaging blocks of 2x2 pixels.
+ */
+public class SkyTileGenerator {
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private final int[] source;
+    private final int sourceWidth;
+    private final int sourceHeight;
+
+    private SkyTileGenerator(BufferedImage image) {
+        sourceWidth = image.getWidth();
+        sourceHeight = image.getHeight();
+        source = image.getRGB(0, 0, sourceWidth, sourceHeight, null, 0, sourceWidth);
+    }
+
+    public static void generate(File sourceFile, File outDir) throws IOException {
+        BufferedImage image = ImageIO.read(sourceFile);
+        if (image == null) {
+            throw new IOException("Unsupported sky map: " + sourceFile);
+        }
+        SkyTileGenerator generator = new SkyTileGenerator(image);
+
+        // a face covers a quarter of the width of the map
+        int levels = 1;
+        while (SkyTiles.TILE_SIZE * SkyTiles.tilesAcross(levels) <= generator.sourceWidth / 4) {
+            levels++;
+        }
+
+        int maxLevel = levels - 1;
+        int size = SkyTiles.TILE_SIZE;
+        for (int face = 0; face < SkyTiles.FACES; face++) {
+            // every level of one face at a time, so that only one face is held in memory
+            int across = SkyTiles.tilesAcross(maxLevel);
+            int[][] tiles = new int[across * across][];
+            for (int y = 0; y < across; y++) {
+                for (int x = 0; x < across; x++) {
+                    tiles[y * across + x] = generator.sampleTile(maxLevel, face, x, y);
+                    writeTile(outDir, maxLevel, face, x, y, tiles[y * across + x]);
+                }
+            }
+            for (int level = maxLevel - 1; level >= 0; level--) {
+                int childAcross = across;
+                across = SkyTiles.tilesAcross(level);
+                int[][] parents = new int[across * across][];
+                for (int y = 0; y < across; y++) {
+                    for (int x = 0; x < across; x++) {
+                        int[] pixels = new int[size * size];
+                        for (int q = 0; q < 4; q++) {
+                            int[] child = tiles[(y * 2 + q / 2) * childAcross + x * 2 + q % 2];
+                            reduce(child, pixels, (q % 2) * size / 2, (q / 2) * size / 2);
+                        }
+                        parents[y * across + x] = pixels;
+                        writeTile(outDir, level, face, x, y, pixels);
+                    }
+                }
+                tiles = parents;
+            }
+        }
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(outDir, "levels.txt")), StandardCharsets.UTF_8)) {
+            writer.write(Integer.toString(levels));
+        }
+    }
+
+    private int[] sampleTile(int level, int face, int tileX, int tileY) {
+        int size = SkyTiles.TILE_SIZE;
+        int across = SkyTiles.tilesAcross(level);
+        double[] dir = new double[3];
+        int[] pixels = new int[size * size];
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                int r = 0, g = 0, b = 0;
+                for (int sub = 0; sub < 4; sub++) {
+                    double s = (tileX + (i + 0.25 + 0.5 * (sub % 2)) / size) / across;
+                    double t = (tileY + (j + 0.25 + 0.5 * (sub / 2)) / size) / across;
+                    SkyTiles.faceDirection(face, s, t, dir);
+                    int rgb = sample(dir);
+                    r += (rgb >> 16) & 0xFF;
+                    g += (rgb >> 8) & 0xFF;
+                    b += rgb & 0xFF;
+                }
+                pixels[j * size + i] = ((r + 2) / 4) << 16 | ((g + 2) / 4) << 8 | (b + 2) / 4;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * @return The color of the source map in the given direction, interpolated bilinearly.
+     */
+    private int sample(double[] dir) {
+        // the sphere that the map was made for was turned by -90 degrees around Y
+        double len = Math.sqrt(dir[0] * dir[0] + dir[1] * dir[1] + dir[2] * dir[2]);
+        double lx = dir[2] / len;
+        double ly = dir[1] / len;
+        double lz = -dir[0] / len;
+        double u = Math.atan2(lz, lx) / (2.0 * Math.PI);
+        if (u < 0) {
+            u += 1.0;
+        }
+        double v = (Math.asin(Math.max(-1.0, Math.min(1.0, ly))) + Math.PI / 2.0) / Math.PI;
+
+        double px = u * sourceWidth - 0.5;
+        double py = Math.max(0.0, Math.min(sourceHeight - 1.0, v * sourceHeight - 0.5));
+        int x0 = (int) Math.floor(px);
+        int y0 = (int) py;
+        double fx = px - x0;
+        double fy = py - y0;
+        int x1 = Math.floorMod(x0 + 1, sourceWidth);
+        x0 = Math.floorMod(x0, sourceWidth);
+        int y1 = Math.min(y0 + 1, sourceHeight - 1);
+
+        int result = 0;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            double c00 = (source[y0 * sourceWidth + x0] >> shift) & 0xFF;
+            double c10 = (source[y0 * sourceWidth + x1] >> shift) & 0xFF;
+            double c01 = (source[y1 * sourceWidth + x0] >> shift) & 0xFF;
+            double c11 = (source[y1 * sourceWidth + x1] >> shift) & 0xFF;
+            double c = (c00 * (1 - fx) + c10 * fx) * (1 - fy) + (c01 * (1 - fx) + c11 * fx) * fy;
+            result |= ((int) Math.round(c)) << shift;
+        }
+        return result;
+    }
+
+    /**
+     * Average each 2x2 block of the source tile into one pixel of the given quarter of
+     * the destination tile.
+     */
+    private static void reduce(int[] src, int[] dst, int dstX, int dstY) {
+        int size = SkyTiles.TILE_SIZE;
+        for (int j = 0; j < size / 2; j++) {
+            for (int i = 0; i < size / 2; i++) {
+                int p = (j * 2) * size + i * 2;
+                int result = 0;
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int sum = ((src[p] >> shift) & 0xFF) + ((src[p + 1] >> shift) & 0xFF)
+                            + ((src[p + size] >> shift) & 0xFF) + ((src[p + size + 1] >> shift) & 0xFF);
+                    result |= ((sum + 2) / 4) << shift;
+                }
+                dst[(dstY + j) * size + dstX + i] = result;
+            }
+        }
+    }
+
+    private static void writeTile(File outDir, int level, int face, int x, int y, int[] pixels) throws IOException {
+        int size = SkyTiles.TILE_SIZE;
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, size, size, pixels, 0, size);
+
+        File file = new File(outDir, SkyTiles.assetPath(level, face, x, y).substring(SkyTiles.ASSET_DIR.length() + 1));
+        file.getParentFile().mkdirs();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
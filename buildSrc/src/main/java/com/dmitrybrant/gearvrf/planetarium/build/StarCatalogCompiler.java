@@ -0,0 +1,177 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dmitrybrant.gearvrf.planetarium.build;
+
+import com.dmitrybrant.gearvrf.planetarium.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the plain-text star database (stars.txt and starnames.txt) into the binary
+ * catalog that is loaded by StarLoader at runtime.
+ *
+ * Each line of stars.txt has the Hipparcos number, RA and Dec (degrees, J2000), distance,
+ * magnitude and spectral class, optionally followed by the proper motion in RA (times the
+ * cosine of the Dec) and in Dec, in milliarcseconds per year. Stars without proper motion
+ * are taken to be fixed.
+ *
+ * All values are big-endian. The file consists of:
+ *
+ * Header:
+ *   int magic ('STAR')
+ *   int version
+ *   int number of records
+ *   int size of each record, in bytes
+ *   int offset of the string table from the start of the file
+ *
+ * Records, sorted by right ascension:
+ *   int Hipparcos number
+ *   double right ascension (degrees)
+ *   double declination (degrees)
+ *   float distance
+ *   float magnitude
+ *   int offset of the name in the string table, or -1 if the star has no name
+ *   byte spectral class, as an index into Util.SPECTRAL_CLASSES, or -1 if unknown
+ *   three bytes of padding
+ *   float proper motion in RA, times cos(Dec) (milliarcseconds per year)
+ *   float proper motion in Dec (milliarcseconds per year)
+ *
+ * String table:
+ *   unsigned short length, followed by that many bytes of UTF-8.
+ */
+public class StarCatalogCompiler {
+    public static final int MAGIC = 0x53544152;
+    public static final int VERSION = 3;
+    public static final int HEADER_SIZE = 20;
+    public static final int RECORD_SIZE = 44;
+
+    private static class Star {
+        int hipNum;
+        double ra;
+        double dec;
+        float dist;
+        float mag;
+        String name;
+        String className;
+        float pmRa;
+        float pmDec;
+    }
+
+    public static void compile(File starsFile, File namesFile, File outFile) throws IOException {
+        List<Star> stars = readStars(starsFile);
+        Map<Integer, String> names = readNames(namesFile);
+        for (Star star : stars) {
+            star.name = names.get(star.hipNum);
+        }
+        stars.sort((lhs, rhs) -> Double.compare(lhs.ra, rhs.ra));
+
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream strings = new DataOutputStream(stringBytes);
+        Map<String, Integer> stringOffsets = new HashMap<>();
+
+        outFile.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stars.size());
+            out.writeInt(RECORD_SIZE);
+            out.writeInt(HEADER_SIZE + stars.size() * RECORD_SIZE);
+
+            for (Star star : stars) {
+                out.writeInt(star.hipNum);
+                out.writeDouble(star.ra);
+                out.writeDouble(star.dec);
+                out.writeFloat(star.dist);
+                out.writeFloat(star.mag);
+                out.writeInt(star.name == null ? -1 : putString(strings, stringOffsets, star.name));
+                out.writeByte(Util.spectralClassCode(star.className));
+                out.write(new byte[3]);
+                out.writeFloat(star.pmRa);
+                out.writeFloat(star.pmDec);
+            }
+            strings.flush();
+            stringBytes.writeTo(out);
+        }
+    }
+
+    private static int putString(DataOutputStream strings, Map<String, Integer> offsets, String str) throws IOException {
+        Integer offset = offsets.get(str);
+        if (offset == null) {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            offset = strings.size();
+            strings.writeShort(bytes.length);
+            strings.write(bytes);
+            offsets.put(str, offset);
+        }
+        return offset;
+    }
+
+    private static List<Star> readStars(File file) throws IOException {
+        List<Star> stars = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            String[] lineArr;
+            while ((line = reader.readLine()) != null) {
+                lineArr = line.trim().split("\\s+");
+                if (lineArr.length < 6) {
+                    continue;
+                }
+                Star s = new Star();
+                s.hipNum = Integer.parseInt(lineArr[0]);
+                s.ra = Double.parseDouble(lineArr[1]);
+                s.dec = Double.parseDouble(lineArr[2]);
+                s.dist = (float) Double.parseDouble(lineArr[3]);
+                s.mag = Float.parseFloat(lineArr[4]);
+                s.className = lineArr[5];
+                if (lineArr.length >= 8) {
+                    s.pmRa = Float.parseFloat(lineArr[6]);
+                    s.pmDec = Float.parseFloat(lineArr[7]);
+                }
+                stars.add(s);
+            }
+        }
+        return stars;
+    }
+
+    static Map<Integer, String> readNames(File file) throws IOException {
+        Map<Integer, String> names = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            String[] lineArr;
+            while ((line = reader.readLine()) != null) {
+                lineArr = line.split(":");
+                if (lineArr.length < 2) {
+                    continue;
+                }
+                names.put(Integer.parseInt(lineArr[0].trim()), Util.transformStarName(lineArr[1]));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,124 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Packs the small set of descriptions that the app's tests read (see
+ * DescriptionDatabaseTest), and checks that it has the same contents as the database that
+ * the app is tested against. The compressed bytes aren't compared, since they may differ
+ * between versions of zlib.
+ */
+public class DescriptionDbPackerTest {
+    private static final File FIXTURE_DIR = new File("../app/src/test/resources/catalog");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private ByteBuffer pack(File dir) throws IOException {
+        File outFile = new File(tempFolder.getRoot(), "descriptions.bin");
+        DescriptionDbPacker.pack(dir, outFile);
+        return ByteBuffer.wrap(Files.readAllBytes(outFile.toPath()));
+    }
+
+    /**
+     * @return The title and inflated description of each entry, in the order of the index.
+     */
+    private static Map<String, String> read(ByteBuffer buffer) throws DataFormatException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        int count = buffer.getInt(8);
+        int titleTable = buffer.getInt(12);
+        for (int i = 0; i < count; i++) {
+            int pos = DescriptionDbPacker.HEADER_SIZE + i * DescriptionDbPacker.ENTRY_SIZE;
+            int titlePos = titleTable + buffer.getInt(pos);
+            byte[] title = new byte[buffer.getShort(titlePos) & 0xFFFF];
+            System.arraycopy(buffer.array(), titlePos + 2, title, 0, title.length);
+
+            byte[] html = new byte[buffer.getInt(pos + 12)];
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(buffer.array(), buffer.getInt(pos + 4), buffer.getInt(pos + 8));
+            assertEquals(html.length, inflater.inflate(html));
+            inflater.end();
+            entries.put(new String(title, StandardCharsets.UTF_8), new String(html, StandardCharsets.UTF_8));
+        }
+        return entries;
+    }
+
+    @Test
+    public void testMatchesFixture() throws Exception {
+        ByteBuffer expected = ByteBuffer.wrap(Files.readAllBytes(new File(FIXTURE_DIR, "descriptions.bin").toPath()));
+        assertEquals(read(expected), read(pack(new File(FIXTURE_DIR, "descriptions"))));
+    }
+
+    @Test
+    public void testContents() throws Exception {
+        File dir = new File(FIXTURE_DIR, "descriptions");
+        ByteBuffer buffer = pack(dir);
+        assertEquals(DescriptionDbPacker.MAGIC, buffer.getInt(0));
+        assertEquals(DescriptionDbPacker.VERSION, buffer.getInt(4));
+        assertEquals(5, buffer.getInt(8));
+        assertEquals(DescriptionDbPacker.HEADER_SIZE + 5 * DescriptionDbPacker.ENTRY_SIZE, buffer.getInt(12));
+
+        Map<String, String> entries = read(buffer);
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            String html = new String(Files.readAllBytes(new File(dir, entry.getKey() + ".html").toPath()), StandardCharsets.UTF_8);
+            assertEquals(html.trim(), entry.getValue());
+        }
+        assertTrue(entries.containsKey("ζ² Reticuli"));
+    }
+
+    @Test
+    public void testIndexSortedByUtf8() throws Exception {
+        byte[] prev = null;
+        for (String title : read(pack(new File(FIXTURE_DIR, "descriptions"))).keySet()) {
+            byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+            if (prev != null) {
+                assertTrue(DescriptionDbPacker.compareBytes(prev, bytes) < 0);
+            }
+            prev = bytes;
+        }
+    }
+
+    @Test
+    public void testEmptyDirectory() throws Exception {
+        ByteBuffer buffer = pack(tempFolder.newFolder("empty"));
+        assertEquals(DescriptionDbPacker.MAGIC, buffer.getInt(0));
+        assertEquals(0, buffer.getInt(8));
+        assertEquals(DescriptionDbPacker.HEADER_SIZE, buffer.capacity());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingDirectoryFails() throws IOException {
+        pack(new File(tempFolder.getRoot(), "missing"));
+    }
+}
@@ -0,0 +1,196 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium.build;
+
+import com.dmitrybrant.gearvrf.planetarium.Util;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DescriptionFetcherTest {
+    private static final File FIXTURE_DIR = new File("../app/src/test/resources/catalog");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+    // response body for each page title, or null for a server error
+    private final Map<String, String> pages = new ConcurrentHashMap<>();
+    private final List<String> requested = Collections.synchronizedList(new ArrayList<>());
+    // number of times to tell the client to slow down before answering, for each page title
+    private final Map<String, Integer> throttled = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/summary/", exchange -> {
+            String title = exchange.getRequestURI().getPath().substring("/summary/".length());
+            requested.add(title);
+            int code;
+            byte[] body;
+            if (throttled.getOrDefault(title, 0) > 0) {
+                throttled.put(title, throttled.get(title) - 1);
+                code = 429;
+                body = "Too many requests".getBytes(StandardCharsets.UTF_8);
+            } else if (!pages.containsKey(title)) {
+                code = 404;
+                body = "{\"type\":\"not_found\"}".getBytes(StandardCharsets.UTF_8);
+            } else if (pages.get(title).isEmpty()) {
+                code = 500;
+                body = "Server error".getBytes(StandardCharsets.UTF_8);
+            } else {
+                code = 200;
+                body = pages.get(title).getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.sendResponseHeaders(code, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/summary/";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static String summary(String html) {
+        return "{\"title\":\"x\",\"extract_html\":\"" + html.replace("\"", "\\\"") + "\"}";
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testFetch() throws IOException {
+        pages.put("Sirius", summary("<p><b>Sirius</b> is bright.</p>"));
+        pages.put("ζ² Reticuli", summary("<p>A \"twin\" star.</p>"));
+        File outDir = new File(tempFolder.getRoot(), "descriptions");
+
+        int count = DescriptionFetcher.fetch(Arrays.asList("Sirius", "ζ² Reticuli", "No such star"), outDir, baseUrl, 0);
+        assertEquals(2, count);
+        assertEquals(Arrays.asList("Sirius", "ζ² Reticuli", "No such star"), requested);
+        assertEquals("<p><b>Sirius</b> is bright.</p>", read(new File(outDir, "Sirius.html")));
+        assertEquals("<p>A \"twin\" star.</p>", read(new File(outDir, "ζ² Reticuli.html")));
+        assertFalse(new File(outDir, "No such star.html").exists());
+        assertFalse(new File(tempFolder.getRoot(), "descriptions.tmp").exists());
+    }
+
+    @Test
+    public void testFetchedDescriptionsCanBePacked() throws Exception {
+        pages.put("Sirius", summary("<p><b>Sirius</b> is bright.</p>"));
+        File outDir = new File(tempFolder.getRoot(), "descriptions");
+        DescriptionFetcher.fetch(Collections.singletonList("Sirius"), outDir, baseUrl, 0);
+        File dbFile = new File(tempFolder.getRoot(), "descriptions.bin");
+        DescriptionDbPacker.pack(outDir, dbFile);
+        assertEquals(1, ByteBuffer.wrap(Files.readAllBytes(dbFile.toPath())).getInt(8));
+    }
+
+    @Test
+    public void testServerErrorLeavesNothingBehind() throws IOException {
+        pages.put("Sirius", summary("<p>Bright.</p>"));
+        pages.put("Vega", "");
+        File outDir = new File(tempFolder.getRoot(), "descriptions");
+        try {
+            DescriptionFetcher.fetch(Arrays.asList("Sirius", "Vega"), outDir, baseUrl, 0);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Vega"));
+        }
+        assertFalse(outDir.exists());
+        assertFalse(new File(tempFolder.getRoot(), "descriptions.tmp").exists());
+    }
+
+    @Test
+    public void testRetryWhenThrottled() throws IOException {
+        pages.put("Sirius", summary("<p>Bright.</p>"));
+        throttled.put("Sirius", 2);
+        File outDir = new File(tempFolder.getRoot(), "descriptions");
+        assertEquals(1, DescriptionFetcher.fetch(Collections.singletonList("Sirius"), outDir, baseUrl, 1));
+        assertEquals(Arrays.asList("Sirius", "Sirius", "Sirius"), requested);
+        assertEquals("<p>Bright.</p>", read(new File(outDir, "Sirius.html")));
+    }
+
+    @Test
+    public void testGiveUpWhenThrottled() throws IOException {
+        pages.put("Sirius", summary("<p>Bright.</p>"));
+        throttled.put("Sirius", 100);
+        File outDir = new File(tempFolder.getRoot(), "descriptions");
+        try {
+            DescriptionFetcher.fetch(Collections.singletonList("Sirius"), outDir, baseUrl, 1);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("429"));
+        }
+        assertFalse(outDir.exists());
+        assertFalse(new File(tempFolder.getRoot(), "descriptions.tmp").exists());
+    }
+
+    @Test
+    public void testReadTitles() throws IOException {
+        File nebulaeFile = tempFolder.newFile("nebulae.txt");
+        Files.write(nebulaeFile.toPath(), ("\n# textureName, rightAscension(H, M, S), declination(D, M, S), name\n"
+                + "m1, 5, 34, 31.94, 22, 0, 52.2, Crab Nebula\n"
+                + "m42, 5, 35, 17.3, -5, 23, 28, Orion Nebula\n").getBytes(StandardCharsets.UTF_8));
+        File asterismsFile = tempFolder.newFile("asterisms.txt");
+        Files.write(asterismsFile.toPath(), ("Ori 2  27989 26727\n\nUMa 2  54061 53910\n")
+                .getBytes(StandardCharsets.UTF_8));
+        List<String> titles = DescriptionFetcher.readTitles(new File(FIXTURE_DIR, "starnames.txt"), nebulaeFile,
+                asterismsFile, Arrays.asList("Sun", "Mercury", "Sun"));
+
+        // planets are named as the app requests them, and duplicates are dropped
+        assertEquals("Sun", titles.get(0));
+        assertEquals("Mercury (planet)", titles.get(1));
+        assertEquals("Crab Nebula", titles.get(2));
+        assertEquals("Orion Nebula", titles.get(3));
+        // constellations are named as Asterism names them
+        assertEquals("Orion", titles.get(4));
+        assertEquals("Ursa Major", titles.get(5));
+        // and then the star names, in the form that the catalog stores them
+        assertTrue(titles.contains("Sirius"));
+        assertTrue(titles.contains(Util.transformStarName("SIG Oct")));
+        assertEquals(titles.size(), new HashSet<>(titles).size());
+    }
+}
@@ -0,0 +1,210 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium.build;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes hand-assembled reference blocks (with the expected pixels worked out from the
+ * ETC1 and EAC tables of the ETC2 specification), and checks the KTX files written for a
+ * small generated image.
+ */
+public class KtxTextureCompilerTest {
+    private static final byte[] KTX_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int KTX_HEADER_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static byte[] bytes(long bits) {
+        return ByteBuffer.allocate(8).putLong(bits).array();
+    }
+
+    private static int rgb(int r, int g, int b) {
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+    @Test
+    public void testDecodeIndividualBlock() {
+        // individual mode, left and right halves:
+        // bases (8, 4, 2) and (1, 12, 15) in 4 bits, tables 0 and 7,
+        // pixel (x, y) has index (x + y) % 4
+        int[] block = new int[16];
+        EtcEncoder.decodeColor(bytes(0x814C2F1C936C5A5AL), 0, block);
+
+        // base (136, 68, 34), modifiers +2, +8, -2, -8
+        int[] left = { rgb(138, 70, 36), rgb(144, 76, 42), rgb(134, 66, 32), rgb(128, 60, 26) };
+        // base (17, 204, 255), modifiers +47, +183, -47, -183, clamped
+        int[] right = { rgb(64, 251, 255), rgb(200, 255, 255), rgb(0, 157, 208), rgb(0, 21, 72) };
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                int[] half = x < 2 ? left : right;
+                assertEquals("pixel " + x + "," + y, half[(x + y) % 4], block[y * 4 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeDifferentialBlock() {
+        // differential mode, flipped into top and bottom halves:
+        // base (20, 10, 31) in 5 bits with deltas (-3, +3, 0), tables 3 and 5,
+        // index 1 in the top half and 3 in the bottom half
+        int[] block = new int[16];
+        EtcEncoder.decodeColor(bytes(0xA553F877CCCCFFFFL), 0, block);
+
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                // (165, 82, 255) + 42, and (140, 107, 255) - 80
+                int expected = y < 2 ? rgb(207, 124, 255) : rgb(60, 27, 175);
+                assertEquals("pixel " + x + "," + y, expected, block[y * 4 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeAlphaBlock() {
+        // base 128, multiplier 2, table 0, and the indices 0-7 twice, down the columns
+        int[] modifiers = { -3, -6, -9, -15, 2, 5, 8, 14 };
+        int[] block = new int[16];
+        for (int i = 0; i < 16; i++) {
+            block[i] = 0xFF123456;
+        }
+        EtcEncoder.decodeAlpha(bytes(0x8020053977053977L), 0, block);
+
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                int expected = (128 + 2 * modifiers[(x * 4 + y) % 8]) << 24 | 0x123456;
+                assertEquals("pixel " + x + "," + y, expected, block[y * 4 + x]);
+            }
+        }
+    }
+
+    private static BufferedImage gradient(int width, int height, boolean alpha) {
+        BufferedImage image = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int a = alpha ? 255 * x / (width - 1) : 0xFF;
+                image.setRGB(x, y, a << 24 | (255 * x / (width - 1)) << 16 | (255 * y / (height - 1)) << 8 | 0x80);
+            }
+        }
+        return image;
+    }
+
+    private static ByteBuffer readKtx(File file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Check the header, and that the mipmaps that follow it halve in size down to 1x1 and
+     * fill the rest of the file exactly.
+     */
+    private static void checkKtx(ByteBuffer buffer, int width, int height, boolean alpha) {
+        byte[] identifier = new byte[KTX_IDENTIFIER.length];
+        buffer.get(identifier);
+        assertArrayEquals(KTX_IDENTIFIER, identifier);
+        assertEquals(0x04030201, buffer.getInt(12)); // endianness
+        assertEquals(0, buffer.getInt(16)); // glType
+        assertEquals(1, buffer.getInt(20)); // glTypeSize
+        assertEquals(0, buffer.getInt(24)); // glFormat
+        assertEquals(alpha ? 0x9278 : 0x9274, buffer.getInt(28)); // glInternalFormat
+        assertEquals(alpha ? 0x1908 : 0x1907, buffer.getInt(32)); // glBaseInternalFormat
+        assertEquals(width, buffer.getInt(36));
+        assertEquals(height, buffer.getInt(40));
+        assertEquals(0, buffer.getInt(44)); // pixelDepth
+        assertEquals(0, buffer.getInt(48)); // numberOfArrayElements
+        assertEquals(1, buffer.getInt(52)); // numberOfFaces
+        int levels = buffer.getInt(56);
+        assertEquals(0, buffer.getInt(60)); // bytesOfKeyValueData
+
+        int pos = KTX_HEADER_SIZE;
+        for (int level = 0; level < levels; level++) {
+            int blockBytes = alpha ? EtcEncoder.BLOCK_BYTES_RGBA : EtcEncoder.BLOCK_BYTES_RGB;
+            assertEquals(((width + 3) / 4) * ((height + 3) / 4) * blockBytes, buffer.getInt(pos));
+            pos += 4 + buffer.getInt(pos);
+            if (level < levels - 1) {
+                width = Math.max(1, width / 2);
+                height = Math.max(1, height / 2);
+            }
+        }
+        assertEquals(1, width);
+        assertEquals(1, height);
+        assertEquals(buffer.capacity(), pos);
+    }
+
+    private List<String> compileGradient(String name, int width, int height, boolean alpha) throws IOException {
+        File srcDir = tempFolder.newFolder("src");
+        ImageIO.write(gradient(width, height, alpha), "png", new File(srcDir, name + ".png"));
+        return KtxTextureCompiler.compileAll(srcDir, tempFolder.getRoot());
+    }
+
+    @Test
+    public void testKtxRgb() throws IOException {
+        List<String> summaries = compileGradient("test", 100, 60, false);
+        ByteBuffer buffer = readKtx(new File(tempFolder.getRoot(), "test.ktx"));
+        checkKtx(buffer, 100, 60, false);
+        // 100x60 down to 1x1
+        assertEquals(7, buffer.getInt(56));
+        assertEquals(1, summaries.size());
+        assertTrue(summaries.get(0), summaries.get(0).startsWith("test.ktx: 100x60 RGB8, 7 levels"));
+    }
+
+    @Test
+    public void testKtxRgba() throws IOException {
+        compileGradient("test", 64, 64, true);
+        ByteBuffer buffer = readKtx(new File(tempFolder.getRoot(), "test.ktx"));
+        checkKtx(buffer, 64, 64, true);
+        assertEquals(7, buffer.getInt(56));
+    }
+
+    @Test
+    public void testKtxPlaceholder() throws IOException {
+        compileGradient("test", 100, 60, false);
+        ByteBuffer buffer = readKtx(new File(new File(tempFolder.getRoot(), KtxTextureCompiler.PLACEHOLDER_DIR), "test.ktx"));
+        // starts from the first mipmap no larger than PLACEHOLDER_SIZE: 25x15
+        checkKtx(buffer, 25, 15, false);
+        assertEquals(5, buffer.getInt(56));
+    }
+
+    @Test
+    public void testQuality() {
+        BufferedImage image = gradient(64, 64, true);
+        int[] pixels = image.getRGB(0, 0, 64, 64, null, 0, 64);
+        for (boolean alpha : new boolean[] { false, true }) {
+            int[] decoded = KtxTextureCompiler.decode(KtxTextureCompiler.encode(pixels, 64, 64, alpha), 64, 64, alpha);
+            double psnr = KtxTextureCompiler.psnr(pixels, decoded, alpha);
+            assertTrue("PSNR " + psnr, psnr > 35.0);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/* Copyright 2019 Dmitry Brant
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dmitrybrant.gearvrf.planetarium.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles the small catalog that the app's tests read (see StarLoaderTest), and checks
+ * that the output is exactly what the app is tested against.
+ */
+public class StarCatalogCompilerTest {
+    private static final File FIXTURE_DIR = new File("../app/src/test/resources/catalog");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private ByteBuffer compileFixture() throws IOException {
+        File outFile = tempFolder.newFile("stars.bin");
+        StarCatalogCompiler.compile(new File(FIXTURE_DIR, "stars.txt"), new File(FIXTURE_DIR, "starnames.txt"), outFile);
+        return ByteBuffer.wrap(Files.readAllBytes(outFile.toPath()));
+    }
+
+    @Test
+    public void testMatchesFixture() throws IOException {
+        byte[] expected = Files.readAllBytes(new File(FIXTURE_DIR, "stars.bin").toPath());
+        assertArrayEquals(expected, compileFixture().array());
+    }
+
+    @Test
+    public void testHeader() throws IOException {
+        ByteBuffer buffer = compileFixture();
+        assertEquals(StarCatalogCompiler.MAGIC, buffer.getInt(0));
+        assertEquals(StarCatalogCompiler.VERSION, buffer.getInt(4));
+        assertEquals(6, buffer.getInt(8));
+        assertEquals(StarCatalogCompiler.RECORD_SIZE, buffer.getInt(12));
+        assertEquals(StarCatalogCompiler.HEADER_SIZE + 6 * StarCatalogCompiler.RECORD_SIZE, buffer.getInt(16));
+    }
+
+    @Test
+    public void testRecordsSortedByRa() throws IOException {
+        ByteBuffer buffer = compileFixture();
+        double prevRa = -1.0;
+        for (int i = 0; i < buffer.getInt(8); i++) {
+            double ra = buffer.getDouble(StarCatalogCompiler.HEADER_SIZE + i * StarCatalogCompiler.RECORD_SIZE + 4);
+            assertTrue(ra >= prevRa);
+            prevRa = ra;
+        }
+    }
+
+    @Test
+    public void testProperMotionIsOptional() throws IOException {
+        ByteBuffer buffer = compileFixture();
+        int count = buffer.getInt(8);
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            int pos = StarCatalogCompiler.HEADER_SIZE + i * StarCatalogCompiler.RECORD_SIZE;
+            int hip = buffer.getInt(pos);
+            if (hip == 32349) {
+                assertEquals(-546.01f, buffer.getFloat(pos + 36), 0f);
+                assertEquals(-1223.07f, buffer.getFloat(pos + 40), 0f);
+                found++;
+            } else if (hip == 88) {
+                assertEquals(0f, buffer.getFloat(pos + 36), 0f);
+                assertEquals(0f, buffer.getFloat(pos + 40), 0f);
+                found++;
+            }
+        }
+        assertEquals(2, found);
+    }
+}